@@ -0,0 +1,73 @@
+package pt.feup.industrial.erpsystem.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps the number of tasks running at once on a delegate executor. Submitting blocks while all
+ * permits are taken, so a burst slows the submitter down instead of piling up threads (platform
+ * or virtual) that would all compete for the same database connections.
+ */
+public class BoundedExecutor implements Executor {
+
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter saturatedCounter;
+
+    public BoundedExecutor(String name, ExecutorService delegate, int maxConcurrency, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.permits = new Semaphore(maxConcurrency);
+        Gauge.builder("erp.executor.in-flight", inFlight, AtomicInteger::get)
+                .tag("name", name)
+                .description("Tasks currently running")
+                .register(meterRegistry);
+        Gauge.builder("erp.executor.max-concurrency", () -> maxConcurrency)
+                .tag("name", name)
+                .register(meterRegistry);
+        this.saturatedCounter = Counter.builder("erp.executor.saturated")
+                .tag("name", name)
+                .description("Submissions that had to wait for a free slot")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!permits.tryAcquire()) {
+            saturatedCounter.increment();
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for an execution slot", e);
+            }
+        }
+
+        inFlight.incrementAndGet();
+        try {
+            delegate.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    inFlight.decrementAndGet();
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            permits.release();
+            throw e;
+        }
+    }
+
+    public void shutdown() {
+        delegate.shutdown();
+    }
+}
@@ -0,0 +1,37 @@
+package pt.feup.industrial.erpsystem.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class ExecutionConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutionConfig.class);
+
+    // Same switch Spring Boot uses for Tomcat and @Scheduled, so one flag moves the whole app to virtual threads
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
+    @Value("${erp.execution.packet-handler.max-concurrency:${spring.datasource.hikari.maximum-pool-size:10}}")
+    private int packetHandlerMaxConcurrency;
+
+    @Bean(destroyMethod = "shutdown")
+    public BoundedExecutor packetHandlerExecutor(MeterRegistry meterRegistry) {
+        ExecutorService delegate;
+        if (virtualThreadsEnabled) {
+            delegate = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("udp-handler-", 0).factory());
+        } else {
+            delegate = Executors.newCachedThreadPool(Thread.ofPlatform().name("udp-handler-", 0).daemon(true).factory());
+        }
+        log.info("UDP packet handlers run on {} threads, at most {} at a time",
+                virtualThreadsEnabled ? "virtual" : "platform", packetHandlerMaxConcurrency);
+        return new BoundedExecutor("udp-packet-handler", delegate, packetHandlerMaxConcurrency, meterRegistry);
+    }
+}
@@ -1,11 +1,20 @@
 package pt.feup.industrial.erpsystem.config;
 
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.handler.timeout.WriteTimeoutHandler;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class WebClientConfig {
@@ -13,11 +22,69 @@ public class WebClientConfig {
     @Value("${mes.api.baseUrl}")
     private String mesBaseUrl;
 
+    @Value("${mes.api.pool.max-connections:16}")
+    private int maxConnections;
+
+    // Requests allowed to wait for a pooled connection, and for how long
+    @Value("${mes.api.pool.pending-acquire-max-count:1000}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${mes.api.pool.pending-acquire-timeout:5s}")
+    private Duration pendingAcquireTimeout;
+
+    // Close idle connections before the MES (or a proxy in between) silently drops them
+    @Value("${mes.api.pool.max-idle-time:30s}")
+    private Duration maxIdleTime;
+
+    @Value("${mes.api.pool.max-life-time:10m}")
+    private Duration maxLifeTime;
+
+    @Value("${mes.api.pool.evict-interval:30s}")
+    private Duration evictInterval;
+
+    @Value("${mes.api.connect-timeout:2s}")
+    private Duration connectTimeout;
+
+    // No bytes read/written on the connection for this long fails the request
+    @Value("${mes.api.read-timeout:5s}")
+    private Duration readTimeout;
+
+    @Value("${mes.api.write-timeout:5s}")
+    private Duration writeTimeout;
+
+    // From the request being sent until the response headers arrive
+    @Value("${mes.api.response-timeout:5s}")
+    private Duration responseTimeout;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider mesConnectionProvider() {
+        // metrics(true) publishes reactor.netty.connection.provider.* (active, idle, pending connections)
+        return ConnectionProvider.builder("mes")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(evictInterval)
+                .metrics(true)
+                .build();
+    }
+
     @Bean
-    public WebClient mesWebClient(WebClient.Builder builder) {
+    public WebClient mesWebClient(WebClient.Builder builder, ConnectionProvider mesConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(mesConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .responseTimeout(responseTimeout)
+                // Added per request: Reactor Netty removes them when the connection goes back to the pool, so idle connections never time out
+                .doOnRequest((request, connection) -> connection
+                        .addHandlerLast("mesReadTimeout", new ReadTimeoutHandler(readTimeout.toMillis(), TimeUnit.MILLISECONDS))
+                        .addHandlerLast("mesWriteTimeout", new WriteTimeoutHandler(writeTimeout.toMillis(), TimeUnit.MILLISECONDS)));
         return builder
                 .baseUrl(mesBaseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                 .build();
     }
-}
\ No newline at end of file
+}
@@ -4,11 +4,15 @@ import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import pt.feup.industrial.erpsystem.dto.OrderItemCompletionDto;
+import pt.feup.industrial.erpsystem.dto.OrderItemCompletionResultDto;
 import pt.feup.industrial.erpsystem.service.OrderService;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/erp/order-items")
 public class OrderCompletionController {
@@ -16,6 +20,9 @@ public class OrderCompletionController {
     private static final Logger log = LoggerFactory.getLogger(OrderCompletionController.class);
     private final OrderService orderService;
 
+    @Value("${erp.completions.max-batch-size:1000}")
+    private int maxBatchSize;
+
     @Autowired
     public OrderCompletionController(OrderService orderService) {
         this.orderService = orderService;
@@ -42,4 +49,18 @@ public class OrderCompletionController {
             return ResponseEntity.notFound().build();
         }
     }
-}
\ No newline at end of file
+
+    // A shift's worth of completions in one request and one transaction; one result per notification, in order
+    @PutMapping("/complete")
+    public ResponseEntity<List<OrderItemCompletionResultDto>> receiveCompletionNotifications(
+            @RequestBody List<@Valid OrderItemCompletionDto> completionDtos) {
+
+        if (completionDtos.isEmpty() || completionDtos.size() > maxBatchSize) {
+            log.warn("Rejected batch of {} completion notifications (allowed: 1 to {}).", completionDtos.size(), maxBatchSize);
+            return ResponseEntity.badRequest().build();
+        }
+
+        log.info("Received {} completion notifications via REST.", completionDtos.size());
+        return ResponseEntity.ok(orderService.markOrderItemsAsCompleted(completionDtos));
+    }
+}
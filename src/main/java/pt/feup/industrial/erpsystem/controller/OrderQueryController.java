@@ -1,9 +1,13 @@
 package pt.feup.industrial.erpsystem.controller;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import pt.feup.industrial.erpsystem.dto.CursorPageDto;
 import pt.feup.industrial.erpsystem.model.ClientOrder;
 import pt.feup.industrial.erpsystem.model.Client;
 import pt.feup.industrial.erpsystem.model.OrderItem;
@@ -11,21 +15,32 @@ import pt.feup.industrial.erpsystem.service.OrderService;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.function.ToLongFunction;
 
 @RestController
 @RequestMapping("/api/query")
 public class OrderQueryController {
 
+    private static final Logger log = LoggerFactory.getLogger(OrderQueryController.class);
     private final OrderService orderService;
 
+    @Value("${erp.query.default-page-size:100}")
+    private int defaultPageSize;
+
+    @Value("${erp.query.max-page-size:500}")
+    private int maxPageSize;
+
     @Autowired
     public OrderQueryController(OrderService orderService) {
         this.orderService = orderService;
     }
 
+    // Paged newest first. Example: GET /api/query/orders/all?limit=50&cursor=<nextCursor of the previous page>
     @GetMapping("/orders/all")
-    public List<ClientOrder> getAllOrders() {
-        return orderService.getAllOrders();
+    public ResponseEntity<CursorPageDto<ClientOrder>> getAllOrders(
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+        return page(limit, cursor, ClientOrder::getId, orderService::getOrders);
     }
 
     @GetMapping("/orders/{internalId}")
@@ -36,20 +51,28 @@ public class OrderQueryController {
     }
 
     @GetMapping("/orders/by-client-nif/{nif}")
-    public List<ClientOrder> getOrdersByClientNif(@PathVariable Long nif) {
-        return orderService.getOrdersByClientNif(nif);
+    public ResponseEntity<CursorPageDto<ClientOrder>> getOrdersByClientNif(
+            @PathVariable Long nif,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+        return page(limit, cursor, ClientOrder::getId, (beforeId, rows) -> orderService.getOrdersByClientNif(nif, beforeId, rows));
     }
 
     @GetMapping("/items/by-type/{type}")
-    public List<OrderItem> getItemsByType(@PathVariable Integer type) {
-        return orderService.getItemsByType(type);
+    public ResponseEntity<CursorPageDto<OrderItem>> getItemsByType(
+            @PathVariable Integer type,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+        return page(limit, cursor, OrderItem::getId, (beforeId, rows) -> orderService.getItemsByType(type, beforeId, rows));
     }
 
     // Example: GET /api/query/items/due?date=YYYY-MM-DD
     @GetMapping("/items/due")
-    public List<OrderItem> getItemsDue(
-            @RequestParam("date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
-        return orderService.getItemsDueOn(date);
+    public ResponseEntity<CursorPageDto<OrderItem>> getItemsDue(
+            @RequestParam("date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+        return page(limit, cursor, OrderItem::getId, (beforeId, rows) -> orderService.getItemsDueOn(date, beforeId, rows));
     }
 
     @GetMapping("/clients/by-nif/{nif}")
@@ -58,4 +81,32 @@ public class OrderQueryController {
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
+
+    // One row more than asked for tells whether there is a next page without a count query
+    private <T> ResponseEntity<CursorPageDto<T>> page(Integer limit, String cursor, ToLongFunction<T> id, PageQuery<T> query) {
+        int pageSize = limit != null ? limit : Math.min(defaultPageSize, maxPageSize);
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            log.warn("Rejected page size {} (allowed: 1 to {}).", pageSize, maxPageSize);
+            return ResponseEntity.badRequest().build();
+        }
+        long beforeId;
+        try {
+            beforeId = PageCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected page cursor '{}': {}", cursor, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<T> rows = query.fetch(beforeId, pageSize + 1);
+        if (rows.size() <= pageSize) {
+            return ResponseEntity.ok(new CursorPageDto<>(rows, null));
+        }
+        List<T> content = rows.subList(0, pageSize);
+        return ResponseEntity.ok(new CursorPageDto<>(content, PageCursor.encode(id.applyAsLong(content.get(pageSize - 1)))));
+    }
+
+    @FunctionalInterface
+    private interface PageQuery<T> {
+        List<T> fetch(long beforeId, int limit);
+    }
 }
@@ -0,0 +1,30 @@
+package pt.feup.industrial.erpsystem.controller;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Opaque page cursors. A cursor holds the id of the last row returned; the next page starts
+ * right after it, so a deep page costs one index seek like the first.
+ */
+final class PageCursor {
+
+    private PageCursor() {
+    }
+
+    static String encode(long id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(ByteBuffer.allocate(Long.BYTES).putLong(id).array());
+    }
+
+    // The first page when cursor is null; IllegalArgumentException if it is not one of ours
+    static long decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+        if (bytes.length != Long.BYTES) {
+            throw new IllegalArgumentException("Malformed page cursor");
+        }
+        return ByteBuffer.wrap(bytes).getLong();
+    }
+}
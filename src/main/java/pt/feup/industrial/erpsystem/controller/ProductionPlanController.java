@@ -0,0 +1,48 @@
+package pt.feup.industrial.erpsystem.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import pt.feup.industrial.erpsystem.dto.OrderPlanProjectionDto;
+import pt.feup.industrial.erpsystem.model.PlannedDayLoad;
+import pt.feup.industrial.erpsystem.model.PlannedItem;
+import pt.feup.industrial.erpsystem.service.ProductionPlanner;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Read-only views of the materialized production plan
+@RestController
+@RequestMapping("/api/plan")
+public class ProductionPlanController {
+
+    private final ProductionPlanner productionPlanner;
+
+    @Autowired
+    public ProductionPlanController(ProductionPlanner productionPlanner) {
+        this.productionPlanner = productionPlanner;
+    }
+
+    // Projected ship date and lateness of the order's items not yet sent to the MES; 404 if it has none
+    @GetMapping("/orders/{internalId}")
+    public ResponseEntity<OrderPlanProjectionDto> getOrderProjection(@PathVariable Long internalId) {
+        return productionPlanner.projectOrder(internalId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // Example: GET /api/plan/days/2025-06-01
+    @GetMapping("/days/{date}")
+    public List<PlannedItem> getPlannedItems(@PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        return productionPlanner.plannedOn(date);
+    }
+
+    // Example: GET /api/plan/days?from=YYYY-MM-DD&to=YYYY-MM-DD (pieces per day and product type)
+    @GetMapping("/days")
+    public List<PlannedDayLoad> getPlannedLoad(
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return productionPlanner.plannedLoad(from, to);
+    }
+}
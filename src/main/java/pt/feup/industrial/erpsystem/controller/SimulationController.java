@@ -0,0 +1,39 @@
+package pt.feup.industrial.erpsystem.controller;
+
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import pt.feup.industrial.erpsystem.dto.SimulationRequestDto;
+import pt.feup.industrial.erpsystem.dto.SimulationResultDto;
+import pt.feup.industrial.erpsystem.service.SchedulingSimulator;
+
+// What-if scheduling against the current backlog; read-only, nothing is dispatched
+@RestController
+@RequestMapping("/api/simulations")
+public class SimulationController {
+
+    private static final Logger log = LoggerFactory.getLogger(SimulationController.class);
+    private final SchedulingSimulator schedulingSimulator;
+
+    @Autowired
+    public SimulationController(SchedulingSimulator schedulingSimulator) {
+        this.schedulingSimulator = schedulingSimulator;
+    }
+
+    @PostMapping
+    public ResponseEntity<SimulationResultDto> simulate(@Valid @RequestBody SimulationRequestDto request) throws InterruptedException {
+        if (!schedulingSimulator.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        try {
+            return ResponseEntity.ok(schedulingSimulator.simulate(request));
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected simulation request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+}
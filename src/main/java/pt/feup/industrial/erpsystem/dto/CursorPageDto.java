@@ -0,0 +1,17 @@
+package pt.feup.industrial.erpsystem.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// One page of a keyset-paginated query; pass nextCursor back as ?cursor= for the next one, null on the last page
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageDto<T> {
+
+    private List<T> content;
+    private String nextCursor;
+}
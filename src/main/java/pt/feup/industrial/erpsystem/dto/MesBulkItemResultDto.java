@@ -0,0 +1,15 @@
+package pt.feup.industrial.erpsystem.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One entry of the MES bulk endpoint response
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MesBulkItemResultDto {
+    private Long erpOrderItemId;
+    private boolean accepted;
+    private String reason; // Set by the MES for rejected items
+}
@@ -0,0 +1,21 @@
+package pt.feup.industrial.erpsystem.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// What became of one notification in a batch of completions
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderItemCompletionResultDto {
+
+    public enum Outcome {
+        COMPLETED, // Marked COMPLETED by this notification
+        DUPLICATE, // Already COMPLETED, or repeated within the batch
+        UNKNOWN    // No order item with this id
+    }
+
+    private Long erpOrderItemId;
+    private Outcome outcome;
+}
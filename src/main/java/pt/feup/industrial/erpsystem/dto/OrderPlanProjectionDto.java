@@ -0,0 +1,22 @@
+package pt.feup.industrial.erpsystem.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import pt.feup.industrial.erpsystem.model.PlannedItem;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Projection of an order's still unscheduled items, read from the materialized production plan
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderPlanProjectionDto {
+    private Long orderId; // Internal Order ID from ERP
+    private LocalDate projectedShipDate; // Day its last planned item goes out; null if some item is beyond the horizon
+    private boolean beyondHorizon;
+    private int projectedLatenessDays; // Of its latest item; a lower bound when beyondHorizon
+    private double projectedPenalty; // Sum over its items
+    private List<PlannedItem> items;
+}
@@ -0,0 +1,21 @@
+package pt.feup.industrial.erpsystem.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SimulationRequestDto {
+
+    @NotEmpty
+    @Valid
+    private List<SimulationScenarioDto> scenarios;
+
+    private boolean includeItemIds; // List the items planned on each day, not just the totals
+}
@@ -0,0 +1,48 @@
+package pt.feup.industrial.erpsystem.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+// Outcome of simulating scheduling configurations against the same snapshot of the backlog
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SimulationResultDto {
+    private LocalDate startDate;
+    private int backlogItems;
+    private List<Scenario> scenarios;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Scenario {
+        private String name;
+        private String strategy;
+        private int dailyCapacity;
+        private Map<Integer, Integer> productTypeDailyCapacity;
+        private int horizonDays;
+        private int plannedItems;
+        private int unplannedItems; // Beyond the horizon, counted as finished the day after it
+        private int lateItems;
+        private long totalLatenessDays;
+        private double expectedPenalty;
+        private long elapsedMillis;
+        private List<Day> days;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Day {
+        private LocalDate date;
+        private int items;
+        private int pieces;
+        private double penalty;
+        private List<Long> itemIds; // Only when requested
+    }
+}
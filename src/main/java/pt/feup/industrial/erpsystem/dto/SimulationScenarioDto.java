@@ -0,0 +1,30 @@
+package pt.feup.industrial.erpsystem.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+// One scheduling configuration to simulate; unset fields take the live configuration
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SimulationScenarioDto {
+
+    @NotBlank
+    private String name;
+
+    private String strategy; // Bean name, e.g. greedy or penalty-aware
+
+    @Positive
+    private Integer dailyCapacity;
+
+    private Map<@NotNull Integer, @NotNull @Positive Integer> productTypeDailyCapacity;
+
+    @Positive
+    private Integer horizonDays;
+}
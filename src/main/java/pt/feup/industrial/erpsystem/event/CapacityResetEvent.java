@@ -0,0 +1,7 @@
+package pt.feup.industrial.erpsystem.event;
+
+import java.time.LocalDate;
+
+// A new day's factory capacity became available
+public record CapacityResetEvent(LocalDate day) {
+}
@@ -0,0 +1,7 @@
+package pt.feup.industrial.erpsystem.event;
+
+import java.util.List;
+
+// Published inside the completing transaction; consume with @TransactionalEventListener to only see committed completions
+public record OrderItemsCompletedEvent(List<Long> itemIds) {
+}
@@ -0,0 +1,13 @@
+package pt.feup.industrial.erpsystem.event;
+
+import pt.feup.industrial.erpsystem.model.ClientOrder;
+import pt.feup.industrial.erpsystem.model.OrderKey;
+
+import java.util.List;
+
+// Published inside the saving transaction; consume with @TransactionalEventListener to only see committed orders
+public record OrdersPersistedEvent(List<PersistedOrder> orders) {
+
+    public record PersistedOrder(OrderKey key, ClientOrder order) {
+    }
+}
@@ -0,0 +1,140 @@
+package pt.feup.industrial.erpsystem.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * One memory-mapped journal file. Records are laid out back to back as
+ * {@code [int length][int crc32c][long sequence][payload]}; a zero length marks the end of the
+ * written data. Writes are single-threaded (guarded by {@link OrderJournal}); readers only look
+ * below {@link #publishedPosition()}, which is advanced after a record is fully written.
+ */
+class JournalSegment {
+
+    static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final Path path;
+    private final long firstSequence;
+    private final MappedByteBuffer buffer;
+
+    private volatile int publishedPosition;
+    private volatile boolean sealed;
+    private long lastSequence;
+
+    private JournalSegment(Path path, long firstSequence, MappedByteBuffer buffer) {
+        this.path = path;
+        this.firstSequence = firstSequence;
+        this.buffer = buffer;
+        this.lastSequence = firstSequence - 1;
+    }
+
+    static JournalSegment create(Path directory, long firstSequence, int size) throws IOException {
+        Path path = directory.resolve(fileName(firstSequence));
+        return new JournalSegment(path, firstSequence, map(path, size));
+    }
+
+    // Scans an existing file and stops at the first incomplete or corrupt record (a torn write from a crash)
+    static JournalSegment recover(Path path) throws IOException {
+        JournalSegment segment = new JournalSegment(path, parseFirstSequence(path), map(path, (int) Files.size(path)));
+        int position = 0;
+        Record record;
+        while ((record = segment.readAt(position)) != null && record.sequence() == segment.lastSequence + 1) {
+            segment.lastSequence = record.sequence();
+            position = record.nextPosition();
+        }
+        segment.publishedPosition = position;
+        return segment;
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    static boolean isSegmentFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith("orders-") && name.endsWith(".journal");
+    }
+
+    private static String fileName(long firstSequence) {
+        return String.format("orders-%020d.journal", firstSequence);
+    }
+
+    private static long parseFirstSequence(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring("orders-".length(), name.length() - ".journal".length()));
+    }
+
+    boolean hasRoomFor(int payloadLength) {
+        // Keep room for the terminating zero length
+        return publishedPosition + HEADER_SIZE + payloadLength + Integer.BYTES <= buffer.capacity();
+    }
+
+    void append(long sequence, byte[] payload) {
+        int position = publishedPosition;
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+        buffer.putLong(position + 2 * Integer.BYTES, sequence);
+        buffer.put(position + HEADER_SIZE, payload);
+        // Length last: a crash mid-write leaves either a zero length or a record failing its checksum
+        buffer.putInt(position, payload.length);
+        lastSequence = sequence;
+        publishedPosition = position + HEADER_SIZE + payload.length;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    Record readAt(int position) {
+        if (position + HEADER_SIZE > buffer.capacity()) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 0 || position + HEADER_SIZE + length > buffer.capacity()) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(position + HEADER_SIZE, payload);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+            return null;
+        }
+        return new Record(buffer.getLong(position + 2 * Integer.BYTES), payload, position + HEADER_SIZE + length);
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long firstSequence() {
+        return firstSequence;
+    }
+
+    long lastSequence() {
+        return lastSequence;
+    }
+
+    int publishedPosition() {
+        return publishedPosition;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    void seal() {
+        sealed = true;
+    }
+
+    record Record(long sequence, byte[] payload, int nextPosition) {
+    }
+}
@@ -0,0 +1,290 @@
+package pt.feup.industrial.erpsystem.journal;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import pt.feup.industrial.erpsystem.dto.ClientOrderRequestDto;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, memory-mapped write-ahead journal of received orders. An order is durable once
+ * {@link #append} returns, independently of the database; {@link OrderJournalDrainer} moves entries
+ * into the database and moves the checkpoint forward. Segments entirely below the checkpoint are
+ * deleted, and entries above it are replayed after a restart.
+ */
+@Component
+public class OrderJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderJournal.class);
+
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    @Value("${erp.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${erp.journal.directory:data/journal}")
+    private Path directory;
+
+    @Value("${erp.journal.segment-size:67108864}")
+    private int segmentSize;
+
+    @Value("${erp.journal.max-segments:64}")
+    private int maxSegments;
+
+    // msync every append: survives an OS crash, not only a process crash, at the cost of a disk flush per order
+    @Value("${erp.journal.force-on-append:false}")
+    private boolean forceOnAppend;
+
+    private final ObjectWriter orderWriter;
+    private final ObjectReader orderReader;
+    private final MeterRegistry meterRegistry;
+    private final List<JournalSegment> segments = new CopyOnWriteArrayList<>();
+
+    private JournalSegment activeSegment;
+    private long nextSequence;
+    private volatile long checkpointedSequence;
+
+    @Autowired
+    public OrderJournal(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        ObjectMapper smileMapper = objectMapper.copyWith(new SmileFactory());
+        this.orderWriter = smileMapper.writerFor(new TypeReference<List<ClientOrderRequestDto>>() { });
+        // Each record holds the orders of one datagram; records written before batch envelopes hold a single order
+        this.orderReader = smileMapper.readerForListOf(ClientOrderRequestDto.class)
+                .with(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            log.info("Order journal disabled. Orders are only durable once stored in the database.");
+            return;
+        }
+        Files.createDirectories(directory);
+        checkpointedSequence = readCheckpoint();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.filter(JournalSegment::isSegmentFile).sorted().toList()) {
+                JournalSegment segment = JournalSegment.recover(path);
+                // Recovered files are never appended to again; new entries always start a fresh segment
+                segment.seal();
+                segments.add(segment);
+            }
+        }
+        JournalSegment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        nextSequence = Math.max(checkpointedSequence, last == null ? 0 : last.lastSequence()) + 1;
+        rollSegment();
+
+        Gauge.builder("erp.journal.pending-entries", this, journal -> journal.lastAppendedSequence() - journal.checkpointedSequence)
+                .description("Journaled orders not yet checkpointed as stored")
+                .register(meterRegistry);
+        Gauge.builder("erp.journal.segments", segments, List::size).register(meterRegistry);
+
+        log.info("Order journal opened in {}: {} segment(s), checkpoint at {}, {} entries to replay.",
+                directory.toAbsolutePath(), segments.size(), checkpointedSequence, lastAppendedSequence() - checkpointedSequence);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized long append(List<ClientOrderRequestDto> orderRequests) throws IOException {
+        byte[] payload = orderWriter.writeValueAsBytes(orderRequests);
+        if (!activeSegment.hasRoomFor(payload.length)) {
+            if (JournalSegment.HEADER_SIZE + payload.length + Integer.BYTES > segmentSize) {
+                throw new IOException("Orders of " + payload.length + " bytes does not fit in a journal segment");
+            }
+            rollSegment();
+        }
+        long sequence = nextSequence++;
+        activeSegment.append(sequence, payload);
+        if (forceOnAppend) {
+            activeSegment.force();
+        }
+        notifyAll();
+        return sequence;
+    }
+
+    private void rollSegment() throws IOException {
+        if (segments.size() >= maxSegments) {
+            throw new IOException("Order journal is full (" + maxSegments + " segments); the database is not keeping up");
+        }
+        if (activeSegment != null) {
+            activeSegment.force();
+            activeSegment.seal();
+        }
+        activeSegment = JournalSegment.create(directory, nextSequence, segmentSize);
+        segments.add(activeSegment);
+    }
+
+    public synchronized long lastAppendedSequence() {
+        return nextSequence - 1;
+    }
+
+    public long checkpointedSequence() {
+        return checkpointedSequence;
+    }
+
+    // Blocks until an entry after the given sequence exists or the timeout elapses
+    synchronized void awaitEntryAfter(long sequence, long timeoutMillis) throws InterruptedException {
+        if (nextSequence - 1 <= sequence) {
+            wait(timeoutMillis);
+        }
+    }
+
+    public Reader readerAfter(long sequence) {
+        return new Reader(sequence);
+    }
+
+    public List<ClientOrderRequestDto> decode(byte[] payload) throws IOException {
+        return orderReader.readValue(payload);
+    }
+
+    public synchronized void checkpoint(long sequence) throws IOException {
+        if (sequence <= checkpointedSequence) {
+            return;
+        }
+        writeCheckpoint(sequence);
+        checkpointedSequence = sequence;
+
+        // A sealed segment can go once every entry in it is checkpointed
+        for (JournalSegment segment : segments) {
+            if (segment.isSealed() && segment.lastSequence() <= sequence) {
+                try {
+                    Files.deleteIfExists(segment.path());
+                    segments.remove(segment);
+                } catch (IOException e) {
+                    // Still mapped on some platforms; retried on the next checkpoint
+                    log.debug("Could not delete journal segment {} yet: {}", segment.path(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (content.remaining() != Long.BYTES + Integer.BYTES) {
+            throw new IOException("Corrupt journal checkpoint " + file);
+        }
+        long sequence = content.getLong();
+        if (checksum(sequence) != content.getInt()) {
+            throw new IOException("Corrupt journal checkpoint " + file);
+        }
+        return sequence;
+    }
+
+    private void writeCheckpoint(long sequence) throws IOException {
+        ByteBuffer content = ByteBuffer.allocate(Long.BYTES + Integer.BYTES);
+        content.putLong(sequence).putInt(checksum(sequence));
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.write(temporary, content.array());
+        Files.move(temporary, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int checksum(long sequence) {
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(Long.BYTES).putLong(sequence).flip());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Sequential cursor over the journal. Not thread-safe; meant for a single draining thread.
+     */
+    public class Reader {
+
+        private JournalSegment segment;
+        private int position;
+        private long lastReadSequence;
+
+        private Reader(long afterSequence) {
+            this.lastReadSequence = afterSequence;
+        }
+
+        // Next entry, or null when caught up with the writer
+        public Entry next() {
+            while (true) {
+                if (segment == null) {
+                    segment = segmentContaining(lastReadSequence + 1);
+                    if (segment == null) {
+                        return null;
+                    }
+                    position = 0;
+                }
+                if (position < segment.publishedPosition()) {
+                    JournalSegment.Record record = segment.readAt(position);
+                    if (record == null) {
+                        throw new UncheckedIOException(new IOException("Corrupt journal record in " + segment.path() + " at " + position));
+                    }
+                    position = record.nextPosition();
+                    if (record.sequence() <= lastReadSequence) {
+                        continue;
+                    }
+                    lastReadSequence = record.sequence();
+                    return new Entry(record.sequence(), record.payload());
+                }
+                // Only move on once the writer has left this segment, re-checking for entries appended meanwhile
+                if (!segment.isSealed() || position < segment.publishedPosition()) {
+                    return null;
+                }
+                JournalSegment following = segmentAfter(segment);
+                if (following == null) {
+                    return null;
+                }
+                segment = following;
+                position = 0;
+            }
+        }
+
+        private JournalSegment segmentContaining(long sequence) {
+            JournalSegment candidate = null;
+            for (JournalSegment existing : segments) {
+                if (existing.firstSequence() > sequence) {
+                    return candidate != null ? candidate : existing;
+                }
+                candidate = existing;
+            }
+            return candidate;
+        }
+
+        private JournalSegment segmentAfter(JournalSegment current) {
+            for (JournalSegment existing : segments) {
+                if (existing.firstSequence() > current.firstSequence()) {
+                    return existing;
+                }
+            }
+            return null;
+        }
+
+        public long lastReadSequence() {
+            return lastReadSequence;
+        }
+    }
+
+    public record Entry(long sequence, byte[] payload) {
+    }
+}
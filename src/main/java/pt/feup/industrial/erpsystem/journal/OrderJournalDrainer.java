@@ -0,0 +1,145 @@
+package pt.feup.industrial.erpsystem.journal;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import pt.feup.industrial.erpsystem.dto.ClientOrderRequestDto;
+import pt.feup.industrial.erpsystem.service.OrderIngestBatcher;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds journal entries to the {@link OrderIngestBatcher} and checkpoints the journal up to the
+ * highest sequence below which every entry has been processed. Starting from the last checkpoint
+ * also replays whatever a previous run did not get to store.
+ */
+@Component
+public class OrderJournalDrainer {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderJournalDrainer.class);
+
+    private static final long IDLE_WAIT_MILLIS = 200;
+
+    private final OrderJournal orderJournal;
+    private final OrderIngestBatcher orderIngestBatcher;
+    private final ConcurrentSkipListSet<Long> inFlightSequences = new ConcurrentSkipListSet<>();
+
+    private Thread drainerThread;
+    private volatile boolean running;
+    private volatile long lastDispatchedSequence;
+
+    @Autowired
+    public OrderJournalDrainer(OrderJournal orderJournal, OrderIngestBatcher orderIngestBatcher) {
+        this.orderJournal = orderJournal;
+        this.orderIngestBatcher = orderIngestBatcher;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!orderJournal.isEnabled()) {
+            return;
+        }
+        lastDispatchedSequence = orderJournal.checkpointedSequence();
+        running = true;
+        drainerThread = new Thread(this::drain);
+        drainerThread.setName("Order-Journal-Drainer");
+        drainerThread.setDaemon(true);
+        drainerThread.start();
+    }
+
+    private void drain() {
+        OrderJournal.Reader reader = orderJournal.readerAfter(orderJournal.checkpointedSequence());
+        while (running) {
+            try {
+                OrderJournal.Entry entry = reader.next();
+                if (entry == null) {
+                    orderJournal.awaitEntryAfter(reader.lastReadSequence(), IDLE_WAIT_MILLIS);
+                    continue;
+                }
+
+                long sequence = entry.sequence();
+                List<ClientOrderRequestDto> orderRequests;
+                try {
+                    orderRequests = orderJournal.decode(entry.payload());
+                } catch (IOException e) {
+                    log.error("Skipping unreadable journal entry {}", sequence, e);
+                    lastDispatchedSequence = sequence;
+                    continue;
+                }
+
+                // Registered before lastDispatchedSequence moves, see checkpoint()
+                inFlightSequences.add(sequence);
+                lastDispatchedSequence = sequence;
+                submitUntilAccepted(orderRequests, sequence);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("Order journal drainer failed. Retrying in {} ms.", IDLE_WAIT_MILLIS, e);
+                sleepQuietly();
+            }
+        }
+        log.info("Order journal drainer stopped.");
+    }
+
+    // A journaled entry must not be dropped, so a full ingest lane is waited out. Parts of the entry
+    // accepted before a rejection are persisted twice at most, which the duplicate checks absorb.
+    private void submitUntilAccepted(List<ClientOrderRequestDto> orderRequests, long sequence) throws InterruptedException {
+        while (running) {
+            try {
+                orderIngestBatcher.submit(orderRequests, () -> inFlightSequences.remove(sequence));
+                return;
+            } catch (RejectedExecutionException e) {
+                log.debug("Journal entry {} not accepted yet: {}", sequence, e.getMessage());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${erp.journal.checkpoint-interval-ms:1000}")
+    public void checkpointPeriodically() {
+        if (running) {
+            checkpoint();
+        }
+    }
+
+    private void checkpoint() {
+        // Read the dispatched position before looking at the in-flight set: every entry up to it was
+        // either still in flight at that moment or is already processed
+        long dispatched = lastDispatchedSequence;
+        Iterator<Long> inFlight = inFlightSequences.iterator();
+        long processedUpTo = inFlight.hasNext() ? inFlight.next() - 1 : dispatched;
+        try {
+            orderJournal.checkpoint(processedUpTo);
+        } catch (IOException e) {
+            log.error("Failed to checkpoint order journal at sequence {}", processedUpTo, e);
+        }
+    }
+
+    private void sleepQuietly() {
+        try {
+            TimeUnit.MILLISECONDS.sleep(IDLE_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        drainerThread.interrupt();
+        drainerThread.join(TimeUnit.SECONDS.toMillis(5));
+        checkpoint();
+    }
+}
@@ -0,0 +1,88 @@
+package pt.feup.industrial.erpsystem.listener;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import pt.feup.industrial.erpsystem.dto.ClientOrderRequestDto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses order datagrams straight from the receive buffer, without an intermediate String.
+ * Payloads starting with the Smile header (":)\n") are read as Smile, everything else as JSON.
+ * A payload is either a single order object or a batch envelope: an array of order objects.
+ */
+@Component
+public class OrderDatagramDecoder {
+
+    private static final byte SMILE_MAGIC = ':';
+
+    private final ObjectReader jsonReader;
+    private final ObjectReader smileReader;
+
+    @Autowired
+    public OrderDatagramDecoder(ObjectMapper objectMapper,
+                                @Value("${erp.udp.smile-enabled:true}") boolean smileEnabled) {
+        this.jsonReader = objectMapper.readerFor(ClientOrderRequestDto.class);
+        this.smileReader = smileEnabled
+                ? objectMapper.copyWith(new SmileFactory()).readerFor(ClientOrderRequestDto.class)
+                : null;
+    }
+
+    public List<ClientOrderRequestDto> decode(ByteBuffer payload) throws IOException {
+        ObjectReader reader = isSmile(payload) ? smileReader : jsonReader;
+        try (JsonParser parser = payload.hasArray()
+                ? reader.createParser(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining())
+                // duplicate() keeps the caller's position intact for logging
+                : reader.createParser(new ByteBufferBackedInputStream(payload.duplicate()))) {
+            return readOrders(reader, parser);
+        }
+    }
+
+    public List<ClientOrderRequestDto> decode(byte[] payload) throws IOException {
+        return decode(ByteBuffer.wrap(payload));
+    }
+
+    private static List<ClientOrderRequestDto> readOrders(ObjectReader reader, JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            ClientOrderRequestDto order = reader.readValue(parser);
+            if (order == null) {
+                throw new IOException("Empty order payload");
+            }
+            return List.of(order);
+        }
+        List<ClientOrderRequestDto> orders = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            orders.add(reader.readValue(parser));
+        }
+        if (parser.currentToken() != JsonToken.END_ARRAY) {
+            throw new IOException("Order batch must be an array of order objects, found " + parser.currentToken());
+        }
+        return orders;
+    }
+
+    // Only for log lines: JSON is shown as text, binary payloads by size
+    public String describe(ByteBuffer payload) {
+        if (OrderFragmentReassembler.isFragment(payload)) {
+            return "<" + payload.remaining() + " byte fragment>";
+        }
+        if (isSmile(payload)) {
+            return "<" + payload.remaining() + " bytes of Smile>";
+        }
+        return StandardCharsets.UTF_8.decode(payload.duplicate()).toString();
+    }
+
+    private boolean isSmile(ByteBuffer payload) {
+        return smileReader != null && payload.hasRemaining() && payload.get(payload.position()) == SMILE_MAGIC;
+    }
+}
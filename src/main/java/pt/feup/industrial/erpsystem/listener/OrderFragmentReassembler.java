@@ -0,0 +1,178 @@
+package pt.feup.industrial.erpsystem.listener;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reassembles payloads that senders split over several datagrams. Every fragment starts with
+ * {@code [byte 0xFE][byte version=1][long messageId][unsigned short index][unsigned short count]}
+ * followed by its slice of the payload; the reassembled payload is an ordinary JSON or Smile order
+ * or batch. Fragments may arrive in any order and duplicates are ignored. Messages still missing
+ * fragments after {@code erp.udp.reassembly-timeout-ms} are dropped.
+ */
+@Component
+public class OrderFragmentReassembler {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderFragmentReassembler.class);
+
+    static final byte FRAGMENT_MAGIC = (byte) 0xFE;
+    static final byte FRAGMENT_VERSION = 1;
+    static final int HEADER_SIZE = 2 + Long.BYTES + 2 * Short.BYTES;
+
+    @Value("${erp.udp.reassembly-timeout-ms:5000}")
+    private long reassemblyTimeoutMs;
+
+    @Value("${erp.udp.max-message-size:1048576}")
+    private int maxMessageSize;
+
+    @Value("${erp.udp.max-pending-messages:1024}")
+    private int maxPendingMessages;
+
+    private final Map<MessageKey, PartialMessage> pending = new ConcurrentHashMap<>();
+    // Slots taken in pending, reserved before a message is inserted and released when it is removed
+    private final AtomicInteger pendingSlots = new AtomicInteger();
+    private final Counter expiredCounter;
+
+    @Autowired
+    public OrderFragmentReassembler(MeterRegistry meterRegistry) {
+        Gauge.builder("erp.udp.reassembly.pending", pending, Map::size)
+                .description("Fragmented messages waiting for missing fragments")
+                .register(meterRegistry);
+        this.expiredCounter = Counter.builder("erp.udp.reassembly.expired")
+                .description("Fragmented messages dropped because fragments never arrived")
+                .register(meterRegistry);
+    }
+
+    static boolean isFragment(ByteBuffer datagram) {
+        return datagram.hasRemaining() && datagram.get(datagram.position()) == FRAGMENT_MAGIC;
+    }
+
+    // The complete payload once the last missing fragment arrives, null while the message is incomplete
+    public byte[] accept(SocketAddress sender, ByteBuffer datagram) throws IOException {
+        if (datagram.remaining() < HEADER_SIZE) {
+            throw new IOException("Fragment of " + datagram.remaining() + " bytes is shorter than its header");
+        }
+        ByteBuffer fragment = datagram.duplicate();
+        fragment.get(); // magic
+        byte version = fragment.get();
+        if (version != FRAGMENT_VERSION) {
+            throw new IOException("Unsupported fragment version " + version);
+        }
+        long messageId = fragment.getLong();
+        int index = Short.toUnsignedInt(fragment.getShort());
+        int count = Short.toUnsignedInt(fragment.getShort());
+        if (count == 0 || index >= count) {
+            throw new IOException("Invalid fragment " + index + " of " + count + " for message " + messageId);
+        }
+        byte[] slice = new byte[fragment.remaining()];
+        fragment.get(slice);
+
+        MessageKey key = new MessageKey(sender, messageId);
+        PartialMessage message = pending.get(key);
+        if (message == null) {
+            message = addPending(key, count);
+        }
+
+        synchronized (message) {
+            if (message.fragments.length != count) {
+                throw new IOException("Fragment count changed from " + message.fragments.length + " to " + count + " for message " + messageId);
+            }
+            if (message.fragments[index] != null) {
+                return null;
+            }
+            if (message.size + slice.length > maxMessageSize) {
+                removePending(key, message);
+                throw new IOException("Fragmented message " + messageId + " exceeds " + maxMessageSize + " bytes");
+            }
+            message.fragments[index] = slice;
+            message.size += slice.length;
+            if (++message.received < count) {
+                return null;
+            }
+            removePending(key, message);
+            return message.assemble();
+        }
+    }
+
+    // A slot is reserved first, so first fragments of many messages arriving at once cannot overshoot the limit
+    private PartialMessage addPending(MessageKey key, int count) throws IOException {
+        if (pendingSlots.incrementAndGet() > maxPendingMessages) {
+            pendingSlots.decrementAndGet();
+            throw new IOException("Too many incomplete fragmented messages (" + maxPendingMessages + "), dropping fragment of message " + key.messageId());
+        }
+        PartialMessage created = new PartialMessage(count);
+        PartialMessage existing = pending.putIfAbsent(key, created);
+        if (existing != null) {
+            pendingSlots.decrementAndGet();
+            return existing;
+        }
+        return created;
+    }
+
+    private boolean removePending(MessageKey key, PartialMessage message) {
+        if (!pending.remove(key, message)) {
+            return false;
+        }
+        pendingSlots.decrementAndGet();
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${erp.udp.reassembly-timeout-ms:5000}")
+    public void evictExpired() {
+        long now = System.nanoTime();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(reassemblyTimeoutMs);
+        pending.forEach((key, message) -> {
+            if (now - message.createdAt > timeoutNanos && removePending(key, message)) {
+                expiredCounter.increment();
+                synchronized (message) {
+                    log.warn("Dropped message {} from {}: only {} of {} fragments arrived within {} ms.",
+                            key.messageId(), key.sender(), message.received, message.fragments.length, reassemblyTimeoutMs);
+                }
+            }
+        });
+    }
+
+    int pendingMessages() {
+        return pending.size();
+    }
+
+    private record MessageKey(SocketAddress sender, long messageId) {
+    }
+
+    private static class PartialMessage {
+
+        private final byte[][] fragments;
+        private final long createdAt = System.nanoTime();
+        private int received;
+        private int size;
+
+        private PartialMessage(int count) {
+            this.fragments = new byte[count][];
+        }
+
+        private byte[] assemble() {
+            byte[] payload = new byte[size];
+            int offset = 0;
+            for (byte[] fragment : fragments) {
+                System.arraycopy(fragment, 0, payload, offset, fragment.length);
+                offset += fragment.length;
+            }
+            return payload;
+        }
+    }
+}
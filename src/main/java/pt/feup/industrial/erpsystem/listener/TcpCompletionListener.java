@@ -0,0 +1,310 @@
+package pt.feup.industrial.erpsystem.listener;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+import pt.feup.industrial.erpsystem.dto.OrderItemCompletionDto;
+import pt.feup.industrial.erpsystem.service.CompletionCoalescer;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent TCP ingress for MES completion events, for feedback rates the per-item REST call
+ * cannot keep up with. The MES keeps a connection open and sends frames: a 4-byte big-endian
+ * length followed by that many bytes of JSON, either one {@link OrderItemCompletionDto} or an
+ * array of them. Events go to the {@link CompletionCoalescer}, which applies them in batches.
+ * <p>
+ * Frames are numbered per connection from 1. Once frames are applied the listener answers with an
+ * 8-byte big-endian count: "the first N frames are applied". Acknowledgements are cumulative and
+ * may skip numbers, so the MES can pipeline frames and, after a reconnect, resend whatever was not
+ * acknowledged; repeated completions come back as duplicates and change nothing. Frames that
+ * cannot be parsed are acknowledged too, after being logged, so they do not hold back later ones.
+ */
+@Component
+public class TcpCompletionListener implements CommandLineRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(TcpCompletionListener.class);
+
+    @Value("${erp.completions.tcp.enabled:true}")
+    private boolean enabled;
+
+    // 0 picks a free port, see port()
+    @Value("${erp.completions.tcp.port:24681}")
+    private int tcpPort;
+
+    @Value("${erp.completions.tcp.max-connections:16}")
+    private int maxConnections;
+
+    @Value("${erp.completions.tcp.max-frame-size:1048576}")
+    private int maxFrameSize;
+
+    private final CompletionCoalescer completionCoalescer;
+    private final ObjectReader completionReader;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connectionNumbers = new AtomicInteger();
+    private final Counter eventsCounter;
+    private final Counter rejectedFramesCounter;
+    private final Counter invalidEventsCounter;
+
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    @Autowired
+    public TcpCompletionListener(CompletionCoalescer completionCoalescer, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.completionCoalescer = completionCoalescer;
+        this.completionReader = objectMapper.readerFor(OrderItemCompletionDto.class);
+        this.eventsCounter = Counter.builder("erp.completions.tcp.events")
+                .description("Completion events received over the TCP stream")
+                .register(meterRegistry);
+        this.rejectedFramesCounter = Counter.builder("erp.completions.tcp.rejected-frames")
+                .description("Frames that could not be parsed; acknowledged without effect")
+                .register(meterRegistry);
+        this.invalidEventsCounter = Counter.builder("erp.completions.tcp.invalid-events")
+                .description("Completion events without an item id or completion time; skipped")
+                .register(meterRegistry);
+        Gauge.builder("erp.completions.tcp.connections", connections, Set::size)
+                .description("Open MES completion stream connections")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void run(String... args) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(tcpPort));
+        } catch (IOException e) {
+            log.error("Failed to start the TCP completion listener on port {}", tcpPort, e);
+            return;
+        }
+        running = true;
+        Thread acceptThread = new Thread(this::accept);
+        acceptThread.setName("TCP-Completion-Acceptor");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        log.info("Started TCP completion listener on port {} (max {} connections, frames up to {} bytes)",
+                port(), maxConnections, maxFrameSize);
+    }
+
+    // The bound port, or -1 if not listening
+    public int port() {
+        return serverSocket != null && serverSocket.isBound() ? serverSocket.getLocalPort() : -1;
+    }
+
+    private void accept() {
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (running) {
+                    log.error("Error accepting a TCP completion connection", e);
+                    continue;
+                }
+                break;
+            }
+            if (connections.size() >= maxConnections) {
+                log.warn("Refused TCP completion connection from {}: already {} open.", socket.getRemoteSocketAddress(), maxConnections);
+                closeQuietly(socket);
+                continue;
+            }
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                Connection connection = new Connection(socket, connectionNumbers.incrementAndGet());
+                connections.add(connection);
+                connection.start();
+            } catch (IOException e) {
+                log.error("Could not set up TCP completion connection from {}", socket.getRemoteSocketAddress(), e);
+                closeQuietly(socket);
+            }
+        }
+        log.info("TCP completion listener stopped.");
+    }
+
+    List<OrderItemCompletionDto> decode(byte[] payload) throws IOException {
+        List<OrderItemCompletionDto> completions = new ArrayList<>();
+        try (JsonParser parser = completionReader.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                completions.add(completionReader.readValue(parser));
+            } else {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    completions.add(completionReader.readValue(parser));
+                }
+                if (parser.currentToken() != JsonToken.END_ARRAY) {
+                    throw new IOException("Completion frame must be an array of completion objects, found " + parser.currentToken());
+                }
+            }
+        }
+        // Same requirements as the REST endpoint's validation
+        int decoded = completions.size();
+        completions.removeIf(completion -> completion == null
+                || completion.getErpOrderItemId() == null || completion.getCompletionTime() == null);
+        if (completions.size() < decoded) {
+            invalidEventsCounter.increment(decoded - completions.size());
+            log.warn("Skipped {} completion event(s) without an item id or completion time.", decoded - completions.size());
+        }
+        return completions;
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                log.warn("Error closing the TCP completion listener", e);
+            }
+        }
+        connections.forEach(Connection::close);
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Already gone
+        }
+    }
+
+    private class Connection {
+
+        private final Socket socket;
+        private final String name;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        // Highest frame number applied, and the highest one the peer was told about
+        private long appliedFrames;
+        private long acknowledgedFrames;
+        private boolean closed;
+
+        private Connection(Socket socket, int number) throws IOException {
+            this.socket = socket;
+            this.name = "TCP-Completion-Connection-" + number;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            this.out = new DataOutputStream(socket.getOutputStream());
+        }
+
+        private void start() {
+            Thread reader = new Thread(this::read);
+            reader.setName(name);
+            reader.setDaemon(true);
+            reader.start();
+            // Acknowledgements go out from their own thread, so a peer that reads slowly never stalls the coalescer
+            Thread acknowledger = new Thread(this::acknowledge);
+            acknowledger.setName(name + "-Acks");
+            acknowledger.setDaemon(true);
+            acknowledger.start();
+            log.info("MES completion stream connected from {} ({}).", socket.getRemoteSocketAddress(), name);
+        }
+
+        private void read() {
+            long frameNumber = 0;
+            try {
+                while (running) {
+                    int length = in.readInt();
+                    if (length < 0 || length > maxFrameSize) {
+                        log.warn("Closing {}: frame of {} bytes (allowed: 0 to {}).", name, length, maxFrameSize);
+                        break;
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    long frame = ++frameNumber;
+
+                    List<OrderItemCompletionDto> completions;
+                    try {
+                        completions = length == 0 ? List.of() : decode(payload);
+                    } catch (IOException e) {
+                        rejectedFramesCounter.increment();
+                        log.warn("Skipping unreadable frame {} on {}: {}", frame, name, e.getMessage());
+                        completions = List.of();
+                    }
+                    eventsCounter.increment(completions.size());
+                    // Still queued when empty, so its acknowledgement cannot overtake earlier frames
+                    completionCoalescer.submit(completions, () -> applied(frame));
+                }
+            } catch (EOFException | SocketException e) {
+                log.info("MES completion stream {} closed by the peer.", name);
+            } catch (IOException e) {
+                log.warn("Error reading MES completion stream {}", name, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        private synchronized void applied(long frame) {
+            if (frame > appliedFrames) {
+                appliedFrames = frame;
+                notifyAll();
+            }
+        }
+
+        private void acknowledge() {
+            try {
+                while (true) {
+                    long frames;
+                    synchronized (this) {
+                        while (!closed && appliedFrames == acknowledgedFrames) {
+                            wait();
+                        }
+                        if (closed) {
+                            return;
+                        }
+                        frames = appliedFrames;
+                        acknowledgedFrames = frames;
+                    }
+                    out.writeLong(frames);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                log.debug("Could not acknowledge frames on {}: {}", name, e.getMessage());
+                close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                notifyAll();
+            }
+            connections.remove(this);
+            closeQuietly(socket);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package pt.feup.industrial.erpsystem.listener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Fixed set of direct buffers for incoming datagrams. A buffer belongs to exactly one
+ * in-flight packet between {@link #acquire()} and {@link #release(ByteBuffer)}, so the
+ * receive loop can never overwrite data a handler is still reading.
+ */
+class UdpBufferPool {
+
+    private static final Logger log = LoggerFactory.getLogger(UdpBufferPool.class);
+
+    private final BlockingQueue<ByteBuffer> buffers;
+
+    UdpBufferPool(int poolSize, int bufferSize) {
+        this.buffers = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            buffers.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+    }
+
+    ByteBuffer acquire() throws InterruptedException {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            // All buffers are held by handlers: stop reading and let the socket receive buffer absorb the burst
+            log.warn("UDP buffer pool exhausted ({} buffers in flight). Receiver waiting for a free buffer.", capacity());
+            buffer = buffers.take();
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        buffers.offer(buffer);
+    }
+
+    int available() {
+        return buffers.size();
+    }
+
+    int capacity() {
+        return buffers.size() + buffers.remainingCapacity();
+    }
+}
@@ -1,20 +1,31 @@
 package pt.feup.industrial.erpsystem.listener;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
 import pt.feup.industrial.erpsystem.dto.ClientOrderRequestDto;
-import pt.feup.industrial.erpsystem.service.OrderService;
+import pt.feup.industrial.erpsystem.journal.OrderJournal;
+import pt.feup.industrial.erpsystem.service.OrderIngestBatcher;
 
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.nio.charset.StandardCharsets;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component
 public class UdpOrderListener implements CommandLineRunner {
@@ -27,59 +38,205 @@ public class UdpOrderListener implements CommandLineRunner {
     @Value("${erp.udp.buffer-size:1024}")
     private int bufferSize;
 
-    private final OrderService orderService;
-    private final ObjectMapper objectMapper;
-    private final ExecutorService packetHandlerExecutor = Executors.newCachedThreadPool();
+    @Value("${erp.udp.receiver-threads:2}")
+    private int receiverThreads;
+
+    @Value("${erp.udp.buffer-pool-size:256}")
+    private int bufferPoolSize;
+
+    @Value("${erp.udp.socket-receive-buffer-size:4194304}")
+    private int socketReceiveBufferSize;
+
+    // Log every Nth payload at INFO (0 = payloads only at DEBUG)
+    @Value("${erp.udp.payload-log-sample-rate:0}")
+    private long payloadLogSampleRate;
+
+    private final OrderJournal orderJournal;
+    private final OrderIngestBatcher orderIngestBatcher;
+    private final OrderDatagramDecoder decoder;
+    private final OrderFragmentReassembler reassembler;
+    private final Executor packetHandlerExecutor;
+    private final Counter truncatedCounter;
+    private final Counter journalRejectedCounter;
+    private final List<DatagramChannel> channels = new CopyOnWriteArrayList<>();
+    private final AtomicLong packetsReceived = new AtomicLong();
+
+    private UdpBufferPool bufferPool;
+    private volatile boolean running;
 
     @Autowired
-    public UdpOrderListener(OrderService orderService, ObjectMapper objectMapper) {
-        this.orderService = orderService;
-        this.objectMapper = objectMapper;
+    public UdpOrderListener(OrderJournal orderJournal, OrderIngestBatcher orderIngestBatcher, OrderDatagramDecoder decoder,
+                            OrderFragmentReassembler reassembler,
+                            @Qualifier("packetHandlerExecutor") Executor packetHandlerExecutor, MeterRegistry meterRegistry) {
+        this.orderJournal = orderJournal;
+        this.orderIngestBatcher = orderIngestBatcher;
+        this.decoder = decoder;
+        this.reassembler = reassembler;
+        this.packetHandlerExecutor = packetHandlerExecutor;
+        this.truncatedCounter = Counter.builder("erp.udp.truncated")
+                .description("Datagrams dropped because they did not fit in erp.udp.buffer-size")
+                .register(meterRegistry);
+        this.journalRejectedCounter = Counter.builder("erp.udp.journal-rejected")
+                .description("Orders dropped because the journal could not take them (full or unwritable)")
+                .register(meterRegistry);
     }
 
     @Override
     public void run(String... args) throws Exception {
-        Thread listenerThread = new Thread(this::listen);
-        listenerThread.setName("UDP-Order-Listener");
-        listenerThread.setDaemon(true);
-        listenerThread.start();
+        // One spare byte: the channel silently discards whatever does not fit, so a datagram that
+        // fills it was longer than buffer-size and got cut off
+        bufferPool = new UdpBufferPool(bufferPoolSize, bufferSize + 1);
+        running = true;
+
+        int receivers = Math.max(1, receiverThreads);
+        try {
+            // With SO_REUSEPORT the kernel spreads datagrams over one socket per receiver;
+            // otherwise all receivers share a single channel.
+            boolean reusePort = receivers > 1 && supportsReusePort();
+            DatagramChannel sharedChannel = reusePort ? null : openChannel(false);
+            for (int i = 0; i < receivers; i++) {
+                DatagramChannel channel = reusePort ? openChannel(true) : sharedChannel;
+                Thread listenerThread = new Thread(() -> listen(channel));
+                listenerThread.setName("UDP-Order-Listener-" + i);
+                listenerThread.setDaemon(true);
+                listenerThread.start();
+            }
+            log.info("Started UDP listener on port {} with {} receiver thread(s) (SO_REUSEPORT: {}, buffer pool: {} x {} bytes)",
+                    udpPort, receivers, reusePort, bufferPoolSize, bufferSize);
+        } catch (IOException e) {
+            log.error("Failed to start UDP listener on port {}", udpPort, e);
+            stop();
+        }
+    }
+
+    private DatagramChannel openChannel(boolean reusePort) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        channels.add(channel);
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        if (reusePort) {
+            channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, socketReceiveBufferSize);
+        int effectiveReceiveBuffer = channel.getOption(StandardSocketOptions.SO_RCVBUF);
+        if (effectiveReceiveBuffer < socketReceiveBufferSize) {
+            log.warn("Requested UDP receive buffer of {} bytes but the OS granted {}. Check net.core.rmem_max.",
+                    socketReceiveBufferSize, effectiveReceiveBuffer);
+        }
+        channel.bind(new InetSocketAddress(udpPort));
+        return channel;
     }
 
-    private void listen() {
-        log.info("Starting UDP listener on port {}", udpPort);
-        try (DatagramSocket socket = new DatagramSocket(udpPort, null)) {
-            byte[] buffer = new byte[bufferSize];
-            while (!Thread.currentThread().isInterrupted()) {
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                try {
-                    socket.receive(packet);
-                    packetHandlerExecutor.submit(() -> processPacket(packet));
-                } catch (Exception e) {
-                    if (!socket.isClosed()) {
-                        log.error("Error receiving UDP packet", e);
-                    } else {
-                        log.info("UDP Socket closed.");
-                        break;
+    private static boolean supportsReusePort() {
+        try (DatagramChannel probe = DatagramChannel.open()) {
+            return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void listen(DatagramChannel channel) {
+        while (running && channel.isOpen()) {
+            ByteBuffer buffer;
+            try {
+                buffer = bufferPool.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            boolean handedOff = false;
+            try {
+                SocketAddress sender = channel.receive(buffer);
+                if (buffer.position() > bufferSize) {
+                    truncatedCounter.increment();
+                    log.warn("Dropped truncated UDP datagram from {}: longer than erp.udp.buffer-size ({} bytes). "
+                            + "Send it in fragments or raise the buffer size.", sender, bufferSize);
+                    continue;
+                }
+                buffer.flip();
+                packetHandlerExecutor.execute(() -> {
+                    try {
+                        processPacket(buffer, sender);
+                    } finally {
+                        bufferPool.release(buffer);
                     }
+                });
+                handedOff = true;
+            } catch (ClosedChannelException e) {
+                log.info("UDP channel closed.");
+                break;
+            } catch (RejectedExecutionException e) {
+                log.warn("UDP packet handler rejected a packet, listener is shutting down.");
+            } catch (IOException e) {
+                log.error("Error receiving UDP packet", e);
+            } finally {
+                if (!handedOff) {
+                    bufferPool.release(buffer);
                 }
             }
-        } catch (Exception e) {
-            log.error("Failed to start UDP listener on port {}", udpPort, e);
-        } finally {
-            packetHandlerExecutor.shutdown();
-            log.info("UDP listener stopped.");
         }
+        log.info("UDP receiver {} stopped.", Thread.currentThread().getName());
     }
 
-    private void processPacket(DatagramPacket packet) {
-        String receivedData = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
-        log.info("Received UDP data from {}:{}: {}", packet.getAddress(), packet.getPort(), receivedData);
+    private void processPacket(ByteBuffer buffer, SocketAddress sender) {
+        long packetNumber = packetsReceived.incrementAndGet();
+        if (log.isDebugEnabled()) {
+            log.debug("Received UDP data from {}: {}", sender, decoder.describe(buffer));
+        } else if (payloadLogSampleRate > 0 && packetNumber % payloadLogSampleRate == 0) {
+            log.info("Received UDP data from {} (packet #{}, sampled 1/{}): {}", sender, packetNumber, payloadLogSampleRate, decoder.describe(buffer));
+        }
 
         try {
-            ClientOrderRequestDto orderRequest = objectMapper.readValue(receivedData, ClientOrderRequestDto.class);
-            orderService.processAndSaveOrder(orderRequest);
+            List<ClientOrderRequestDto> orderRequests;
+            if (OrderFragmentReassembler.isFragment(buffer)) {
+                byte[] message = reassembler.accept(sender, buffer);
+                if (message == null) {
+                    return;
+                }
+                orderRequests = decoder.decode(message);
+            } else {
+                orderRequests = decoder.decode(buffer);
+            }
+            if (orderRequests.isEmpty()) {
+                log.warn("Received an empty order batch from {}", sender);
+                return;
+            }
+            // With the journal on, orders count as received once journaled; the drainer takes them to the database
+            if (orderJournal.isEnabled()) {
+                journal(orderRequests, sender);
+            } else {
+                orderIngestBatcher.submit(orderRequests);
+            }
+        } catch (RejectedExecutionException e) {
+            log.warn("Dropped orders from UDP packet from {}: {}", sender, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while queueing order from UDP packet from {}", sender);
         } catch (Exception e) {
-            log.error("Failed to parse or process order from UDP packet: {}", receivedData, e);
+            log.error("Failed to parse or process order from UDP packet from {}: {}", sender, decoder.describe(buffer), e);
+        }
+    }
+
+    private void journal(List<ClientOrderRequestDto> orderRequests, SocketAddress sender) {
+        try {
+            orderJournal.append(orderRequests);
+        } catch (IOException e) {
+            journalRejectedCounter.increment(orderRequests.size());
+            log.error("Dropped {} order(s) from UDP packet from {}: could not journal them: {}", orderRequests.size(), sender, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        for (DatagramChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing UDP channel", e);
+            }
         }
+        channels.clear();
+        log.info("UDP listener stopped.");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,191 @@
+package pt.feup.industrial.erpsystem.mes;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Stops calling the MES while it is unhealthy. CLOSED: calls go through and the outcome of the
+ * last {@code window-size} calls is tracked; once at least {@code minimum-calls} were made and the
+ * failure rate reaches the threshold the breaker OPENs. OPEN: calls fail fast for
+ * {@code open-duration}. HALF_OPEN: up to {@code half-open-probes} calls are let through; if they
+ * all succeed the breaker closes again, any failure opens it for another round.
+ * <p>
+ * Only failures that say something about the MES health count (network errors, timeouts, 5xx);
+ * an order the MES refuses is a success here. Each call holds the {@link Permit} it was let
+ * through with, and its outcome only counts if the breaker has not changed state since: a call
+ * started while CLOSED that ends during HALF_OPEN is not a probe.
+ */
+@Component
+public class MesCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(MesCircuitBreaker.class);
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    // The state transition a call was let through after
+    public record Permit(long generation) {
+    }
+
+    private final int failureRateThreshold;
+    private final int minimumCalls;
+    private final long openDurationNanos;
+    private final int halfOpenProbes;
+
+    // Ring buffer of the latest call outcomes while CLOSED
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCalls;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long generation;
+    private long openUntilNanos;
+    private int probesInFlight;
+    private int probeSuccesses;
+
+    private final Counter rejectedCounter;
+    private final Counter openedCounter;
+
+    @Autowired
+    public MesCircuitBreaker(@Value("${mes.api.circuit-breaker.failure-rate-threshold:50}") int failureRateThreshold,
+                             @Value("${mes.api.circuit-breaker.window-size:20}") int windowSize,
+                             @Value("${mes.api.circuit-breaker.minimum-calls:10}") int minimumCalls,
+                             @Value("${mes.api.circuit-breaker.open-duration:30s}") Duration openDuration,
+                             @Value("${mes.api.circuit-breaker.half-open-probes:3}") int halfOpenProbes,
+                             MeterRegistry meterRegistry) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.window = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.openDurationNanos = openDuration.toNanos();
+        this.halfOpenProbes = halfOpenProbes;
+        Gauge.builder("erp.mes.circuit.state", this, breaker -> breaker.state().ordinal())
+                .description("MES circuit breaker state: 0 closed, 1 open, 2 half-open")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("erp.mes.circuit.rejected")
+                .description("MES calls failed fast because the circuit breaker was open")
+                .register(meterRegistry);
+        this.openedCounter = Counter.builder("erp.mes.circuit.opened")
+                .description("Times the MES circuit breaker opened")
+                .register(meterRegistry);
+    }
+
+    public synchronized State state() {
+        if (state == State.OPEN && System.nanoTime() - openUntilNanos >= 0) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public synchronized int permittedCalls() {
+        return switch (state()) {
+            case CLOSED -> Integer.MAX_VALUE;
+            case OPEN -> 0;
+            // Also right after open-duration ran out, before tryAcquire moved the state on
+            case HALF_OPEN -> state == State.HALF_OPEN ? Math.max(0, halfOpenProbes - probesInFlight - probeSuccesses) : halfOpenProbes;
+        };
+    }
+
+    // Null when the call must not be made; otherwise exactly one of onSuccess, onFailure or release must follow
+    public synchronized Permit tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openUntilNanos < 0) {
+                rejectedCounter.increment();
+                return null;
+            }
+            state = State.HALF_OPEN;
+            generation++;
+            probesInFlight = 0;
+            probeSuccesses = 0;
+            log.info("MES circuit breaker half-open: probing with up to {} call(s).", halfOpenProbes);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight + probeSuccesses >= halfOpenProbes) {
+                rejectedCounter.increment();
+                return null;
+            }
+            probesInFlight++;
+        }
+        return new Permit(generation);
+    }
+
+    public synchronized void onSuccess(Permit permit) {
+        if (isStale(permit)) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            probesInFlight--;
+            if (++probeSuccesses >= halfOpenProbes) {
+                state = State.CLOSED;
+                generation++;
+                resetWindow();
+                log.info("MES circuit breaker closed: the MES answered all probes.");
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure(Permit permit) {
+        if (isStale(permit)) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            open("a probe failed");
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (windowCalls >= minimumCalls && windowFailures * 100 >= failureRateThreshold * windowCalls) {
+                open(windowFailures + " of the last " + windowCalls + " calls failed");
+            }
+        }
+    }
+
+    // The call ended without telling anything about the MES health (e.g. it was cancelled)
+    public synchronized void release(Permit permit) {
+        if (!isStale(permit) && state == State.HALF_OPEN) {
+            probesInFlight--;
+        }
+    }
+
+    // Acquired before the last state change: the outcome says nothing about the current state
+    private boolean isStale(Permit permit) {
+        return permit.generation() != generation;
+    }
+
+    private void record(boolean failure) {
+        if (windowCalls == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCalls++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void open(String reason) {
+        state = State.OPEN;
+        generation++;
+        openUntilNanos = System.nanoTime() + openDurationNanos;
+        resetWindow();
+        openedCounter.increment();
+        log.warn("MES circuit breaker opened ({}). Failing MES calls fast for {} ms.", reason, openDurationNanos / 1_000_000);
+    }
+
+    private void resetWindow() {
+        windowIndex = 0;
+        windowCalls = 0;
+        windowFailures = 0;
+    }
+}
@@ -5,13 +5,22 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientRequestException;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import pt.feup.industrial.erpsystem.dto.MesBulkItemResultDto;
 import pt.feup.industrial.erpsystem.dto.MesProductionOrderDto;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
 
 @Service
 public class MesClientService {
@@ -19,54 +28,217 @@ public class MesClientService {
     private static final Logger log = LoggerFactory.getLogger(MesClientService.class);
 
     private final WebClient mesWebClient;
+    private final MesCircuitBreaker circuitBreaker;
 
     @Value("${mes.api.productionOrderEndpoint:/api/production-orders}")
     private String productionOrderEndpoint;
 
+    @Value("${mes.api.request-timeout:10s}")
+    private Duration requestTimeout;
+
+    @Value("${mes.api.bulkProductionOrderEndpoint:/api/production-orders/bulk}")
+    private String bulkProductionOrderEndpoint;
+
+    @Value("${mes.api.bulk-enabled:true}")
+    private boolean bulkEnabled;
+
+    @Value("${mes.api.bulk-size:100}")
+    private int bulkSize;
+
+    // After the MES turned out not to support bulk requests, per-item requests are used for this long before asking again
+    @Value("${mes.api.bulk-probe-interval:1h}")
+    private Duration bulkProbeInterval;
+
+    private volatile long bulkUnsupportedUntilNanos = System.nanoTime();
+
     @Autowired
-    public MesClientService(WebClient mesWebClient) {
+    public MesClientService(WebClient mesWebClient, MesCircuitBreaker circuitBreaker) {
         this.mesWebClient = mesWebClient;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    // MES calls the circuit breaker lets through right now: none while open, the remaining probes while half-open
+    public int permittedCalls() {
+        return circuitBreaker.permittedCalls();
+    }
+
+    /**
+     * Sends the production orders with at most maxConcurrency requests in flight, emitting each
+     * result as its response arrives (not in request order). Orders go in bulk requests of
+     * {@code mes.api.bulk-size} when enabled, falling back to one request per order if the MES
+     * has no bulk endpoint. Never errors: failures are emitted as results that were not accepted,
+     * including requests not made because the circuit breaker is open.
+     */
+    public Flux<MesDispatchResult> dispatchAll(List<MesProductionOrderDto> orderRequests, int maxConcurrency) {
+        if (!bulkEnabled || orderRequests.size() < 2 || System.nanoTime() - bulkUnsupportedUntilNanos < 0) {
+            return Flux.fromIterable(orderRequests).flatMap(this::dispatch, maxConcurrency);
+        }
+        return Flux.fromIterable(orderRequests)
+                .buffer(bulkSize)
+                .flatMap(chunk -> dispatchBulk(chunk)
+                        .onErrorResume(BulkUnsupportedException.class,
+                                e -> Flux.fromIterable(chunk).flatMap(this::dispatch, maxConcurrency)), maxConcurrency);
+    }
+
+    private Flux<MesDispatchResult> dispatchBulk(List<MesProductionOrderDto> orderRequests) {
+        MesCircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            return Flux.fromIterable(orderRequests).map(this::circuitOpen);
+        }
+        return Mono.defer(() -> {
+                    log.debug("Sending {} production requests to MES in bulk", orderRequests.size());
+                    return mesWebClient.post()
+                            .uri(bulkProductionOrderEndpoint)
+                            .bodyValue(orderRequests)
+                            .retrieve()
+                            .onStatus(MesClientService::isBulkUnsupported, clientResponse -> {
+                                circuitBreaker.onSuccess(permit);
+                                bulkUnsupportedUntilNanos = System.nanoTime() + bulkProbeInterval.toNanos();
+                                log.warn("MES answered {} to a bulk request. Sending production orders one by one for the next {}.",
+                                        clientResponse.statusCode(), bulkProbeInterval);
+                                return Mono.error(new BulkUnsupportedException());
+                            })
+                            .onStatus(status -> status.is4xxClientError() || status.is5xxServerError(), clientResponse -> {
+                                log.error("MES returned error status {} for a bulk request of {} items", clientResponse.statusCode(), orderRequests.size());
+                                return Mono.error(new MesCommunicationException(clientResponse.statusCode()));
+                            })
+                            .bodyToFlux(MesBulkItemResultDto.class)
+                            .collectList();
+                })
+                .timeout(requestTimeout)
+                .doOnSuccess(itemResults -> circuitBreaker.onSuccess(permit))
+                .flatMapIterable(itemResults -> matchBulkResults(orderRequests, itemResults))
+                .onErrorResume(e -> !(e instanceof BulkUnsupportedException), e -> {
+                    recordFailure(permit, e);
+                    for (MesProductionOrderDto orderRequest : orderRequests) {
+                        logFailure(orderRequest, e);
+                    }
+                    return Flux.fromIterable(orderRequests).map(orderRequest -> MesDispatchResult.failed(orderRequest, isRetryable(e), e.getMessage()));
+                })
+                .doOnCancel(() -> circuitBreaker.release(permit));
+    }
+
+    private List<MesDispatchResult> matchBulkResults(List<MesProductionOrderDto> orderRequests, List<MesBulkItemResultDto> itemResults) {
+        Map<Long, MesBulkItemResultDto> resultsByItemId = new HashMap<>();
+        for (MesBulkItemResultDto itemResult : itemResults) {
+            resultsByItemId.put(itemResult.getErpOrderItemId(), itemResult);
+        }
+        List<MesDispatchResult> results = new ArrayList<>(orderRequests.size());
+        for (MesProductionOrderDto orderRequest : orderRequests) {
+            MesBulkItemResultDto itemResult = resultsByItemId.get(orderRequest.getErpOrderItemId());
+            if (itemResult == null) {
+                log.error("MES bulk response has no result for Order Item ID {}", orderRequest.getErpOrderItemId());
+                results.add(MesDispatchResult.failed(orderRequest, true, "Missing from the bulk response"));
+            } else if (!itemResult.isAccepted()) {
+                log.error("MES rejected Order Item ID {}: {}", orderRequest.getErpOrderItemId(), itemResult.getReason());
+                results.add(MesDispatchResult.failed(orderRequest, false, itemResult.getReason()));
+            } else {
+                log.info("MES accepted Order Item ID: {}", orderRequest.getErpOrderItemId());
+                results.add(MesDispatchResult.accepted(orderRequest));
+            }
+        }
+        return results;
+    }
+
+    private static boolean isBulkUnsupported(HttpStatusCode status) {
+        return status.value() == HttpStatus.NOT_FOUND.value()
+                || status.value() == HttpStatus.METHOD_NOT_ALLOWED.value()
+                || status.value() == HttpStatus.NOT_IMPLEMENTED.value();
+    }
+
+    public Mono<MesDispatchResult> dispatch(MesProductionOrderDto orderRequest) {
+        return Mono.defer(() -> {
+            MesCircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+            return permit != null ? send(orderRequest, permit) : Mono.just(circuitOpen(orderRequest));
+        });
+    }
+
+    private Mono<MesDispatchResult> send(MesProductionOrderDto orderRequest, MesCircuitBreaker.Permit permit) {
+        return Mono.defer(() -> {
+                    log.debug("Attempting to send production request to MES: {}", orderRequest);
+                    return mesWebClient.post()
+                            .uri(productionOrderEndpoint)
+                            .bodyValue(orderRequest)
+                            .retrieve()
+                            .onStatus(HttpStatus.ACCEPTED::equals, response -> {
+                                log.info("MES returned HTTP 202 Accepted for Order Item ID: {}", orderRequest.getErpOrderItemId());
+                                return Mono.empty();
+                            })
+                            .onStatus(status -> status.is4xxClientError() || status.is5xxServerError(), clientResponse -> {
+                                log.error("MES returned error status {} for Order Item ID: {}", clientResponse.statusCode(), orderRequest.getErpOrderItemId());
+                                return Mono.error(new MesCommunicationException(clientResponse.statusCode()));
+                            })
+                            .toBodilessEntity();
+                })
+                .timeout(requestTimeout)
+                .then(Mono.fromSupplier(() -> {
+                    circuitBreaker.onSuccess(permit);
+                    return MesDispatchResult.accepted(orderRequest);
+                }))
+                .onErrorResume(e -> {
+                    recordFailure(permit, e);
+                    logFailure(orderRequest, e);
+                    return Mono.just(MesDispatchResult.failed(orderRequest, isRetryable(e), e.getMessage()));
+                })
+                .doOnCancel(() -> circuitBreaker.release(permit));
+    }
+
+    private MesDispatchResult circuitOpen(MesProductionOrderDto orderRequest) {
+        log.debug("MES circuit breaker is open. Not sending Order Item ID {}.", orderRequest.getErpOrderItemId());
+        return MesDispatchResult.notSent(orderRequest, "MES circuit breaker open");
+    }
+
+    // A refused order still means the MES is up; only retryable failures count against its health
+    private void recordFailure(MesCircuitBreaker.Permit permit, Throwable e) {
+        if (isRetryable(e)) {
+            circuitBreaker.onFailure(permit);
+        } else {
+            circuitBreaker.onSuccess(permit);
+        }
     }
 
-    public boolean sendProductionOrder(MesProductionOrderDto orderRequest) {
-        log.debug("Attempting to send production request to MES: {}", orderRequest);
-        try {
-            mesWebClient.post()
-                    .uri(productionOrderEndpoint)
-                    .bodyValue(orderRequest)
-                    .retrieve()
-                    .onStatus(HttpStatus.ACCEPTED::equals, response -> {
-                        log.info("MES returned HTTP 202 Accepted for Order Item ID: {}", orderRequest.getErpOrderItemId());
-                        return Mono.empty();
-                    })
-                    .onStatus(status -> status.is4xxClientError() || status.is5xxServerError(), clientResponse -> {
-                        log.error("MES returned error status {} for Order Item ID: {}", clientResponse.statusCode(), orderRequest.getErpOrderItemId());
-                        return Mono.error(new MesCommunicationException("MES returned error: " + clientResponse.statusCode()));
-                    })
-                    .toBodilessEntity()
-                    .block(Duration.ofSeconds(10));
-
-            return true;
-
-        } catch (WebClientRequestException e) {
+    private void logFailure(MesProductionOrderDto orderRequest, Throwable e) {
+        if (e instanceof WebClientRequestException) {
             log.error("Network error sending request to MES for Order Item ID {}: {}", orderRequest.getErpOrderItemId(), e.getMessage());
-            return false;
-        } catch (WebClientResponseException e) {
+        } else if (e instanceof WebClientResponseException responseException) {
             log.error("HTTP error sending request to MES for Order Item ID {}: Status={}, Body={}",
-                    orderRequest.getErpOrderItemId(), e.getRawStatusCode(), e.getResponseBodyAsString());
-            return false;
-        } catch (MesCommunicationException e) {
+                    orderRequest.getErpOrderItemId(), responseException.getStatusCode(), responseException.getResponseBodyAsString());
+        } else if (e instanceof MesCommunicationException) {
             log.error("MES communication failed for Order Item ID {}: {}", orderRequest.getErpOrderItemId(), e.getMessage());
-            return false;
-        } catch (Exception e) {
+        } else if (e instanceof TimeoutException) {
+            log.error("MES did not answer within {} for Order Item ID {}", requestTimeout, orderRequest.getErpOrderItemId());
+        } else {
             log.error("Unexpected error sending request to MES for Order Item ID {}: {}", orderRequest.getErpOrderItemId(), e.getMessage(), e);
-            return false;
         }
     }
 
+    // The MES refusing an order (4xx) is final; overload, timeouts and server errors are worth retrying
+    private static boolean isRetryable(Throwable e) {
+        if (e instanceof MesCommunicationException communicationException) {
+            return isRetryable(communicationException.statusCode);
+        }
+        if (e instanceof WebClientResponseException responseException) {
+            return isRetryable(responseException.getStatusCode());
+        }
+        return true;
+    }
+
+    private static boolean isRetryable(HttpStatusCode status) {
+        return status.is5xxServerError()
+                || status.value() == HttpStatus.REQUEST_TIMEOUT.value()
+                || status.value() == HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+
     private static class MesCommunicationException extends RuntimeException {
-        public MesCommunicationException(String message) {
-            super(message);
+
+        private final HttpStatusCode statusCode;
+
+        public MesCommunicationException(HttpStatusCode statusCode) {
+            super("MES returned error: " + statusCode);
+            this.statusCode = statusCode;
         }
     }
-}
\ No newline at end of file
+
+    private static class BulkUnsupportedException extends RuntimeException {
+    }
+}
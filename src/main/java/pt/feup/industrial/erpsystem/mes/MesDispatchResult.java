@@ -0,0 +1,23 @@
+package pt.feup.industrial.erpsystem.mes;
+
+import pt.feup.industrial.erpsystem.dto.MesProductionOrderDto;
+
+/**
+ * Outcome of sending one production order; failures are already logged by MesClientService.
+ * A failure is retryable unless the MES itself refused the order (a 4xx answer or a bulk rejection).
+ * {@code sent} is false when no request was made at all, because the circuit breaker failed it fast.
+ */
+public record MesDispatchResult(MesProductionOrderDto request, boolean accepted, boolean retryable, String failureReason, boolean sent) {
+
+    public static MesDispatchResult accepted(MesProductionOrderDto request) {
+        return new MesDispatchResult(request, true, false, null, true);
+    }
+
+    public static MesDispatchResult failed(MesProductionOrderDto request, boolean retryable, String failureReason) {
+        return new MesDispatchResult(request, false, retryable, failureReason, true);
+    }
+
+    public static MesDispatchResult notSent(MesProductionOrderDto request, String reason) {
+        return new MesDispatchResult(request, false, true, reason, false);
+    }
+}
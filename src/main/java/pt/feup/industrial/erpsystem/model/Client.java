@@ -25,7 +25,7 @@ import java.util.Objects;
 public class Client {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @PooledSequenceId(sequenceName = "clients_seq")
     @Column(name = "id")
     private Long id;
 
@@ -1,6 +1,7 @@
 package pt.feup.industrial.erpsystem.model;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
@@ -17,6 +18,9 @@ import java.util.Objects;
 @Entity
 @Table(name = "client_orders", uniqueConstraints = {
         @UniqueConstraint(name = "uk_client_clientorderid", columnNames = {"client_id", "client_order_id"})
+}, indexes = {
+        @Index(name = "idx_clientorder_client_id", columnList = "client_id, id"),
+        @Index(name = "idx_clientorder_received", columnList = "received_timestamp")
 })
 @Getter
 @Setter
@@ -25,7 +29,7 @@ import java.util.Objects;
 public class ClientOrder {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @PooledSequenceId(sequenceName = "client_orders_seq")
     @Column(name = "id")
     private Long id;
 
@@ -49,6 +53,19 @@ public class ClientOrder {
     @Column(name = "status", nullable = false)
     private OrderStatus status = OrderStatus.PENDING;
 
+    // Maintained as items complete, so telling whether the order is done never needs its items
+    @Column(name = "items_total", nullable = false)
+    private int itemsTotal;
+
+    @Column(name = "items_completed", nullable = false)
+    private int itemsCompleted;
+
+    // Also bumped by the bulk status and counter updates in ClientOrderRepository
+    @Version
+    @Column(name = "version", nullable = false)
+    @JsonIgnore
+    private Long version;
+
     @OneToMany(
             mappedBy = "clientOrder",
             cascade = CascadeType.ALL,
@@ -61,6 +78,7 @@ public class ClientOrder {
     @PrePersist
     protected void onCreate() {
         receivedTimestamp = LocalDateTime.now();
+        itemsTotal = items.size();
     }
 
     public void addOrderItem(OrderItem item) {
@@ -0,0 +1,98 @@
+package pt.feup.industrial.erpsystem.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+// A production request for the MES, written in the same transaction that schedules its item
+@Entity
+@Table(name = "mes_outbox", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_mesoutbox_orderitem", columnNames = {"order_item_id"})
+}, indexes = {
+        @Index(name = "idx_mesoutbox_status_nextattempt", columnList = "status, next_attempt_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@ToString
+public class MesOutboxEntry {
+
+    @Id
+    @PooledSequenceId(sequenceName = "mes_outbox_seq")
+    @Column(name = "id")
+    private Long id;
+
+    @NotNull
+    @Column(name = "order_item_id", nullable = false, updatable = false)
+    private Long orderItemId;
+
+    @NotNull
+    @Column(name = "client_order_id", nullable = false, updatable = false)
+    private Long clientOrderId;
+
+    @NotNull
+    @Column(name = "product_type", nullable = false, updatable = false)
+    private Integer productType;
+
+    @NotNull
+    @Column(name = "quantity", nullable = false, updatable = false)
+    private Integer quantity;
+
+    @NotNull
+    @Column(name = "due_date", nullable = false, updatable = false)
+    private LocalDate dueDate;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private MesOutboxStatus status = MesOutboxStatus.PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @NotNull
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @NotNull
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "delivered_at")
+    private LocalDateTime deliveredAt;
+
+    public static MesOutboxEntry forItem(OrderItem item, LocalDateTime now) {
+        MesOutboxEntry entry = new MesOutboxEntry();
+        entry.setOrderItemId(item.getId());
+        entry.setClientOrderId(item.getClientOrder().getId());
+        entry.setProductType(item.getProductType());
+        entry.setQuantity(item.getQuantity());
+        entry.setDueDate(item.getDueDate());
+        entry.setNextAttemptAt(now);
+        entry.setCreatedAt(now);
+        return entry;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MesOutboxEntry that = (MesOutboxEntry) o;
+        return id != null && Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+}
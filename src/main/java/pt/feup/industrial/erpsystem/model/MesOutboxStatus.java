@@ -0,0 +1,7 @@
+package pt.feup.industrial.erpsystem.model;
+
+public enum MesOutboxStatus {
+    PENDING,    // Waiting for (re)delivery at next_attempt_at
+    DELIVERED,  // MES accepted the production request
+    DEAD        // Gave up: rejected by the MES or out of attempts; the item is FAILED_TO_SEND
+}
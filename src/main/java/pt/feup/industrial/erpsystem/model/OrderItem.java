@@ -13,7 +13,11 @@ import java.time.LocalDateTime;
 import java.util.Objects;
 
 @Entity
-@Table(name = "order_items")
+@Table(name = "order_items", indexes = {
+        @Index(name = "idx_orderitem_clientorder", columnList = "client_order_id"),
+        @Index(name = "idx_orderitem_duedate_id", columnList = "due_date, id"),
+        @Index(name = "idx_orderitem_producttype_id", columnList = "product_type, id")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -21,7 +25,7 @@ import java.util.Objects;
 public class OrderItem {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @PooledSequenceId(sequenceName = "order_items_seq")
     @Column(name = "id")
     private Long id;
 
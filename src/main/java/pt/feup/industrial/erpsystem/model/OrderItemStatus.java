@@ -2,7 +2,8 @@ package pt.feup.industrial.erpsystem.model;
 
 public enum OrderItemStatus {
     PENDING,        // Waiting to be sent to MES (or initial state if order status is PENDING)
-    SENT_TO_MES,    // Request sent to MES
+    QUEUED_FOR_MES, // Scheduled; in the MES outbox until delivery is confirmed
+    SENT_TO_MES,    // MES accepted the production request
     COMPLETED,      // MES reported completion
-    FAILED_TO_SEND  // MES reported failure or cancellation
+    FAILED_TO_SEND  // MES rejected the request, or delivery gave up after all retries
 }
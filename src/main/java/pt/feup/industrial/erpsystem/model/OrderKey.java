@@ -0,0 +1,5 @@
+package pt.feup.industrial.erpsystem.model;
+
+// Business key of a client order: the client's NIF plus the orderID the client assigned
+public record OrderKey(Long nif, Long clientOrderId) {
+}
@@ -0,0 +1,12 @@
+package pt.feup.industrial.erpsystem.model;
+
+import java.time.LocalDate;
+
+// Planned items and pieces of one product type on one day of the production plan
+public record PlannedDayLoad(LocalDate day, int productType, long items, long pieces) {
+
+    // Used by JPQL constructor expressions
+    public PlannedDayLoad(LocalDate day, Integer productType, Long items, Long pieces) {
+        this(day, productType.intValue(), items.longValue(), pieces.longValue());
+    }
+}
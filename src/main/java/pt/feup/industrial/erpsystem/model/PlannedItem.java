@@ -0,0 +1,83 @@
+package pt.feup.industrial.erpsystem.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.domain.Persistable;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+// One pending order item in the materialized production plan: the day it is expected to go to the factory
+@Entity
+@Table(name = "production_plan", indexes = {
+        @Index(name = "idx_productionplan_clientorder", columnList = "client_order_id"),
+        @Index(name = "idx_productionplan_day_type", columnList = "planned_day, product_type")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@ToString
+public class PlannedItem implements Persistable<Long> {
+
+    @Id
+    @Column(name = "order_item_id")
+    private Long orderItemId;
+
+    @NotNull
+    @Column(name = "client_order_id", nullable = false)
+    private Long clientOrderId;
+
+    @NotNull
+    @Column(name = "product_type", nullable = false)
+    private Integer productType;
+
+    @NotNull
+    @Column(name = "quantity", nullable = false)
+    private Integer quantity;
+
+    @NotNull
+    @Column(name = "due_date", nullable = false)
+    private LocalDate dueDate;
+
+    // Null when the item does not fit within the planning horizon
+    @Column(name = "planned_day")
+    private LocalDate plannedDay;
+
+    // For items beyond the horizon, counted from the day after it (a lower bound)
+    @Column(name = "projected_lateness_days", nullable = false)
+    private int projectedLatenessDays;
+
+    @Column(name = "projected_penalty", nullable = false)
+    private double projectedPenalty;
+
+    // Rows are only ever inserted or deleted, never merged
+    @Override
+    @JsonIgnore
+    public Long getId() {
+        return orderItemId;
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PlannedItem that = (PlannedItem) o;
+        return orderItemId != null && Objects.equals(orderItemId, that.orderItemId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(orderItemId);
+    }
+}
@@ -0,0 +1,19 @@
+package pt.feup.industrial.erpsystem.model;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+// Sequence-backed id whose allocation size comes from configuration instead of the annotation
+@IdGeneratorType(PooledSequenceIdGenerator.class)
+@Retention(RUNTIME)
+@Target({FIELD, METHOD})
+public @interface PooledSequenceId {
+
+    String sequenceName();
+}
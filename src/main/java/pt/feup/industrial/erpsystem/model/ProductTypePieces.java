@@ -0,0 +1,10 @@
+package pt.feup.industrial.erpsystem.model;
+
+// Pieces of one product type, e.g. already dispatched on a day
+public record ProductTypePieces(int productType, long pieces) {
+
+    // Used by JPQL constructor expressions
+    public ProductTypePieces(Integer productType, Long pieces) {
+        this(productType.intValue(), pieces.longValue());
+    }
+}
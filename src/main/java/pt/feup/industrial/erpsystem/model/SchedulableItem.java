@@ -0,0 +1,27 @@
+package pt.feup.industrial.erpsystem.model;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+
+// Scheduling view of a PENDING order item: plain values only, so queued items hold no entity or session state
+public record SchedulableItem(long itemId, long orderId, int productType, int quantity, long dueEpochDay, double penaltyPerDay) {
+
+    // Earliest due date first, then oldest order, matching the order items used to be scheduled in
+    public static final Comparator<SchedulableItem> PRIORITY = Comparator.comparingLong(SchedulableItem::dueEpochDay)
+            .thenComparingLong(SchedulableItem::orderId)
+            .thenComparingLong(SchedulableItem::itemId);
+
+    // Used by JPQL constructor expressions
+    public SchedulableItem(Long itemId, Long orderId, Integer productType, Integer quantity, LocalDate dueDate, Double penaltyPerDay) {
+        this(itemId, orderId, productType, quantity, dueDate.toEpochDay(), penaltyPerDay);
+    }
+
+    public static SchedulableItem of(OrderItem item) {
+        return new SchedulableItem(item.getId(), item.getClientOrder().getId(), item.getProductType(), item.getQuantity(),
+                item.getDueDate(), item.getPenaltyPerDay());
+    }
+
+    public LocalDate dueDate() {
+        return LocalDate.ofEpochDay(dueEpochDay);
+    }
+}
@@ -1,10 +1,16 @@
 package pt.feup.industrial.erpsystem.repository;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import pt.feup.industrial.erpsystem.model.ClientOrder;
 import pt.feup.industrial.erpsystem.model.Client;
+import pt.feup.industrial.erpsystem.model.OrderItemStatus;
+import pt.feup.industrial.erpsystem.model.OrderKey;
 import pt.feup.industrial.erpsystem.model.OrderStatus;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,4 +27,54 @@ public interface ClientOrderRepository extends JpaRepository<ClientOrder, Long>
     List<ClientOrder> findByClientOrderId(Long clientOrderId);
 
     List<ClientOrder> findByStatus(OrderStatus status);
+
+    // Keyset pages, newest first: pass the last id of the previous page (Long.MAX_VALUE for the first)
+    List<ClientOrder> findByIdLessThanOrderByIdDesc(Long beforeId, Limit limit);
+
+    List<ClientOrder> findByClient_NifAndIdLessThanOrderByIdDesc(Long nif, Long beforeId, Limit limit);
+
+    // May over-match (any NIF x any orderID); callers filter on the exact key
+    @Query("SELECT new pt.feup.industrial.erpsystem.model.OrderKey(c.nif, co.clientOrderId) FROM ClientOrder co JOIN co.client c " +
+            "WHERE c.nif IN :nifs AND co.clientOrderId IN :clientOrderIds")
+    List<OrderKey> findExistingOrderKeys(Collection<Long> nifs, Collection<Long> clientOrderIds);
+
+    // The bulk updates bump the version themselves, so an order loaded before one of them fails to save instead of undoing it
+    @Modifying
+    @Query("UPDATE ClientOrder co SET co.status = :toStatus, co.version = co.version + 1 WHERE co.id IN :ids AND co.status = :fromStatus")
+    int updateStatusByIdIn(Collection<Long> ids, OrderStatus fromStatus, OrderStatus toStatus);
+
+    // Moves the given orders that have items, none of them in blockingItemStatuses, from fromStatus to toStatus
+    @Modifying
+    @Query("UPDATE ClientOrder co SET co.status = :toStatus, co.version = co.version + 1 WHERE co.id IN :ids AND co.status = :fromStatus " +
+            "AND EXISTS (SELECT oi.id FROM OrderItem oi WHERE oi.clientOrder.id = co.id) " +
+            "AND NOT EXISTS (SELECT oi.id FROM OrderItem oi WHERE oi.clientOrder.id = co.id AND oi.status IN :blockingItemStatuses)")
+    int updateStatusWhereNoItemIn(Collection<Long> ids, OrderStatus fromStatus, OrderStatus toStatus,
+                                  Collection<OrderItemStatus> blockingItemStatuses);
+
+    /**
+     * Counts completed items in place. The row lock this takes is held until commit, so concurrent
+     * completions of sibling items queue up here and each one sees the counts of those before it.
+     */
+    @Modifying
+    @Query("UPDATE ClientOrder co SET co.itemsCompleted = co.itemsCompleted + :completed, co.version = co.version + 1 WHERE co.id IN :ids")
+    int addCompletedItems(Collection<Long> ids, int completed);
+
+    // Orders among the given ones whose items have all completed become COMPLETED
+    @Modifying
+    @Query("UPDATE ClientOrder co SET co.status = pt.feup.industrial.erpsystem.model.OrderStatus.COMPLETED, co.version = co.version + 1 " +
+            "WHERE co.id IN :ids AND co.itemsCompleted >= co.itemsTotal AND co.status <> pt.feup.industrial.erpsystem.model.OrderStatus.COMPLETED")
+    int completeFinishedOrders(Collection<Long> ids);
+
+    // Newest first, keyset-paged on the internal id
+    @Query("SELECT co.id AS id, c.nif AS nif, co.clientOrderId AS clientOrderId FROM ClientOrder co JOIN co.client c " +
+            "WHERE co.id < :beforeId ORDER BY co.id DESC")
+    List<OrderKeyRow> findOrderKeysBefore(Long beforeId, Limit limit);
+
+    interface OrderKeyRow {
+        Long getId();
+
+        Long getNif();
+
+        Long getClientOrderId();
+    }
 }
@@ -0,0 +1,39 @@
+package pt.feup.industrial.erpsystem.repository;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import pt.feup.industrial.erpsystem.model.MesOutboxEntry;
+import pt.feup.industrial.erpsystem.model.MesOutboxStatus;
+import pt.feup.industrial.erpsystem.model.ProductTypePieces;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface MesOutboxRepository extends JpaRepository<MesOutboxEntry, Long> {
+
+    // FOR UPDATE SKIP LOCKED (lock timeout -2): concurrent relays each claim different rows instead of waiting
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT e FROM MesOutboxEntry e WHERE e.status = :status AND e.nextAttemptAt <= :now ORDER BY e.nextAttemptAt")
+    List<MesOutboxEntry> findDueForUpdateSkipLocked(MesOutboxStatus status, LocalDateTime now, Limit limit);
+
+    long countByStatus(MesOutboxStatus status);
+
+    @Modifying
+    @Query("UPDATE MesOutboxEntry e SET e.status = :status, e.deliveredAt = :deliveredAt, e.lastError = NULL WHERE e.id IN :ids")
+    int markDelivered(Collection<Long> ids, MesOutboxStatus status, LocalDateTime deliveredAt);
+
+    // Every scheduled item gets an entry, so entries created in a period are what was scheduled in it;
+    // DEAD ones never reached the MES and take up none of its capacity
+    @Query("SELECT new pt.feup.industrial.erpsystem.model.ProductTypePieces(e.productType, SUM(e.quantity)) " +
+            "FROM MesOutboxEntry e WHERE e.createdAt >= :from AND e.createdAt < :to " +
+            "AND e.status <> pt.feup.industrial.erpsystem.model.MesOutboxStatus.DEAD GROUP BY e.productType")
+    List<ProductTypePieces> sumPiecesByProductTypeCreatedBetween(LocalDateTime from, LocalDateTime to);
+}
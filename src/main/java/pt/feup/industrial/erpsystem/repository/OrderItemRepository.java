@@ -1,12 +1,21 @@
 package pt.feup.industrial.erpsystem.repository;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import pt.feup.industrial.erpsystem.model.OrderItem;
 import pt.feup.industrial.erpsystem.model.OrderItemStatus;
 import pt.feup.industrial.erpsystem.model.OrderStatus;
+import pt.feup.industrial.erpsystem.model.SchedulableItem;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
@@ -17,6 +26,36 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
     List<OrderItem> findByProductTypeAndDueDate(Integer productType, LocalDate dueDate);
     List<OrderItem> findByClientOrder_Id(Long clientOrderId);
 
-    @Query("SELECT oi FROM OrderItem oi WHERE oi.status = :itemStatus AND oi.clientOrder.status = :orderStatus ORDER BY oi.dueDate ASC, oi.clientOrder.id ASC")
-    List<OrderItem> findPendingItemsSortedByDueDate(OrderItemStatus itemStatus, OrderStatus orderStatus);
+    // Keyset pages, newest first, over the (due_date, id) and (product_type, id) indexes
+    List<OrderItem> findByDueDateAndIdLessThanOrderByIdDesc(LocalDate dueDate, Long beforeId, Limit limit);
+    List<OrderItem> findByProductTypeAndIdLessThanOrderByIdDesc(Integer productType, Long beforeId, Limit limit);
+
+    // FOR UPDATE SKIP LOCKED (lock timeout -2): items another instance is claiming right now are left out
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT oi FROM OrderItem oi JOIN FETCH oi.clientOrder WHERE oi.id IN :ids AND oi.status = :status")
+    List<OrderItem> claimWithClientOrderByIdIn(Collection<Long> ids, OrderItemStatus status);
+
+    // Plain read, not blocked by row locks: which of the items are still in the status, claimed by someone or not
+    @Query("SELECT oi.id FROM OrderItem oi WHERE oi.id IN :ids AND oi.status = :status")
+    List<Long> findIdsByIdInAndStatus(Collection<Long> ids, OrderItemStatus status);
+
+    // Blocks until concurrent completions of the same items commit, so each item is counted as completed once
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT oi FROM OrderItem oi WHERE oi.id IN :ids ORDER BY oi.id")
+    List<OrderItem> lockByIdIn(Collection<Long> ids);
+
+    // Items no longer in fromStatus keep theirs, e.g. one completed by an early MES notification
+    @Modifying
+    @Query("UPDATE OrderItem oi SET oi.status = :toStatus WHERE oi.id IN :ids AND oi.status = :fromStatus")
+    int updateStatusByIdIn(Collection<Long> ids, OrderItemStatus fromStatus, OrderItemStatus toStatus);
+
+    @Query("SELECT new pt.feup.industrial.erpsystem.model.SchedulableItem(oi.id, oi.clientOrder.id, oi.productType, oi.quantity, oi.dueDate, oi.penaltyPerDay) " +
+            "FROM OrderItem oi WHERE oi.status = :itemStatus AND oi.clientOrder.status = :orderStatus")
+    List<SchedulableItem> findSchedulableItems(OrderItemStatus itemStatus, OrderStatus orderStatus);
+
+    // The same for orders received since a point in time, over the received_timestamp index
+    @Query("SELECT new pt.feup.industrial.erpsystem.model.SchedulableItem(oi.id, oi.clientOrder.id, oi.productType, oi.quantity, oi.dueDate, oi.penaltyPerDay) " +
+            "FROM OrderItem oi WHERE oi.status = :itemStatus AND oi.clientOrder.status = :orderStatus AND oi.clientOrder.receivedTimestamp >= :since")
+    List<SchedulableItem> findSchedulableItemsReceivedSince(OrderItemStatus itemStatus, OrderStatus orderStatus, LocalDateTime since);
 }
\ No newline at end of file
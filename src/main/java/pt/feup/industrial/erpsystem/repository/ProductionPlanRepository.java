@@ -0,0 +1,20 @@
+package pt.feup.industrial.erpsystem.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import pt.feup.industrial.erpsystem.model.PlannedDayLoad;
+import pt.feup.industrial.erpsystem.model.PlannedItem;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface ProductionPlanRepository extends JpaRepository<PlannedItem, Long> {
+
+    List<PlannedItem> findByClientOrderId(Long clientOrderId);
+
+    List<PlannedItem> findByPlannedDayOrderByProductTypeAscOrderItemIdAsc(LocalDate plannedDay);
+
+    @Query("SELECT new pt.feup.industrial.erpsystem.model.PlannedDayLoad(p.plannedDay, p.productType, COUNT(p), SUM(p.quantity)) " +
+            "FROM PlannedItem p WHERE p.plannedDay BETWEEN :from AND :to GROUP BY p.plannedDay, p.productType ORDER BY p.plannedDay, p.productType")
+    List<PlannedDayLoad> sumByDayAndProductType(LocalDate from, LocalDate to);
+}
@@ -0,0 +1,28 @@
+package pt.feup.industrial.erpsystem.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import pt.feup.industrial.erpsystem.model.SchedulerLease;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface SchedulerLeaseRepository extends JpaRepository<SchedulerLease, String> {
+
+    // Takes the lease if it is free or expired, or extends it for its current owner; 1 if this owner now holds it
+    @Modifying
+    @Query("UPDATE SchedulerLease l SET l.owner = :owner, l.expiresAt = :expiresAt " +
+            "WHERE l.name = :name AND (l.owner = :owner OR l.owner IS NULL OR l.expiresAt < :now)")
+    int tryAcquire(String name, String owner, LocalDateTime now, LocalDateTime expiresAt);
+
+    @Modifying
+    @Query("UPDATE SchedulerLease l SET l.owner = NULL WHERE l.name = :name AND l.owner = :owner")
+    int release(String name, String owner);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT l FROM SchedulerLease l WHERE l.name = :name")
+    Optional<SchedulerLease> findByNameForUpdate(String name);
+}
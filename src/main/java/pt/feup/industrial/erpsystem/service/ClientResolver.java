@@ -0,0 +1,79 @@
+package pt.feup.industrial.erpsystem.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import pt.feup.industrial.erpsystem.model.Client;
+import pt.feup.industrial.erpsystem.repository.ClientRepository;
+
+import java.time.Duration;
+
+/**
+ * Maps a client NIF to its internal id, creating the client on first sight. Lookups for the same
+ * NIF are single-flight: concurrent first orders of a new client wait for one lookup-or-insert
+ * instead of racing on uk_client_nif.
+ * <p>
+ * Callers resolve their clients before opening their own transaction: the lookup-or-insert takes
+ * a connection of its own, and a caller already holding one would need two at once.
+ */
+@Component
+public class ClientResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientResolver.class);
+
+    private final ClientRepository clientRepository;
+    private final TransactionTemplate newTransaction;
+    private final Cache<Long, Long> clientIdsByNif;
+
+    @Autowired
+    public ClientResolver(ClientRepository clientRepository,
+                          PlatformTransactionManager transactionManager,
+                          MeterRegistry meterRegistry,
+                          @Value("${erp.client-cache.max-size:10000}") long maxSize,
+                          @Value("${erp.client-cache.ttl:1h}") Duration ttl) {
+        this.clientRepository = clientRepository;
+        // The client row is committed on its own, so a rolled-back order never leaves a cached id without a row
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.clientIdsByNif = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, clientIdsByNif, "erp.client-cache");
+    }
+
+    public Long resolveClientId(Long nif, String name) {
+        return clientIdsByNif.get(nif, key -> loadOrCreate(key, name));
+    }
+
+    private Long loadOrCreate(Long nif, String name) {
+        try {
+            return newTransaction.execute(status -> clientRepository.findByNif(nif)
+                    .map(Client::getId)
+                    .orElseGet(() -> {
+                        Client newClient = new Client();
+                        newClient.setName(name);
+                        newClient.setNif(nif);
+                        log.info("Creating new client: NIF={}", nif);
+                        return clientRepository.save(newClient).getId();
+                    }));
+        } catch (DataIntegrityViolationException e) {
+            // Another ERP instance created the same client in the meantime
+            log.info("Client NIF={} was created concurrently elsewhere. Using the existing row.", nif);
+            return newTransaction.execute(status -> clientRepository.findByNif(nif)
+                    .map(Client::getId)
+                    .orElseThrow(() -> e));
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package pt.feup.industrial.erpsystem.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import pt.feup.industrial.erpsystem.dto.OrderItemCompletionDto;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns a stream of MES completion events into batches for {@link OrderService#markOrderItemsAsCompleted}.
+ * A batch closes at {@code erp.completions.stream.batch-size} events or
+ * {@code erp.completions.stream.batch-window-ms} after its first one; repeated events for the same
+ * item within a batch are coalesced into one. Submitters block while the queue is full, which
+ * pushes back on the stream instead of dropping events. While the database is unavailable a batch is
+ * retried for as long as it takes and nothing is acknowledged, so the queue fills up and the stream
+ * stalls rather than losing events. Only events that fail on their own are logged, counted as
+ * {@code erp.completions.stream.failed} and acknowledged past, so they never block the stream.
+ */
+@Component
+public class CompletionCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(CompletionCoalescer.class);
+
+    private static final long IDLE_POLL_MILLIS = 200;
+    private static final long MIN_RETRY_BACKOFF_MILLIS = 100;
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 2_000;
+
+    private final OrderService orderService;
+    private final MeterRegistry meterRegistry;
+    private final int batchSize;
+    private final long batchWindowMs;
+    private final int queueCapacity;
+
+    private BlockingQueue<CompletionEntry> queue;
+    private Thread thread;
+    private Counter coalescedCounter;
+    private Counter failedCounter;
+    private DistributionSummary batchSizeSummary;
+    private volatile boolean running;
+
+    @Autowired
+    public CompletionCoalescer(OrderService orderService, MeterRegistry meterRegistry,
+                               @Value("${erp.completions.stream.batch-size:500}") int batchSize,
+                               @Value("${erp.completions.stream.batch-window-ms:20}") long batchWindowMs,
+                               @Value("${erp.completions.stream.queue-capacity:10000}") int queueCapacity) {
+        this.orderService = orderService;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = batchSize;
+        this.batchWindowMs = batchWindowMs;
+        this.queueCapacity = queueCapacity;
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        Gauge.builder("erp.completions.stream.queue-depth", queue, BlockingQueue::size)
+                .description("Completion submissions waiting to be applied")
+                .register(meterRegistry);
+        coalescedCounter = Counter.builder("erp.completions.stream.coalesced")
+                .description("Completion events merged into another event for the same item")
+                .register(meterRegistry);
+        failedCounter = Counter.builder("erp.completions.stream.failed")
+                .description("Completion events dropped because they could not be applied; acknowledged anyway")
+                .register(meterRegistry);
+        batchSizeSummary = DistributionSummary.builder("erp.completions.stream.batch-size")
+                .description("Completion events applied per transaction")
+                .register(meterRegistry);
+        running = true;
+        thread = new Thread(this::run);
+        thread.setName("Completion-Coalescer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Blocks while the queue is full. onApplied runs on the coalescer thread once the completions
+     * are committed, in submission order, also for an empty submission.
+     */
+    public void submit(List<OrderItemCompletionDto> completions, Runnable onApplied) throws InterruptedException {
+        queue.put(new CompletionEntry(completions, onApplied));
+    }
+
+    private void run() {
+        List<CompletionEntry> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                CompletionEntry first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                int eventCount = first.completions().size();
+
+                // A submission is never split, so a batch can end up above batch-size by its last entry
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWindowMs);
+                while (eventCount < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    CompletionEntry next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    eventCount += next.completions().size();
+                }
+
+                apply(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        log.info("{} stopped.", thread.getName());
+    }
+
+    private void apply(List<CompletionEntry> batch) throws InterruptedException {
+        // The first event for an item wins; later ones would only come back as DUPLICATE
+        Map<Long, OrderItemCompletionDto> completionsByItemId = new LinkedHashMap<>();
+        int events = 0;
+        for (CompletionEntry entry : batch) {
+            for (OrderItemCompletionDto completion : entry.completions()) {
+                events++;
+                completionsByItemId.putIfAbsent(completion.getErpOrderItemId(), completion);
+            }
+        }
+        coalescedCounter.increment(events - completionsByItemId.size());
+        List<OrderItemCompletionDto> completions = List.copyOf(completionsByItemId.values());
+
+        int failed;
+        try {
+            failed = applyIsolating(completions);
+        } catch (RuntimeException e) {
+            // Only reached when shutting down during an outage: unacknowledged, the MES sends them again
+            log.error("Database unavailable during shutdown. {} completion(s) were not applied nor acknowledged.", completions.size(), e);
+            return;
+        }
+        batchSizeSummary.record(completions.size() - failed);
+        // Past failed events too: holding the cumulative acks back on them would stall every connection
+        for (CompletionEntry entry : batch) {
+            try {
+                entry.onApplied().run();
+            } catch (RuntimeException e) {
+                log.warn("Completion acknowledgement callback failed", e);
+            }
+        }
+    }
+
+    /**
+     * Applies the completions and returns how many of them were dropped. A batch that fails for a
+     * reason other than an unavailable database is split in halves until the events that fail on
+     * their own are found, so one bad event costs only itself.
+     */
+    private int applyIsolating(List<OrderItemCompletionDto> completions) throws InterruptedException {
+        if (completions.isEmpty()) {
+            return 0;
+        }
+        try {
+            applyWithRetries(completions);
+            return 0;
+        } catch (RuntimeException e) {
+            if (isDatabaseUnavailable(e)) {
+                throw e;
+            }
+            if (completions.size() == 1) {
+                log.error("Dropping completion of Order Item ID {}: {}", completions.get(0).getErpOrderItemId(), e.getMessage(), e);
+                failedCounter.increment();
+                return 1;
+            }
+            int half = completions.size() / 2;
+            log.warn("Applying {} completion(s) failed ({}). Splitting the batch to find the failing event(s).", completions.size(), e.getMessage());
+            return applyIsolating(completions.subList(0, half)) + applyIsolating(completions.subList(half, completions.size()));
+        }
+    }
+
+    // Completions are idempotent, so a batch is applied again until the database is back; only a shutdown gives up
+    private void applyWithRetries(List<OrderItemCompletionDto> completions) throws InterruptedException {
+        long backoffMillis = MIN_RETRY_BACKOFF_MILLIS;
+        while (true) {
+            try {
+                orderService.markOrderItemsAsCompleted(completions);
+                return;
+            } catch (RuntimeException e) {
+                if (!isDatabaseUnavailable(e) || !running) {
+                    throw e;
+                }
+                log.warn("Database unavailable while applying {} completion(s) ({}). Retrying in {} ms.",
+                        completions.size(), e.getMessage(), backoffMillis);
+                Thread.sleep(backoffMillis);
+                backoffMillis = Math.min(backoffMillis * 2, MAX_RETRY_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    private static boolean isDatabaseUnavailable(Exception e) {
+        return e instanceof CannotCreateTransactionException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof TransientDataAccessException;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private record CompletionEntry(List<OrderItemCompletionDto> completions, Runnable onApplied) {
+    }
+}
@@ -0,0 +1,77 @@
+package pt.feup.industrial.erpsystem.service;
+
+import pt.feup.industrial.erpsystem.model.ProductTypePieces;
+import pt.feup.industrial.erpsystem.model.SchedulableItem;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Pieces already planned on one day, checked against a SchedulingCapacity
+class DayLoad {
+
+    private int pieces;
+    private final Map<Integer, Integer> piecesByProductType = new HashMap<>();
+
+    // A day of which the given pieces are already taken
+    static DayLoad of(List<ProductTypePieces> used) {
+        DayLoad load = new DayLoad();
+        for (ProductTypePieces pieces : used) {
+            load.add(pieces.productType(), (int) pieces.pieces());
+        }
+        return load;
+    }
+
+    boolean fits(SchedulableItem added, SchedulingCapacity capacity) {
+        return fitsReplacing(null, added, capacity);
+    }
+
+    // Whether the day still fits once removed (may be null) is taken out and added put in
+    boolean fitsReplacing(SchedulableItem removed, SchedulableItem added, SchedulingCapacity capacity) {
+        int freed = removed == null ? 0 : removed.quantity();
+        if (pieces - freed + added.quantity() > capacity.dailyPieces()) {
+            return false;
+        }
+        Integer typeLimit = capacity.productTypeLimit(added.productType());
+        if (typeLimit == null) {
+            return true;
+        }
+        int freedOfType = removed != null && removed.productType() == added.productType() ? freed : 0;
+        return piecesByProductType.getOrDefault(added.productType(), 0) - freedOfType + added.quantity() <= typeLimit;
+    }
+
+    void add(SchedulableItem item) {
+        add(item.productType(), item.quantity());
+    }
+
+    void add(int productType, int quantity) {
+        pieces += quantity;
+        piecesByProductType.merge(productType, quantity, Integer::sum);
+    }
+
+    void remove(SchedulableItem item) {
+        pieces -= item.quantity();
+        piecesByProductType.merge(item.productType(), -item.quantity(), Integer::sum);
+    }
+
+    boolean isFull(SchedulingCapacity capacity) {
+        return pieces >= capacity.dailyPieces();
+    }
+
+    // Whether what is left of the day is of no use to any of the items; stops at the first that fits
+    boolean fitsNoneOf(Iterable<SchedulableItem> items, SchedulingCapacity capacity) {
+        if (isFull(capacity)) {
+            return true;
+        }
+        for (SchedulableItem item : items) {
+            if (fits(item, capacity)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int pieces() {
+        return pieces;
+    }
+}
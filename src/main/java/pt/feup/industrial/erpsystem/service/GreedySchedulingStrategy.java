@@ -0,0 +1,47 @@
+package pt.feup.industrial.erpsystem.service;
+
+import org.springframework.stereotype.Component;
+import pt.feup.industrial.erpsystem.model.ProductTypePieces;
+import pt.feup.industrial.erpsystem.model.SchedulableItem;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Strict due-date order: a day takes items in priority order and closes at the first one that
+ * does not fit, which then opens the next day. Penalties are not looked at.
+ */
+@Component("greedy")
+public class GreedySchedulingStrategy implements SchedulingStrategy {
+
+    @Override
+    public ProductionPlan plan(Iterable<SchedulableItem> pendingItems, SchedulingCapacity capacity, LocalDate startDate, int horizonDays,
+                               List<ProductTypePieces> startDayUsed) {
+        List<SchedulableItem> allItems = new ArrayList<>();
+        List<List<SchedulableItem>> days = new ArrayList<>();
+        List<SchedulableItem> currentDay = new ArrayList<>();
+        DayLoad currentLoad = DayLoad.of(startDayUsed);
+
+        for (SchedulableItem item : pendingItems) {
+            allItems.add(item);
+            if (days.size() == horizonDays || !capacity.fitsEmptyDay(item)) {
+                continue;
+            }
+            if (!currentLoad.fits(item, capacity)) {
+                days.add(currentDay);
+                currentDay = new ArrayList<>();
+                currentLoad = new DayLoad();
+                if (days.size() == horizonDays) {
+                    continue;
+                }
+            }
+            currentDay.add(item);
+            currentLoad.add(item);
+        }
+        if (days.size() < horizonDays && !currentDay.isEmpty()) {
+            days.add(currentDay);
+        }
+        return ProductionPlan.evaluate(startDate, days, allItems, horizonDays);
+    }
+}
@@ -0,0 +1,224 @@
+package pt.feup.industrial.erpsystem.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import pt.feup.industrial.erpsystem.dto.MesProductionOrderDto;
+import pt.feup.industrial.erpsystem.mes.MesClientService;
+import pt.feup.industrial.erpsystem.mes.MesDispatchResult;
+import pt.feup.industrial.erpsystem.model.MesOutboxEntry;
+import pt.feup.industrial.erpsystem.model.MesOutboxStatus;
+import pt.feup.industrial.erpsystem.model.OrderItemStatus;
+import pt.feup.industrial.erpsystem.repository.MesOutboxRepository;
+import pt.feup.industrial.erpsystem.repository.OrderItemRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Delivers the MES outbox written by scheduling runs. Due entries are claimed with
+ * {@code SELECT ... FOR UPDATE SKIP LOCKED} and leased by pushing their next attempt forward, so
+ * several instances can relay side by side and a crashed relay's entries come back once the lease
+ * runs out. No transaction is held while talking to the MES. Delivery is at least once: the MES is
+ * expected to ignore a production order whose {@code erpOrderItemId} it already has.
+ * <p>
+ * Failed deliveries are retried with exponential backoff and jitter; entries the MES refuses, or
+ * that run out of attempts, are dead-lettered and their items marked FAILED_TO_SEND. Only requests
+ * that reached the MES spend an attempt: while the circuit breaker is half-open no more entries are
+ * claimed than it has probes left, and entries it failed fast are released without a backoff.
+ */
+@Component
+public class MesOutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(MesOutboxRelay.class);
+
+    private final MesOutboxRepository mesOutboxRepository;
+    private final OrderItemRepository orderItemRepository;
+    private final MesClientService mesClientService;
+    private final OrderStatusRollup orderStatusRollup;
+    private final TransactionTemplate transaction;
+
+    private final Counter deliveredCounter;
+    private final Counter retriedCounter;
+    private final Counter deadLetteredCounter;
+    private final AtomicLong backlog = new AtomicLong();
+
+    @Value("${erp.mes.outbox.batch-size:200}")
+    private int batchSize;
+
+    @Value("${erp.mes.outbox.concurrency:8}")
+    private int concurrency;
+
+    @Value("${erp.mes.outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${erp.mes.outbox.initial-backoff:5s}")
+    private Duration initialBackoff;
+
+    @Value("${erp.mes.outbox.max-backoff:30m}")
+    private Duration maxBackoff;
+
+    // How long a claimed entry is left alone before another relay may pick it up again
+    @Value("${erp.mes.outbox.lease:2m}")
+    private Duration lease;
+
+    @Autowired
+    public MesOutboxRelay(MesOutboxRepository mesOutboxRepository, OrderItemRepository orderItemRepository,
+                          MesClientService mesClientService, OrderStatusRollup orderStatusRollup,
+                          PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.mesOutboxRepository = mesOutboxRepository;
+        this.orderItemRepository = orderItemRepository;
+        this.mesClientService = mesClientService;
+        this.orderStatusRollup = orderStatusRollup;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.deliveredCounter = Counter.builder("erp.mes.outbox.delivered")
+                .description("Production orders accepted by the MES")
+                .register(meterRegistry);
+        this.retriedCounter = Counter.builder("erp.mes.outbox.retries")
+                .description("Failed deliveries scheduled for another attempt")
+                .register(meterRegistry);
+        this.deadLetteredCounter = Counter.builder("erp.mes.outbox.dead-lettered")
+                .description("Production orders given up on; their items are FAILED_TO_SEND")
+                .register(meterRegistry);
+        Gauge.builder("erp.mes.outbox.backlog", backlog, AtomicLong::get)
+                .description("Outbox entries waiting to be delivered, as of the last relay run")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${erp.mes.outbox.poll-interval-ms:1000}",
+            fixedDelayString = "${erp.mes.outbox.poll-interval-ms:1000}")
+    public void relay() {
+        int limit;
+        int claimed;
+        do {
+            limit = Math.min(batchSize, mesClientService.permittedCalls());
+            if (limit == 0) {
+                log.debug("MES circuit breaker is open. Leaving the outbox for the next run.");
+                break;
+            }
+            int claimLimit = limit;
+            List<MesOutboxEntry> entries = transaction.execute(status -> claimDueEntries(claimLimit));
+            claimed = entries.size();
+            if (claimed > 0) {
+                deliver(entries);
+            }
+        } while (claimed == limit);
+        backlog.set(mesOutboxRepository.countByStatus(MesOutboxStatus.PENDING));
+    }
+
+    private List<MesOutboxEntry> claimDueEntries(int limit) {
+        LocalDateTime now = LocalDateTime.now();
+        List<MesOutboxEntry> entries = mesOutboxRepository.findDueForUpdateSkipLocked(MesOutboxStatus.PENDING, now, Limit.of(limit));
+        for (MesOutboxEntry entry : entries) {
+            // Counted up front, so an entry whose relay crashes mid-delivery still runs out of attempts
+            entry.setAttempts(entry.getAttempts() + 1);
+            entry.setNextAttemptAt(now.plus(lease));
+        }
+        return entries;
+    }
+
+    private void deliver(List<MesOutboxEntry> entries) {
+        List<MesProductionOrderDto> requests = entries.stream()
+                .map(entry -> new MesProductionOrderDto(entry.getClientOrderId(), entry.getOrderItemId(),
+                        entry.getProductType(), entry.getQuantity(), entry.getDueDate()))
+                .toList();
+        log.debug("Relaying {} outbox entries to the MES.", requests.size());
+
+        List<MesDispatchResult> results = mesClientService.dispatchAll(requests, concurrency).collectList().block();
+        transaction.executeWithoutResult(status -> applyResults(entries, results));
+    }
+
+    /**
+     * Records a batch of delivery outcomes with a fixed number of statements: deliveries and their
+     * items are updated in bulk, and so are the items of dead-lettered entries. Only entries that
+     * failed are loaded, as each gets its own error and next attempt.
+     */
+    private void applyResults(List<MesOutboxEntry> claimedEntries, List<MesDispatchResult> results) {
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, MesOutboxEntry> claimedByItemId = claimedEntries.stream()
+                .collect(Collectors.toMap(MesOutboxEntry::getOrderItemId, Function.identity()));
+
+        List<Long> deliveredEntryIds = new ArrayList<>();
+        List<Long> sentItemIds = new ArrayList<>();
+        Map<Long, MesDispatchResult> failures = new HashMap<>();
+        Set<Long> affectedClientOrderIds = new HashSet<>();
+        for (MesDispatchResult result : results) {
+            MesOutboxEntry claimed = claimedByItemId.get(result.request().getErpOrderItemId());
+            if (claimed == null) {
+                continue;
+            }
+            if (result.accepted()) {
+                deliveredEntryIds.add(claimed.getId());
+                sentItemIds.add(claimed.getOrderItemId());
+                affectedClientOrderIds.add(claimed.getClientOrderId());
+            } else {
+                failures.put(claimed.getId(), result);
+            }
+        }
+
+        List<Long> failedItemIds = new ArrayList<>();
+        for (MesOutboxEntry entry : mesOutboxRepository.findAllById(failures.keySet())) {
+            MesDispatchResult result = failures.get(entry.getId());
+            if (!result.sent()) {
+                // Never reached the MES: give the attempt back and let the next relay run take it
+                entry.setAttempts(entry.getAttempts() - 1);
+                entry.setNextAttemptAt(now);
+                continue;
+            }
+            entry.setLastError(truncate(result.failureReason()));
+            if (!result.retryable() || entry.getAttempts() >= maxAttempts) {
+                entry.setStatus(MesOutboxStatus.DEAD);
+                deadLetteredCounter.increment();
+                failedItemIds.add(entry.getOrderItemId());
+                affectedClientOrderIds.add(entry.getClientOrderId());
+                log.error("Giving up on MES delivery of Order Item ID {} after {} attempt(s): {}",
+                        entry.getOrderItemId(), entry.getAttempts(), result.failureReason());
+            } else {
+                entry.setNextAttemptAt(now.plus(backoff(entry.getAttempts())));
+                retriedCounter.increment();
+                log.warn("MES delivery of Order Item ID {} failed (attempt {}/{}), retrying at {}.",
+                        entry.getOrderItemId(), entry.getAttempts(), maxAttempts, entry.getNextAttemptAt());
+            }
+        }
+
+        if (!deliveredEntryIds.isEmpty()) {
+            mesOutboxRepository.markDelivered(deliveredEntryIds, MesOutboxStatus.DELIVERED, now);
+            // Items that moved on meanwhile (e.g. completed by an early MES notification) keep their status
+            orderItemRepository.updateStatusByIdIn(sentItemIds, OrderItemStatus.QUEUED_FOR_MES, OrderItemStatus.SENT_TO_MES);
+            deliveredCounter.increment(deliveredEntryIds.size());
+        }
+        if (!failedItemIds.isEmpty()) {
+            orderItemRepository.updateStatusByIdIn(failedItemIds, OrderItemStatus.QUEUED_FOR_MES, OrderItemStatus.FAILED_TO_SEND);
+        }
+        orderStatusRollup.updateAffectedClientOrderStatuses(affectedClientOrderIds);
+    }
+
+    // Exponential backoff with "equal jitter": somewhere between half and all of the capped delay
+    private Duration backoff(int attempts) {
+        long delayMillis = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() * (1L << Math.min(attempts - 1, 30)));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(delayMillis / 2, delayMillis + 1));
+    }
+
+    private static String truncate(String reason) {
+        return reason == null || reason.length() <= 500 ? reason : reason.substring(0, 500);
+    }
+}
@@ -0,0 +1,138 @@
+package pt.feup.industrial.erpsystem.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import pt.feup.industrial.erpsystem.event.OrdersPersistedEvent;
+import pt.feup.industrial.erpsystem.model.OrderKey;
+import pt.feup.industrial.erpsystem.repository.ClientOrderRepository;
+
+import java.util.List;
+
+/**
+ * Answers "have we already stored this (NIF, orderID)?" without touching the database for the
+ * common cases. A Bloom filter over every stored key proves a key is new; a bounded set of
+ * recently stored keys proves it is a duplicate. Anything in between is reported as
+ * {@link Verdict#UNKNOWN} and must be checked against the database, whose unique constraint
+ * stays the final guard.
+ */
+@Component
+public class OrderIdempotencyIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderIdempotencyIndex.class);
+
+    private static final int WARM_UP_PAGE_SIZE = 5000;
+
+    public enum Verdict {
+        NEW,
+        DUPLICATE,
+        UNKNOWN
+    }
+
+    private final ClientOrderRepository clientOrderRepository;
+    private final OrderKeyBloomFilter bloomFilter;
+    private final Cache<OrderKey, Boolean> recentKeys;
+    private final long recentCapacity;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter databaseCheckCounter;
+    private final Counter falsePositiveCounter;
+
+    // Until the filter holds every stored key a negative answer proves nothing
+    private volatile boolean warmedUp;
+
+    @Autowired
+    public OrderIdempotencyIndex(ClientOrderRepository clientOrderRepository,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${erp.idempotency.expected-orders:1000000}") long expectedOrders,
+                                 @Value("${erp.idempotency.false-positive-rate:0.01}") double falsePositiveRate,
+                                 @Value("${erp.idempotency.recent-capacity:100000}") long recentCapacity) {
+        this.clientOrderRepository = clientOrderRepository;
+        this.bloomFilter = new OrderKeyBloomFilter(expectedOrders, falsePositiveRate);
+        this.recentKeys = Caffeine.newBuilder().maximumSize(recentCapacity).build();
+        this.recentCapacity = recentCapacity;
+
+        this.hitCounter = Counter.builder("erp.idempotency.hits")
+                .description("Duplicates rejected without a database lookup")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("erp.idempotency.misses")
+                .description("Keys proven new by the Bloom filter")
+                .register(meterRegistry);
+        this.databaseCheckCounter = Counter.builder("erp.idempotency.database-checks")
+                .description("Keys that needed a database lookup")
+                .register(meterRegistry);
+        this.falsePositiveCounter = Counter.builder("erp.idempotency.false-positives")
+                .description("Bloom filter positives the database proved new")
+                .register(meterRegistry);
+        Gauge.builder("erp.idempotency.recent-keys", recentKeys, Cache::estimatedSize).register(meterRegistry);
+    }
+
+    public Verdict check(OrderKey key) {
+        if (!warmedUp) {
+            databaseCheckCounter.increment();
+            return Verdict.UNKNOWN;
+        }
+        if (!bloomFilter.mightContain(key)) {
+            missCounter.increment();
+            return Verdict.NEW;
+        }
+        if (recentKeys.getIfPresent(key) != null) {
+            hitCounter.increment();
+            return Verdict.DUPLICATE;
+        }
+        databaseCheckCounter.increment();
+        return Verdict.UNKNOWN;
+    }
+
+    // Feeds the outcome of a database lookup for an UNKNOWN key back into the index
+    public void recordDatabaseCheck(OrderKey key, boolean exists) {
+        if (exists) {
+            bloomFilter.put(key);
+            recentKeys.put(key, Boolean.TRUE);
+        } else if (warmedUp && bloomFilter.mightContain(key)) {
+            falsePositiveCounter.increment();
+        }
+    }
+
+    @TransactionalEventListener
+    public void onOrdersPersisted(OrdersPersistedEvent event) {
+        for (OrdersPersistedEvent.PersistedOrder persistedOrder : event.orders()) {
+            bloomFilter.put(persistedOrder.key());
+            recentKeys.put(persistedOrder.key(), Boolean.TRUE);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        long loaded = 0;
+        long beforeId = Long.MAX_VALUE;
+        List<ClientOrderRepository.OrderKeyRow> page;
+        do {
+            page = clientOrderRepository.findOrderKeysBefore(beforeId, Limit.of(WARM_UP_PAGE_SIZE));
+            for (ClientOrderRepository.OrderKeyRow row : page) {
+                OrderKey key = new OrderKey(row.getNif(), row.getClientOrderId());
+                bloomFilter.put(key);
+                // Newest first, so the bounded set ends up holding the most recent orders
+                if (loaded < recentCapacity) {
+                    recentKeys.put(key, Boolean.TRUE);
+                }
+                loaded++;
+                beforeId = row.getId();
+            }
+        } while (page.size() == WARM_UP_PAGE_SIZE);
+
+        warmedUp = true;
+        log.info("Order idempotency index warmed up with {} stored order keys.", loaded);
+    }
+}
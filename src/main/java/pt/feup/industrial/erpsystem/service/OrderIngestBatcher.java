@@ -0,0 +1,267 @@
+package pt.feup.industrial.erpsystem.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import pt.feup.industrial.erpsystem.dto.ClientOrderRequestDto;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects incoming orders into micro-batches, closed either when {@code erp.ingest.batch-size}
+ * orders are waiting or {@code erp.ingest.batch-window-ms} after the first one arrived, and
+ * persists each batch in a single transaction.
+ * <p>
+ * Orders are striped over {@code erp.ingest.lanes} lanes by client NIF. Each lane has a bounded
+ * queue and a single consumer thread, so orders of one client are persisted one batch after the
+ * other in arrival order, while different clients proceed in parallel on at most one database
+ * connection per lane. Orders submitted together (a batch envelope) land in the same batch of
+ * each lane they map to.
+ */
+@Component
+public class OrderIngestBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderIngestBatcher.class);
+
+    private static final long IDLE_POLL_MILLIS = 200;
+    private static final long MIN_RETRY_BACKOFF_MILLIS = 100;
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 10_000;
+    private static final Runnable NO_ACKNOWLEDGEMENT = () -> { };
+
+    @Value("${erp.ingest.lanes:4}")
+    private int laneCount;
+
+    @Value("${erp.ingest.batch-size:200}")
+    private int batchSize;
+
+    @Value("${erp.ingest.batch-window-ms:50}")
+    private long batchWindowMs;
+
+    // Per lane
+    @Value("${erp.ingest.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${erp.ingest.offer-timeout-ms:1000}")
+    private long offerTimeoutMs;
+
+    private final OrderService orderService;
+    private final MeterRegistry meterRegistry;
+
+    private final List<Lane> lanes = new ArrayList<>();
+    private volatile boolean running;
+
+    @Autowired
+    public OrderIngestBatcher(OrderService orderService, MeterRegistry meterRegistry) {
+        this.orderService = orderService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        for (int i = 0; i < Math.max(1, laneCount); i++) {
+            Lane lane = new Lane(i);
+            lanes.add(lane);
+            lane.thread.start();
+        }
+        log.info("Order ingest started with {} lane(s) of {} queued entries each.", lanes.size(), queueCapacity);
+    }
+
+    public void submit(List<ClientOrderRequestDto> orderRequests) throws InterruptedException {
+        submit(orderRequests, NO_ACKNOWLEDGEMENT);
+    }
+
+    /**
+     * Queues orders on the lanes of their clients, waiting up to {@code erp.ingest.offer-timeout-ms}
+     * for room. onProcessed runs once all of them are stored or definitively rejected (invalid,
+     * duplicate), never while any is still pending.
+     *
+     * @throws RejectedExecutionException if a lane stayed full; orders already queued on other
+     *                                    lanes are still processed, but onProcessed never runs
+     */
+    public void submit(List<ClientOrderRequestDto> orderRequests, Runnable onProcessed) throws InterruptedException {
+        if (orderRequests.isEmpty()) {
+            onProcessed.run();
+            return;
+        }
+        Map<Lane, List<ClientOrderRequestDto>> ordersByLane = new LinkedHashMap<>();
+        for (ClientOrderRequestDto orderRequest : orderRequests) {
+            ordersByLane.computeIfAbsent(laneFor(orderRequest.getNif()), lane -> new ArrayList<>()).add(orderRequest);
+        }
+
+        Runnable acknowledgement = onProcessed;
+        if (ordersByLane.size() > 1) {
+            AtomicInteger pendingLanes = new AtomicInteger(ordersByLane.size());
+            acknowledgement = () -> {
+                if (pendingLanes.decrementAndGet() == 0) {
+                    onProcessed.run();
+                }
+            };
+        }
+        for (Map.Entry<Lane, List<ClientOrderRequestDto>> laneOrders : ordersByLane.entrySet()) {
+            laneOrders.getKey().offer(new IngestEntry(laneOrders.getValue(), acknowledgement));
+        }
+    }
+
+    private Lane laneFor(Long nif) {
+        // Orders without a NIF are rejected by validation; any lane will do
+        return lanes.get(nif == null ? 0 : Math.floorMod(Long.hashCode(nif), lanes.size()));
+    }
+
+    private class Lane {
+
+        private final BlockingQueue<IngestEntry> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final Thread thread;
+        private final Counter rejectedCounter;
+
+        private Lane(int index) {
+            thread = new Thread(this::run);
+            thread.setName("Order-Ingest-Lane-" + index);
+            thread.setDaemon(true);
+            Gauge.builder("erp.ingest.lane.queue-depth", queue, BlockingQueue::size)
+                    .tag("lane", String.valueOf(index))
+                    .description("Entries waiting in the lane")
+                    .register(meterRegistry);
+            rejectedCounter = Counter.builder("erp.ingest.lane.rejected")
+                    .tag("lane", String.valueOf(index))
+                    .description("Submissions rejected because the lane stayed full")
+                    .register(meterRegistry);
+        }
+
+        private void offer(IngestEntry entry) throws InterruptedException {
+            if (!queue.offer(entry, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejectedCounter.increment();
+                throw new RejectedExecutionException(thread.getName() + " is full (" + queueCapacity + " entries)");
+            }
+        }
+
+        private void run() {
+            List<IngestEntry> batch = new ArrayList<>(batchSize);
+            while (running || !queue.isEmpty()) {
+                try {
+                    IngestEntry first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    int orderCount = first.orderRequests().size();
+
+                    // An envelope is never split, so a batch can end up above batch-size by its last entry
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWindowMs);
+                    while (orderCount < batchSize) {
+                        long remaining = deadline - System.nanoTime();
+                        IngestEntry next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                        orderCount += next.orderRequests().size();
+                    }
+
+                    flush(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } finally {
+                    batch.clear();
+                }
+            }
+            log.info("{} stopped.", thread.getName());
+        }
+    }
+
+    private void flush(List<IngestEntry> batch) throws InterruptedException {
+        // While the database is unreachable the batch is retried instead of dropped; the queue
+        // fills up meanwhile and pushes back on the producers
+        long backoffMillis = MIN_RETRY_BACKOFF_MILLIS;
+        while (true) {
+            try {
+                persist(batch);
+                break;
+            } catch (Exception e) {
+                if (!running) {
+                    log.error("Database unavailable during shutdown. {} orders were not persisted.", countOrders(batch), e);
+                    return;
+                }
+                log.warn("Database unavailable while persisting {} orders ({}). Retrying in {} ms.",
+                        countOrders(batch), e.getMessage(), backoffMillis);
+                Thread.sleep(backoffMillis);
+                backoffMillis = Math.min(backoffMillis * 2, MAX_RETRY_BACKOFF_MILLIS);
+            }
+        }
+        for (IngestEntry entry : batch) {
+            entry.onProcessed().run();
+        }
+    }
+
+    // Only throws when the database itself is unavailable; order-specific failures are logged and skipped
+    private void persist(List<IngestEntry> batch) {
+        try {
+            orderService.processAndSaveOrders(batch.stream().flatMap(entry -> entry.orderRequests().stream()).toList());
+            return;
+        } catch (Exception e) {
+            if (isDatabaseUnavailable(e)) {
+                throw e;
+            }
+            // A constraint violation (e.g. a concurrent insert of the same order) rolls back the whole batch;
+            // replay it order by order so only the offending order is lost.
+            log.warn("Persisting a batch of {} orders failed ({}). Retrying orders individually.", countOrders(batch), e.getMessage());
+        }
+
+        for (ClientOrderRequestDto orderRequest : batch.stream().flatMap(entry -> entry.orderRequests().stream()).toList()) {
+            try {
+                orderService.processAndSaveOrder(orderRequest);
+            } catch (DataIntegrityViolationException duplicate) {
+                // The unique constraints are the last line of defence against duplicate orders and clients
+                log.warn("Order {} for client NIF {} rejected by a unique constraint, most likely a duplicate: {}",
+                        orderRequest.getOrderID(), orderRequest.getNif(), duplicate.getMostSpecificCause().getMessage());
+            } catch (Exception orderException) {
+                if (isDatabaseUnavailable(orderException)) {
+                    throw orderException;
+                }
+                log.error("Failed to persist order {} for client NIF {}", orderRequest.getOrderID(), orderRequest.getNif(), orderException);
+            }
+        }
+    }
+
+    private static int countOrders(List<IngestEntry> batch) {
+        return batch.stream().mapToInt(entry -> entry.orderRequests().size()).sum();
+    }
+
+    private static boolean isDatabaseUnavailable(Exception e) {
+        return e instanceof CannotCreateTransactionException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof TransientDataAccessException;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        for (Lane lane : lanes) {
+            lane.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        }
+    }
+
+    private record IngestEntry(List<ClientOrderRequestDto> orderRequests, Runnable onProcessed) {
+    }
+}
@@ -2,6 +2,7 @@ package pt.feup.industrial.erpsystem.service;
 
 import pt.feup.industrial.erpsystem.dto.ClientOrderRequestDto;
 import pt.feup.industrial.erpsystem.dto.OrderItemCompletionDto;
+import pt.feup.industrial.erpsystem.dto.OrderItemCompletionResultDto;
 import pt.feup.industrial.erpsystem.model.Client;
 import pt.feup.industrial.erpsystem.model.ClientOrder;
 import pt.feup.industrial.erpsystem.model.OrderItem;
@@ -14,17 +15,22 @@ public interface OrderService {
 
     void processAndSaveOrder(ClientOrderRequestDto orderRequest);
 
+    int processAndSaveOrders(List<ClientOrderRequestDto> orderRequests);
+
     boolean markOrderItemAsCompleted(OrderItemCompletionDto completionDto);
 
-    List<ClientOrder> getAllOrders();
+    List<OrderItemCompletionResultDto> markOrderItemsAsCompleted(List<OrderItemCompletionDto> completionDtos);
+
+    // Keyset pages, newest first: up to limit rows with an id below beforeId
+    List<ClientOrder> getOrders(long beforeId, int limit);
 
     Optional<ClientOrder> getOrderById(Long internalOrderId);
 
-    List<ClientOrder> getOrdersByClientNif(Long nif);
+    List<ClientOrder> getOrdersByClientNif(Long nif, long beforeId, int limit);
 
-    List<OrderItem> getItemsDueOn(LocalDate date);
+    List<OrderItem> getItemsDueOn(LocalDate date, long beforeId, int limit);
 
-    List<OrderItem> getItemsByType(Integer productType);
+    List<OrderItem> getItemsByType(Integer productType, long beforeId, int limit);
 
     Optional<Client> getClientByNif(Long nif);
 
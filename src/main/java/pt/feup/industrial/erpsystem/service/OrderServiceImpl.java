@@ -2,26 +2,39 @@ package pt.feup.industrial.erpsystem.service;
 
 import jakarta.validation.Validator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pt.feup.industrial.erpsystem.dto.ClientOrderRequestDto;
 import pt.feup.industrial.erpsystem.dto.OrderItemCompletionDto;
+import pt.feup.industrial.erpsystem.dto.OrderItemCompletionResultDto;
 import pt.feup.industrial.erpsystem.dto.OrderItemDto;
+import pt.feup.industrial.erpsystem.event.OrderItemsCompletedEvent;
+import pt.feup.industrial.erpsystem.event.OrdersPersistedEvent;
+import pt.feup.industrial.erpsystem.event.OrdersPersistedEvent.PersistedOrder;
 import pt.feup.industrial.erpsystem.model.Client;
 import pt.feup.industrial.erpsystem.model.ClientOrder;
 import pt.feup.industrial.erpsystem.model.OrderItem;
 import pt.feup.industrial.erpsystem.model.OrderItemStatus;
-import pt.feup.industrial.erpsystem.model.OrderStatus;
+import pt.feup.industrial.erpsystem.model.OrderKey;
 import pt.feup.industrial.erpsystem.repository.ClientOrderRepository;
 import pt.feup.industrial.erpsystem.repository.ClientRepository;
 import pt.feup.industrial.erpsystem.repository.OrderItemRepository;
@@ -35,57 +48,168 @@ public class OrderServiceImpl implements OrderService {
     private final ClientOrderRepository clientOrderRepository;
     private final OrderItemRepository orderItemRepository;
     private final Validator validator;
+    private final OrderIdempotencyIndex idempotencyIndex;
+    private final ClientResolver clientResolver;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SchedulingQueue schedulingQueue;
+    private final OrderStatusRollup orderStatusRollup;
+    private final TransactionTemplate transaction;
+
+    @Value("${erp.completions.max-attempts:3}")
+    private int completionMaxAttempts;
 
     @Autowired
     public OrderServiceImpl(ClientRepository clientRepository,
                             ClientOrderRepository clientOrderRepository,
                             OrderItemRepository orderItemRepository,
-                            Validator validator) {
+                            Validator validator,
+                            OrderIdempotencyIndex idempotencyIndex,
+                            ClientResolver clientResolver,
+                            ApplicationEventPublisher eventPublisher,
+                            SchedulingQueue schedulingQueue,
+                            OrderStatusRollup orderStatusRollup,
+                            PlatformTransactionManager transactionManager) {
         this.clientRepository = clientRepository;
         this.clientOrderRepository = clientOrderRepository;
         this.orderItemRepository = orderItemRepository;
         this.validator = validator;
+        this.idempotencyIndex = idempotencyIndex;
+        this.clientResolver = clientResolver;
+        this.eventPublisher = eventPublisher;
+        this.schedulingQueue = schedulingQueue;
+        this.orderStatusRollup = orderStatusRollup;
+        this.transaction = new TransactionTemplate(transactionManager);
     }
 
+    // Clients are resolved before the order's transaction opens, so it never holds two connections at once
     @Override
-    @Transactional
     public void processAndSaveOrder(ClientOrderRequestDto orderRequest) {
+        if (!isValidOrderRequest(orderRequest)) {
+            return;
+        }
+
+        OrderKey orderKey = new OrderKey(orderRequest.getNif(), orderRequest.getOrderID());
+        OrderIdempotencyIndex.Verdict verdict = idempotencyIndex.check(orderKey);
+        if (verdict == OrderIdempotencyIndex.Verdict.DUPLICATE) {
+            log.warn("Duplicate OrderID {} received for client NIF {}. Ignoring.", orderRequest.getOrderID(), orderRequest.getNif());
+            return;
+        }
+
+        Long clientId = clientResolver.resolveClientId(orderRequest.getNif(), orderRequest.getName());
+
+        transaction.executeWithoutResult(status -> {
+            if (verdict == OrderIdempotencyIndex.Verdict.UNKNOWN) {
+                Optional<ClientOrder> existingOrder = clientOrderRepository.findByClient_IdAndClientOrderId(clientId, orderRequest.getOrderID());
+                idempotencyIndex.recordDatabaseCheck(orderKey, existingOrder.isPresent());
+                if (existingOrder.isPresent()) {
+                    log.warn("Duplicate OrderID {} received for client NIF {}. Ignoring.", orderRequest.getOrderID(), orderRequest.getNif());
+                    return;
+                }
+            }
+
+            ClientOrder clientOrder = buildClientOrder(clientRepository.getReferenceById(clientId), orderRequest, LocalDateTime.now());
+            clientOrderRepository.save(clientOrder);
+            eventPublisher.publishEvent(new OrdersPersistedEvent(List.of(new PersistedOrder(orderKey, clientOrder))));
+            log.info("Successfully saved order {} for client NIF {}", clientOrder.getClientOrderId(), orderRequest.getNif());
+        });
+    }
+
+    @Override
+    public int processAndSaveOrders(List<ClientOrderRequestDto> orderRequests) {
+        // Invalid orders and known retransmissions are dropped here, before any DB work,
+        // so they can never fail the rest of the batch
+        List<ClientOrderRequestDto> acceptedRequests = new ArrayList<>();
+        Set<OrderKey> uncertainKeys = new HashSet<>();
+        int invalid = 0;
+        for (ClientOrderRequestDto request : orderRequests) {
+            if (!isValidOrderRequest(request)) {
+                invalid++;
+                continue;
+            }
+            OrderKey orderKey = new OrderKey(request.getNif(), request.getOrderID());
+            OrderIdempotencyIndex.Verdict verdict = idempotencyIndex.check(orderKey);
+            if (verdict == OrderIdempotencyIndex.Verdict.DUPLICATE) {
+                log.warn("Duplicate OrderID {} received for client NIF {}. Ignoring.", request.getOrderID(), request.getNif());
+                continue;
+            }
+            if (verdict == OrderIdempotencyIndex.Verdict.UNKNOWN) {
+                uncertainKeys.add(orderKey);
+            }
+            acceptedRequests.add(request);
+        }
+        if (acceptedRequests.isEmpty()) {
+            return 0;
+        }
+
+        // Resolved before the batch transaction opens: a client insert commits on its own connection,
+        // and a lane must not hold its batch connection while waiting for a second one
+        Map<Long, Long> clientIdsByNif = new HashMap<>();
+        for (ClientOrderRequestDto request : acceptedRequests) {
+            clientIdsByNif.computeIfAbsent(request.getNif(), nif -> clientResolver.resolveClientId(nif, request.getName()));
+        }
+
+        int saved = transaction.execute(status -> saveNewOrders(acceptedRequests, uncertainKeys, clientIdsByNif));
+        // Whatever was neither invalid nor saved was a duplicate, found by the index or in the database
+        log.info("Saved {} new orders from a batch of {} ({} invalid, {} duplicates)", saved, orderRequests.size(),
+                invalid, orderRequests.size() - invalid - saved);
+        return saved;
+    }
+
+    private int saveNewOrders(List<ClientOrderRequestDto> acceptedRequests, Set<OrderKey> uncertainKeys,
+                              Map<Long, Long> clientIdsByNif) {
+        // Orders only reference their client by id, the Client entity itself is never loaded
+        Map<Long, Client> clientsByNif = new HashMap<>();
+        clientIdsByNif.forEach((nif, clientId) -> clientsByNif.put(nif, clientRepository.getReferenceById(clientId)));
+
+        // Only keys the index could not decide go to the database; the set then grows with the batch
+        // itself to catch retransmissions inside the same batch
+        Set<OrderKey> knownOrderKeys = new HashSet<>();
+        if (!uncertainKeys.isEmpty()) {
+            knownOrderKeys.addAll(clientOrderRepository.findExistingOrderKeys(
+                    uncertainKeys.stream().map(OrderKey::nif).collect(Collectors.toSet()),
+                    uncertainKeys.stream().map(OrderKey::clientOrderId).collect(Collectors.toSet())));
+            for (OrderKey uncertainKey : uncertainKeys) {
+                idempotencyIndex.recordDatabaseCheck(uncertainKey, knownOrderKeys.contains(uncertainKey));
+            }
+        }
+
+        List<PersistedOrder> newOrders = new ArrayList<>();
+        LocalDateTime receivedTime = LocalDateTime.now();
+        for (ClientOrderRequestDto request : acceptedRequests) {
+            OrderKey orderKey = new OrderKey(request.getNif(), request.getOrderID());
+            if (!knownOrderKeys.add(orderKey)) {
+                log.warn("Duplicate OrderID {} received for client NIF {}. Ignoring.", request.getOrderID(), request.getNif());
+                continue;
+            }
+            newOrders.add(new PersistedOrder(orderKey, buildClientOrder(clientsByNif.get(request.getNif()), request, receivedTime)));
+        }
+        clientOrderRepository.saveAll(newOrders.stream().map(PersistedOrder::order).toList());
+        eventPublisher.publishEvent(new OrdersPersistedEvent(newOrders));
+        return newOrders.size();
+    }
+
+    private boolean isValidOrderRequest(ClientOrderRequestDto orderRequest) {
         Set<jakarta.validation.ConstraintViolation<ClientOrderRequestDto>> violations = validator.validate(orderRequest);
         if (!violations.isEmpty()) {
             log.error("Validation failed for incoming order request: {}", violations);
-            return;
-            // throw new IllegalArgumentException("Invalid order request: " + violations);
+            return false;
         }
 
         for (OrderItemDto itemDto : orderRequest.getOrders()) {
             if (!isValidProductType(itemDto.getType())) {
                 log.error("Invalid product type {} in order {} for client {}", itemDto.getType(), orderRequest.getOrderID(), orderRequest.getNif());
-                // Handle error
-                return;
+                return false;
             }
         }
+        return true;
+    }
 
-        Client client = clientRepository.findByNif(orderRequest.getNif())
-                .orElseGet(() -> {
-                    Client newClient = new Client();
-                    newClient.setName(orderRequest.getName());
-                    newClient.setNif(orderRequest.getNif());
-                    log.info("Creating new client: NIF={}", newClient.getNif());
-                    return clientRepository.save(newClient);
-                });
-
-        Optional<ClientOrder> existingOrder = clientOrderRepository.findByClient_IdAndClientOrderId(client.getId(), orderRequest.getOrderID());
-        if (existingOrder.isPresent()) {
-            log.warn("Duplicate OrderID {} received for client NIF {}. Ignoring.", orderRequest.getOrderID(), client.getNif());
-            return;
-        }
-
+    private ClientOrder buildClientOrder(Client client, ClientOrderRequestDto orderRequest, LocalDateTime receivedTime) {
         ClientOrder clientOrder = new ClientOrder();
         clientOrder.setClient(client);
         clientOrder.setClientOrderId(orderRequest.getOrderID());
 
         List<OrderItem> orderItems = new ArrayList<>();
-        LocalDateTime receivedTime = LocalDateTime.now();
         for (OrderItemDto itemDto : orderRequest.getOrders()) {
             OrderItem orderItem = new OrderItem();
             orderItem.setProductType(itemDto.getType());
@@ -96,77 +220,92 @@ public class OrderServiceImpl implements OrderService {
             orderItems.add(orderItem);
         }
         clientOrder.setItems(orderItems);
-
-        clientOrderRepository.save(clientOrder);
-        log.info("Successfully saved order {} for client NIF {}", clientOrder.getClientOrderId(), client.getNif());
+        return clientOrder;
     }
 
     private boolean isValidProductType(Integer type) {
         return type != null && (type == 5 || type == 6 || type == 7 || type == 9);
     }
 
-    @Transactional
     public boolean markOrderItemAsCompleted(OrderItemCompletionDto completionDto) {
         log.info("Processing completion notification for ERP Order Item ID: {}", completionDto.getErpOrderItemId());
-
-        Optional<OrderItem> itemOpt = orderItemRepository.findById(completionDto.getErpOrderItemId());
-
-        if (itemOpt.isEmpty()) {
+        OrderItemCompletionResultDto result = markOrderItemsAsCompleted(List.of(completionDto)).get(0);
+        if (result.getOutcome() == OrderItemCompletionResultDto.Outcome.UNKNOWN) {
             log.error("Received completion notification for unknown Order Item ID: {}", completionDto.getErpOrderItemId());
             return false;
         }
+        return true;
+    }
 
-        OrderItem item = itemOpt.get();
-
-        if (item.getStatus() == OrderItemStatus.COMPLETED) {
-            log.warn("Received duplicate completion notification for already completed Order Item ID: {}", item.getId());
-            return true;
-        }
-
-        item.setStatus(OrderItemStatus.COMPLETED);
-        item.setCompletionTimestamp(completionDto.getCompletionTime());
-        // if(completionDto.getActualQuantityProduced() != null) { item.setActualQuantity(completionDto.getActualQuantityProduced()); }
-        orderItemRepository.save(item);
-        log.info("Marked Order Item ID: {} as COMPLETED.", item.getId());
-
-        ClientOrder parentOrder = item.getClientOrder();
-        if (parentOrder != null) {
-            boolean allItemsCompleted = true;
-
-            ClientOrder freshParentOrder = clientOrderRepository.findById(parentOrder.getId()).orElse(null);
-            if (freshParentOrder != null) {
-                for (OrderItem siblingItem : freshParentOrder.getItems()) {
-                    if (siblingItem.getStatus() != OrderItemStatus.COMPLETED) {
-                        allItemsCompleted = false;
-                        break;
-                    }
+    /**
+     * Applies a batch of MES completion notifications in one transaction: one query loads and locks
+     * the items, their updates go out as JDBC batches, and the parent orders' completion counters
+     * are updated in place, so the cost does not depend on how many items the orders have. A
+     * conflict with a concurrent writer of the same orders (optimistic lock failure, deadlock) rolls
+     * the batch back and it is applied again, up to {@code erp.completions.max-attempts} times.
+     * Results are in the order of the notifications.
+     */
+    @Override
+    public List<OrderItemCompletionResultDto> markOrderItemsAsCompleted(List<OrderItemCompletionDto> completionDtos) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                AppliedCompletions applied = transaction.execute(status -> applyCompletions(completionDtos));
+                applied.completedItemIds().forEach(schedulingQueue::remove);
+                log.info("Marked {} Order Item(s) as COMPLETED ({} notification(s) received).",
+                        applied.completedItemIds().size(), completionDtos.size());
+                return applied.results();
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= completionMaxAttempts) {
+                    throw e;
                 }
+                log.warn("Completion batch of {} notification(s) conflicted with a concurrent update (attempt {}/{}), retrying: {}",
+                        completionDtos.size(), attempt, completionMaxAttempts, e.getMessage());
+            }
+        }
+    }
 
-                if (allItemsCompleted) {
-                    log.info("All items for Client Order ID: {} are now COMPLETED. Updating parent order status.", freshParentOrder.getId());
-                    freshParentOrder.setStatus(OrderStatus.COMPLETED);
-                    clientOrderRepository.save(freshParentOrder);
+    private AppliedCompletions applyCompletions(List<OrderItemCompletionDto> completionDtos) {
+        Set<Long> itemIds = completionDtos.stream().map(OrderItemCompletionDto::getErpOrderItemId).collect(Collectors.toSet());
+        Map<Long, OrderItem> itemsById = orderItemRepository.lockByIdIn(itemIds).stream()
+                .collect(Collectors.toMap(OrderItem::getId, item -> item));
+
+        List<OrderItemCompletionResultDto> results = new ArrayList<>(completionDtos.size());
+        List<Long> completedItemIds = new ArrayList<>();
+        Map<Long, Integer> completedItemsByOrderId = new HashMap<>();
+        for (OrderItemCompletionDto completionDto : completionDtos) {
+            Long itemId = completionDto.getErpOrderItemId();
+            OrderItem item = itemsById.get(itemId);
+            OrderItemCompletionResultDto.Outcome outcome;
+            if (item == null) {
+                outcome = OrderItemCompletionResultDto.Outcome.UNKNOWN;
+            } else if (item.getStatus() == OrderItemStatus.COMPLETED) {
+                log.warn("Received duplicate completion notification for already completed Order Item ID: {}", itemId);
+                outcome = OrderItemCompletionResultDto.Outcome.DUPLICATE;
+            } else {
+                item.setStatus(OrderItemStatus.COMPLETED);
+                item.setCompletionTimestamp(completionDto.getCompletionTime());
+                completedItemIds.add(itemId);
+                if (item.getClientOrder() != null) {
+                    // The proxy's id, without loading the order
+                    completedItemsByOrderId.merge(item.getClientOrder().getId(), 1, Integer::sum);
                 } else {
-                    log.info("Client Order ID: {} still has pending/processing items.", freshParentOrder.getId());
-
-                    if (freshParentOrder.getStatus() == OrderStatus.SENT_TO_MES) {
-                        freshParentOrder.setStatus(OrderStatus.PROCESSING);
-                        clientOrderRepository.save(freshParentOrder);
-                    }
+                    log.warn("Completed Order Item ID {} has no parent ClientOrder associated!", itemId);
                 }
-            } else {
-                log.error("Could not reload parent order ID {} for item {}", parentOrder.getId(), item.getId());
+                outcome = OrderItemCompletionResultDto.Outcome.COMPLETED;
             }
-        } else {
-            log.warn("Completed Order Item ID {} has no parent ClientOrder associated!", item.getId());
+            results.add(new OrderItemCompletionResultDto(itemId, outcome));
         }
 
-        return true;
+        if (!completedItemIds.isEmpty()) {
+            orderStatusRollup.updateCompletedClientOrderStatuses(completedItemsByOrderId);
+            eventPublisher.publishEvent(new OrderItemsCompletedEvent(completedItemIds));
+        }
+        return new AppliedCompletions(results, completedItemIds);
     }
 
-    public List<ClientOrder> getAllOrders() {
-        log.info("Fetching all client orders");
-        return clientOrderRepository.findAll();
+    public List<ClientOrder> getOrders(long beforeId, int limit) {
+        log.info("Fetching up to {} client orders before ID {}", limit, beforeId);
+        return clientOrderRepository.findByIdLessThanOrderByIdDesc(beforeId, Limit.of(limit));
     }
 
     public Optional<ClientOrder> getOrderById(Long internalOrderId) {
@@ -174,23 +313,26 @@ public class OrderServiceImpl implements OrderService {
         return clientOrderRepository.findById(internalOrderId);
     }
 
-    public List<ClientOrder> getOrdersByClientNif(Long nif) {
-        log.info("Fetching orders for client NIF: {}", nif);
-        return clientOrderRepository.findByClient_Nif(nif);
+    public List<ClientOrder> getOrdersByClientNif(Long nif, long beforeId, int limit) {
+        log.info("Fetching up to {} orders for client NIF {} before ID {}", limit, nif, beforeId);
+        return clientOrderRepository.findByClient_NifAndIdLessThanOrderByIdDesc(nif, beforeId, Limit.of(limit));
     }
 
-    public List<OrderItem> getItemsDueOn(LocalDate date) {
-        log.info("Fetching order items due on: {}", date);
-        return orderItemRepository.findByDueDate(date);
+    public List<OrderItem> getItemsDueOn(LocalDate date, long beforeId, int limit) {
+        log.info("Fetching up to {} order items due on {} before ID {}", limit, date, beforeId);
+        return orderItemRepository.findByDueDateAndIdLessThanOrderByIdDesc(date, beforeId, Limit.of(limit));
     }
 
-    public List<OrderItem> getItemsByType(Integer productType) {
-        log.info("Fetching order items for product type: {}", productType);
-        return orderItemRepository.findByProductType(productType);
+    public List<OrderItem> getItemsByType(Integer productType, long beforeId, int limit) {
+        log.info("Fetching up to {} order items of product type {} before ID {}", limit, productType, beforeId);
+        return orderItemRepository.findByProductTypeAndIdLessThanOrderByIdDesc(productType, beforeId, Limit.of(limit));
     }
 
     public Optional<Client> getClientByNif(Long nif) {
         log.info("Fetching client by NIF: {}", nif);
         return clientRepository.findByNif(nif);
     }
+
+    private record AppliedCompletions(List<OrderItemCompletionResultDto> results, List<Long> completedItemIds) {
+    }
 }
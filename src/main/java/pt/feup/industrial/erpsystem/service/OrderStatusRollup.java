@@ -0,0 +1,71 @@
+package pt.feup.industrial.erpsystem.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import pt.feup.industrial.erpsystem.model.OrderItemStatus;
+import pt.feup.industrial.erpsystem.model.OrderStatus;
+import pt.feup.industrial.erpsystem.repository.ClientOrderRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Derives a client order's status from the statuses of its items
+@Component
+public class OrderStatusRollup {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderStatusRollup.class);
+
+    // An order with an item in one of these stays PENDING; FAILED_TO_SEND needs attention before the order can move on
+    private static final Set<OrderItemStatus> NOT_SENT = EnumSet.of(
+            OrderItemStatus.PENDING, OrderItemStatus.QUEUED_FOR_MES, OrderItemStatus.FAILED_TO_SEND);
+
+    private final ClientOrderRepository clientOrderRepository;
+
+    @Autowired
+    public OrderStatusRollup(ClientOrderRepository clientOrderRepository) {
+        this.clientOrderRepository = clientOrderRepository;
+    }
+
+    /**
+     * Moves PENDING orders whose items all reached the MES to SENT_TO_MES, with one UPDATE for all
+     * the given orders however many there are. Item statuses are read by the statement itself;
+     * Hibernate flushes pending item changes before running it. Call inside a transaction.
+     */
+    public void updateAffectedClientOrderStatuses(Collection<Long> clientOrderIds) {
+        if (clientOrderIds.isEmpty()) {
+            return;
+        }
+        int sent = clientOrderRepository.updateStatusWhereNoItemIn(clientOrderIds, OrderStatus.PENDING, OrderStatus.SENT_TO_MES, NOT_SENT);
+        log.info("Re-evaluated {} ClientOrder(s): {} moved to SENT_TO_MES, the others still have items not sent.",
+                clientOrderIds.size(), sent);
+    }
+
+    /**
+     * After items completed: adds them to their orders' counters, completes the orders that have
+     * all their items done and moves SENT_TO_MES orders with production under way to PROCESSING.
+     * Costs the same however many items the orders have. Call inside a transaction.
+     */
+    public void updateCompletedClientOrderStatuses(Map<Long, Integer> completedItemsByOrderId) {
+        if (completedItemsByOrderId.isEmpty()) {
+            return;
+        }
+        // Usually every order got one item done, so this is one statement
+        Map<Integer, List<Long>> orderIdsByCompletedItems = new TreeMap<>();
+        completedItemsByOrderId.forEach((orderId, completed) ->
+                orderIdsByCompletedItems.computeIfAbsent(completed, count -> new ArrayList<>()).add(orderId));
+        orderIdsByCompletedItems.forEach((completed, orderIds) -> clientOrderRepository.addCompletedItems(orderIds, completed));
+
+        Set<Long> clientOrderIds = completedItemsByOrderId.keySet();
+        int completed = clientOrderRepository.completeFinishedOrders(clientOrderIds);
+        int processing = clientOrderRepository.updateStatusByIdIn(clientOrderIds, OrderStatus.SENT_TO_MES, OrderStatus.PROCESSING);
+        log.info("Re-evaluated {} ClientOrder(s) after completions: {} COMPLETED, {} now PROCESSING.",
+                clientOrderIds.size(), completed, processing);
+    }
+}
@@ -0,0 +1,202 @@
+package pt.feup.industrial.erpsystem.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import pt.feup.industrial.erpsystem.model.ProductTypePieces;
+import pt.feup.industrial.erpsystem.model.SchedulableItem;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimises the expected lateness penalty (days late x penalty per day) over the planning horizon.
+ * <p>
+ * Starts from a due-date plan that, unlike {@link GreedySchedulingStrategy}, keeps filling a day
+ * with later items that still fit. Then improves it by local search: an item is moved to an
+ * earlier day with spare room, or swapped with an item planned earlier, whenever that lowers the
+ * total penalty. Only late (or would-be-late) items are worth moving, which keeps a pass cheap
+ * even for a large backlog; the search stops when a pass finds nothing or the time budget is spent.
+ */
+@Component("penalty-aware")
+public class PenaltyAwareSchedulingStrategy implements SchedulingStrategy {
+
+    private static final Logger log = LoggerFactory.getLogger(PenaltyAwareSchedulingStrategy.class);
+
+    @Value("${erp.scheduling.optimizer.time-budget-ms:2000}")
+    private long timeBudgetMs;
+
+    // Unplanned items considered for moving into the horizon, the most costly first
+    @Value("${erp.scheduling.optimizer.max-candidates:5000}")
+    private int maxCandidates;
+
+    @Override
+    public ProductionPlan plan(Iterable<SchedulableItem> pendingItems, SchedulingCapacity capacity, LocalDate startDate, int horizonDays,
+                               List<ProductTypePieces> startDayUsed) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeBudgetMs);
+        Search search = new Search(capacity, startDate.toEpochDay(), horizonDays, startDayUsed);
+
+        List<SchedulableItem> allItems = new ArrayList<>();
+        List<SchedulableItem> unplanned = new ArrayList<>();
+        for (SchedulableItem item : pendingItems) {
+            allItems.add(item);
+            if (!search.placeInEarliestDay(item)) {
+                unplanned.add(item);
+            }
+        }
+
+        List<SchedulableItem> candidates = unplanned.stream()
+                .filter(item -> search.cost(item, horizonDays) > 0)
+                .sorted(Comparator.comparingDouble((SchedulableItem item) -> search.cost(item, horizonDays)).reversed())
+                .limit(maxCandidates)
+                .toList();
+
+        int passes = 0;
+        int moves = 0;
+        boolean improved = true;
+        while (improved && System.nanoTime() < deadline) {
+            improved = false;
+            passes++;
+            List<SchedulableItem> movers = new ArrayList<>(search.latePlannedItems());
+            movers.addAll(candidates);
+            for (SchedulableItem item : movers) {
+                if (System.nanoTime() >= deadline) {
+                    break;
+                }
+                if (search.improve(item)) {
+                    improved = true;
+                    moves++;
+                }
+            }
+        }
+        log.debug("Penalty-aware plan for {} items: {} move(s) in {} pass(es){}.",
+                allItems.size(), moves, passes, improved ? ", stopped by the time budget" : "");
+
+        return ProductionPlan.evaluate(startDate, search.days, allItems, horizonDays);
+    }
+
+    private static class Search {
+
+        private final SchedulingCapacity capacity;
+        private final long startEpochDay;
+        private final int horizonDays;
+        private final List<List<SchedulableItem>> days = new ArrayList<>();
+        private final DayLoad[] loads;
+        private final Map<Long, Integer> plannedDay = new HashMap<>();
+        private int firstOpenDay;
+
+        private Search(SchedulingCapacity capacity, long startEpochDay, int horizonDays, List<ProductTypePieces> startDayUsed) {
+            this.capacity = capacity;
+            this.startEpochDay = startEpochDay;
+            this.horizonDays = horizonDays;
+            this.loads = new DayLoad[horizonDays];
+            for (int day = 0; day < horizonDays; day++) {
+                days.add(new ArrayList<>());
+                loads[day] = day == 0 ? DayLoad.of(startDayUsed) : new DayLoad();
+            }
+        }
+
+        // Penalty of the item when finished on the given day of the plan; the horizon means unplanned
+        private double cost(SchedulableItem item, int day) {
+            return ProductionPlan.latenessPenalty(item, startEpochDay + day);
+        }
+
+        private int dayOf(SchedulableItem item) {
+            return plannedDay.getOrDefault(item.itemId(), horizonDays);
+        }
+
+        private boolean placeInEarliestDay(SchedulableItem item) {
+            if (!capacity.fitsEmptyDay(item)) {
+                return false;
+            }
+            for (int day = firstOpenDay; day < horizonDays; day++) {
+                if (loads[day].fits(item, capacity)) {
+                    place(item, day);
+                    while (firstOpenDay < horizonDays && loads[firstOpenDay].isFull(capacity)) {
+                        firstOpenDay++;
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private List<SchedulableItem> latePlannedItems() {
+            List<SchedulableItem> late = new ArrayList<>();
+            for (int day = 1; day < horizonDays; day++) {
+                for (SchedulableItem item : days.get(day)) {
+                    if (cost(item, day) > 0) {
+                        late.add(item);
+                    }
+                }
+            }
+            return late;
+        }
+
+        // Applies the best move of the item to an earlier day, if any lowers the total penalty
+        private boolean improve(SchedulableItem item) {
+            int from = dayOf(item);
+            double bestGain = 0;
+            int bestDay = -1;
+            SchedulableItem bestSwap = null;
+
+            for (int to = 0; to < from; to++) {
+                double itemGain = cost(item, from) - cost(item, to);
+                if (itemGain <= bestGain) {
+                    continue;
+                }
+                if (loads[to].fits(item, capacity)) {
+                    bestGain = itemGain;
+                    bestDay = to;
+                    bestSwap = null;
+                    continue;
+                }
+                for (SchedulableItem other : days.get(to)) {
+                    double gain = itemGain - (cost(other, from) - cost(other, to));
+                    if (gain > bestGain
+                            && loads[to].fitsReplacing(other, item, capacity)
+                            && (from == horizonDays || loads[from].fitsReplacing(item, other, capacity))) {
+                        bestGain = gain;
+                        bestDay = to;
+                        bestSwap = other;
+                    }
+                }
+            }
+
+            if (bestDay < 0) {
+                return false;
+            }
+            unplace(item, from);
+            if (bestSwap != null) {
+                unplace(bestSwap, bestDay);
+                place(bestSwap, from);
+            }
+            place(item, bestDay);
+            return true;
+        }
+
+        private void place(SchedulableItem item, int day) {
+            if (day == horizonDays) {
+                return;
+            }
+            days.get(day).add(item);
+            loads[day].add(item);
+            plannedDay.put(item.itemId(), day);
+        }
+
+        private void unplace(SchedulableItem item, int day) {
+            if (day == horizonDays) {
+                return;
+            }
+            days.get(day).remove(item);
+            loads[day].remove(item);
+            plannedDay.remove(item.itemId());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package pt.feup.industrial.erpsystem.service;
+
+import pt.feup.industrial.erpsystem.model.SchedulableItem;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Items planned per day from {@code startDate} on, with the lateness penalty the plan is expected
+ * to incur. An item planned on a day is taken to be finished that day; unplanned items are counted
+ * as finished on the day after the horizon, the earliest they could be.
+ */
+public record ProductionPlan(LocalDate startDate, List<List<SchedulableItem>> days, int unplannedItems, double expectedPenalty) {
+
+    static ProductionPlan evaluate(LocalDate startDate, List<List<SchedulableItem>> days, List<SchedulableItem> allItems, int horizonDays) {
+        Map<Long, Integer> plannedDay = new HashMap<>();
+        for (int day = 0; day < days.size(); day++) {
+            for (SchedulableItem item : days.get(day)) {
+                plannedDay.put(item.itemId(), day);
+            }
+        }
+        long startEpochDay = startDate.toEpochDay();
+        double penalty = 0;
+        for (SchedulableItem item : allItems) {
+            penalty += latenessPenalty(item, startEpochDay + plannedDay.getOrDefault(item.itemId(), horizonDays));
+        }
+        List<List<SchedulableItem>> plannedDays = days.stream().map(List::copyOf).toList();
+        return new ProductionPlan(startDate, plannedDays, allItems.size() - plannedDay.size(), penalty);
+    }
+
+    static double latenessPenalty(SchedulableItem item, long finishedEpochDay) {
+        return Math.max(0, finishedEpochDay - item.dueEpochDay()) * item.penaltyPerDay();
+    }
+
+    // What goes to the MES now
+    public List<SchedulableItem> firstDay() {
+        return days.isEmpty() ? List.of() : days.get(0);
+    }
+}
@@ -0,0 +1,248 @@
+package pt.feup.industrial.erpsystem.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import pt.feup.industrial.erpsystem.dto.OrderPlanProjectionDto;
+import pt.feup.industrial.erpsystem.event.CapacityResetEvent;
+import pt.feup.industrial.erpsystem.model.PlannedDayLoad;
+import pt.feup.industrial.erpsystem.model.PlannedItem;
+import pt.feup.industrial.erpsystem.model.ProductTypePieces;
+import pt.feup.industrial.erpsystem.model.SchedulableItem;
+import pt.feup.industrial.erpsystem.repository.MesOutboxRepository;
+import pt.feup.industrial.erpsystem.repository.ProductionPlanRepository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps the production plan for the next {@code erp.scheduling.plan-horizon-days}: which pending
+ * item is expected to go to the factory on which day. The plan is redone shortly after the
+ * scheduling queue changes (orders arriving, items dispatched or completed) or the day rolls over,
+ * and materialized in the production_plan table, rewriting only the rows whose projection changed.
+ * Projected ship dates and lateness are read from there without running the scheduler; scheduling
+ * runs dispatch the plan's first day, which only gets the capacity today's dispatches left.
+ */
+@Component
+public class ProductionPlanner {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductionPlanner.class);
+
+    private final SchedulingQueue schedulingQueue;
+    private final ProductionPlanRepository productionPlanRepository;
+    private final MesOutboxRepository mesOutboxRepository;
+    private final SchedulerLeadership leadership;
+    private final SchedulingStrategy schedulingStrategy;
+    private final String strategyName;
+    private final TransactionTemplate transaction;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${erp.scheduling.daily-capacity:24}")
+    private int dailyFactoryPieceCapacity;
+
+    // Optional per product type limits within the daily capacity, e.g. {5: 12, 7: 8}
+    @Value("#{${erp.scheduling.product-type-daily-capacity:{:}}}")
+    private Map<Integer, Integer> productTypeDailyCapacity;
+
+    @Value("${erp.scheduling.plan-horizon-days:14}")
+    private int planHorizonDays;
+
+    // Immutable and replaced as a whole, so readers of an up-to-date plan never lock
+    private volatile CurrentPlan currentPlan;
+    private final Object replanLock = new Object();
+    // Projection last written per item; null until the table was first rewritten by this instance; guarded by this
+    private Map<Long, Projection> materialized;
+    private ProductionPlan materializedPlan;
+
+    @Autowired
+    public ProductionPlanner(SchedulingQueue schedulingQueue, ProductionPlanRepository productionPlanRepository,
+                             MesOutboxRepository mesOutboxRepository, SchedulerLeadership leadership,
+                             Map<String, SchedulingStrategy> schedulingStrategies,
+                             @Value("${erp.scheduling.strategy:greedy}") String strategyName,
+                             PlatformTransactionManager transactionManager, ApplicationEventPublisher eventPublisher) {
+        this.schedulingQueue = schedulingQueue;
+        this.productionPlanRepository = productionPlanRepository;
+        this.mesOutboxRepository = mesOutboxRepository;
+        this.leadership = leadership;
+        this.schedulingStrategy = schedulingStrategies.get(strategyName);
+        this.strategyName = strategyName;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        if (schedulingStrategy == null) {
+            throw new IllegalStateException("Unknown erp.scheduling.strategy '" + strategyName + "', expected one of " + schedulingStrategies.keySet());
+        }
+    }
+
+    public SchedulingCapacity schedulingCapacity() {
+        return new SchedulingCapacity(dailyFactoryPieceCapacity, productTypeDailyCapacity);
+    }
+
+    public String strategyName() {
+        return strategyName;
+    }
+
+    public int planHorizonDays() {
+        return planHorizonDays;
+    }
+
+    // The daily capacity is a per-day budget: a new day frees all of it
+    @Scheduled(cron = "${erp.scheduling.capacity-reset-cron:0 0 0 * * *}")
+    public void startNewDay() {
+        LocalDate today = LocalDate.now();
+        log.info("Factory capacity reset for {}: {} pieces available.", today, dailyFactoryPieceCapacity);
+        eventPublisher.publishEvent(new CapacityResetEvent(today));
+    }
+
+    /**
+     * The plan for the queue as it is now, starting today. Only re-planned if either changed since
+     * the last plan; callers finding it stale wait for one re-plan instead of each making their own.
+     */
+    public ProductionPlan currentPlan() {
+        CurrentPlan plan = currentPlan;
+        if (plan != null && plan.isFor(schedulingQueue.version(), LocalDate.now())) {
+            return plan.plan();
+        }
+        synchronized (replanLock) {
+            LocalDate today = LocalDate.now();
+            long queueVersion = schedulingQueue.version();
+            plan = currentPlan;
+            if (plan == null || !plan.isFor(queueVersion, today)) {
+                plan = new CurrentPlan(schedulingStrategy.plan(schedulingQueue, schedulingCapacity(), today, planHorizonDays,
+                        piecesDispatchedOn(today)), queueVersion);
+                currentPlan = plan;
+            }
+            return plan.plan();
+        }
+    }
+
+    // Pieces queued for the MES on the given day by any instance
+    public List<ProductTypePieces> piecesDispatchedOn(LocalDate day) {
+        return mesOutboxRepository.sumPiecesByProductTypeCreatedBetween(day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+    }
+
+    // In cluster mode only the scheduling instance writes the table
+    @Scheduled(initialDelayString = "${erp.scheduling.plan.refresh-interval-ms:5000}",
+            fixedDelayString = "${erp.scheduling.plan.refresh-interval-ms:5000}")
+    public synchronized void refresh() {
+        if (!leadership.isLeader()) {
+            // Another instance writes the table meanwhile; start over from a full rebuild if this one leads again
+            materialized = null;
+            materializedPlan = null;
+            return;
+        }
+        if (!schedulingQueue.isReady()) {
+            return;
+        }
+        ProductionPlan plan = currentPlan();
+        if (plan == materializedPlan) {
+            return;
+        }
+
+        Map<Long, Projection> projections = project(plan);
+        List<PlannedItem> changedRows = new ArrayList<>();
+        List<Long> staleItemIds = new ArrayList<>();
+        projections.forEach((itemId, projection) -> {
+            Projection previous = materialized == null ? null : materialized.get(itemId);
+            if (!projection.equals(previous)) {
+                changedRows.add(projection.toRow(itemId));
+                if (previous != null) {
+                    staleItemIds.add(itemId);
+                }
+            }
+        });
+        if (materialized != null) {
+            materialized.keySet().stream().filter(itemId -> !projections.containsKey(itemId)).forEach(staleItemIds::add);
+        }
+
+        boolean rebuild = materialized == null;
+        transaction.executeWithoutResult(status -> {
+            if (rebuild) {
+                productionPlanRepository.deleteAllInBatch();
+            } else if (!staleItemIds.isEmpty()) {
+                productionPlanRepository.deleteAllByIdInBatch(staleItemIds);
+            }
+            productionPlanRepository.saveAll(changedRows);
+        });
+        materialized = projections;
+        materializedPlan = plan;
+        log.debug("Production plan materialized: {} row(s) written, {} removed{}.",
+                changedRows.size(), staleItemIds.size(), rebuild ? " (full rebuild)" : "");
+    }
+
+    public Optional<OrderPlanProjectionDto> projectOrder(Long orderId) {
+        List<PlannedItem> items = productionPlanRepository.findByClientOrderId(orderId);
+        if (items.isEmpty()) {
+            return Optional.empty();
+        }
+        boolean beyondHorizon = items.stream().anyMatch(item -> item.getPlannedDay() == null);
+        LocalDate shipDate = beyondHorizon ? null
+                : items.stream().map(PlannedItem::getPlannedDay).max(LocalDate::compareTo).orElseThrow();
+        int latenessDays = items.stream().mapToInt(PlannedItem::getProjectedLatenessDays).max().orElse(0);
+        double penalty = items.stream().mapToDouble(PlannedItem::getProjectedPenalty).sum();
+        return Optional.of(new OrderPlanProjectionDto(orderId, shipDate, beyondHorizon, latenessDays, penalty, items));
+    }
+
+    public List<PlannedItem> plannedOn(LocalDate day) {
+        return productionPlanRepository.findByPlannedDayOrderByProductTypeAscOrderItemIdAsc(day);
+    }
+
+    public List<PlannedDayLoad> plannedLoad(LocalDate from, LocalDate to) {
+        return productionPlanRepository.sumByDayAndProductType(from, to);
+    }
+
+    private Map<Long, Projection> project(ProductionPlan plan) {
+        Map<Long, Projection> projections = new HashMap<>();
+        for (int day = 0; day < plan.days().size(); day++) {
+            LocalDate plannedDay = plan.startDate().plusDays(day);
+            for (SchedulableItem item : plan.days().get(day)) {
+                projections.put(item.itemId(), Projection.of(item, plannedDay, plannedDay));
+            }
+        }
+        // Unplanned items are counted as finished the day after the horizon, as ProductionPlan does
+        LocalDate afterHorizon = plan.startDate().plusDays(planHorizonDays);
+        for (SchedulableItem item : schedulingQueue) {
+            projections.computeIfAbsent(item.itemId(), itemId -> Projection.of(item, null, afterHorizon));
+        }
+        return projections;
+    }
+
+    private record CurrentPlan(ProductionPlan plan, long queueVersion) {
+
+        boolean isFor(long queueVersion, LocalDate today) {
+            return this.queueVersion == queueVersion && plan.startDate().equals(today);
+        }
+    }
+
+    private record Projection(long clientOrderId, int productType, int quantity, LocalDate dueDate,
+                              LocalDate plannedDay, int latenessDays, double penalty) {
+
+        static Projection of(SchedulableItem item, LocalDate plannedDay, LocalDate finishedDay) {
+            long finishedEpochDay = finishedDay.toEpochDay();
+            return new Projection(item.orderId(), item.productType(), item.quantity(), item.dueDate(), plannedDay,
+                    (int) Math.max(0, finishedEpochDay - item.dueEpochDay()), ProductionPlan.latenessPenalty(item, finishedEpochDay));
+        }
+
+        PlannedItem toRow(long itemId) {
+            PlannedItem row = new PlannedItem();
+            row.setOrderItemId(itemId);
+            row.setClientOrderId(clientOrderId);
+            row.setProductType(productType);
+            row.setQuantity(quantity);
+            row.setDueDate(dueDate);
+            row.setPlannedDay(plannedDay);
+            row.setProjectedLatenessDays(latenessDays);
+            row.setProjectedPenalty(penalty);
+            return row;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package pt.feup.industrial.erpsystem.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import pt.feup.industrial.erpsystem.model.SchedulerLease;
+import pt.feup.industrial.erpsystem.repository.SchedulerLeaseRepository;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Picks the one ERP instance that runs scheduling when several share the database. In cluster
+ * mode ({@code erp.scheduling.cluster.enabled}) an instance must hold the "scheduler" row of
+ * scheduler_leases; the holder renews it on every run and it lapses {@code lease-duration} after
+ * the holder stops doing so. Outside cluster mode every instance schedules, as a single node always did.
+ */
+@Component
+public class SchedulerLeadership {
+
+    private static final Logger log = LoggerFactory.getLogger(SchedulerLeadership.class);
+
+    static final String LEASE_NAME = "scheduler";
+
+    private final SchedulerLeaseRepository leaseRepository;
+    private final TransactionTemplate transaction;
+    private final boolean clusterEnabled;
+    private final Duration leaseDuration;
+    private final String nodeId;
+
+    private volatile boolean leader;
+
+    @Autowired
+    public SchedulerLeadership(SchedulerLeaseRepository leaseRepository, PlatformTransactionManager transactionManager,
+                               @Value("${erp.scheduling.cluster.enabled:false}") boolean clusterEnabled,
+                               @Value("${erp.scheduling.cluster.lease-duration:5m}") Duration leaseDuration,
+                               @Value("${erp.scheduling.cluster.node-id:}") String nodeId) {
+        this.leaseRepository = leaseRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.clusterEnabled = clusterEnabled;
+        this.leaseDuration = leaseDuration;
+        this.nodeId = nodeId.isBlank() ? defaultNodeId() : nodeId;
+    }
+
+    public boolean isClusterMode() {
+        return clusterEnabled;
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    public boolean isLeader() {
+        return !clusterEnabled || leader;
+    }
+
+    // Takes or renews the lease; true if this instance may schedule now
+    public boolean acquire() {
+        if (!clusterEnabled) {
+            return true;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        boolean acquired = tryAcquire(now);
+        if (!acquired && !leaseRepository.existsById(LEASE_NAME)) {
+            try {
+                transaction.executeWithoutResult(status -> leaseRepository.saveAndFlush(new SchedulerLease(LEASE_NAME, now)));
+            } catch (DataIntegrityViolationException e) {
+                log.debug("Scheduler lease row was created by another instance first.");
+            }
+            acquired = tryAcquire(now);
+        }
+
+        if (acquired != leader) {
+            if (acquired) {
+                log.info("Instance {} took the scheduler lease and now runs scheduling.", nodeId);
+            } else {
+                log.warn("Instance {} lost the scheduler lease to another instance.", nodeId);
+            }
+        }
+        leader = acquired;
+        return acquired;
+    }
+
+    /**
+     * Whether the lease is still ours, checked with the lease row locked until the surrounding
+     * transaction ends. A leader that stalled past its lease then cannot commit scheduling work
+     * alongside the instance that took over. Must be called inside a transaction.
+     */
+    public boolean holdsLease() {
+        if (!clusterEnabled) {
+            return true;
+        }
+        return leaseRepository.findByNameForUpdate(LEASE_NAME)
+                .filter(lease -> nodeId.equals(lease.getOwner()) && lease.getExpiresAt().isAfter(LocalDateTime.now()))
+                .isPresent();
+    }
+
+    // Lets another instance take over right away instead of waiting for the lease to run out
+    @PreDestroy
+    public void release() {
+        if (!clusterEnabled || !leader) {
+            return;
+        }
+        try {
+            transaction.executeWithoutResult(status -> leaseRepository.release(LEASE_NAME, nodeId));
+            leader = false;
+            log.info("Instance {} released the scheduler lease.", nodeId);
+        } catch (RuntimeException e) {
+            log.warn("Could not release the scheduler lease; it expires on its own: {}", e.getMessage());
+        }
+    }
+
+    private boolean tryAcquire(LocalDateTime now) {
+        Integer updated = transaction.execute(status -> leaseRepository.tryAcquire(LEASE_NAME, nodeId, now, now.plus(leaseDuration)));
+        return updated != null && updated == 1;
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown-host";
+        }
+        return host + "-" + ProcessHandle.current().pid() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,26 @@
+package pt.feup.industrial.erpsystem.service;
+
+import pt.feup.industrial.erpsystem.model.SchedulableItem;
+
+import java.util.Map;
+
+/**
+ * Pieces the factory can take per day, overall and optionally per product type. Product types
+ * without their own limit are only bound by the overall one.
+ */
+public record SchedulingCapacity(int dailyPieces, Map<Integer, Integer> dailyPiecesByProductType) {
+
+    public SchedulingCapacity {
+        dailyPiecesByProductType = Map.copyOf(dailyPiecesByProductType);
+    }
+
+    public Integer productTypeLimit(int productType) {
+        return dailyPiecesByProductType.get(productType);
+    }
+
+    // Items that do not even fit an empty day can never be scheduled
+    public boolean fitsEmptyDay(SchedulableItem item) {
+        Integer typeLimit = productTypeLimit(item.productType());
+        return item.quantity() <= dailyPieces && (typeLimit == null || item.quantity() <= typeLimit);
+    }
+}
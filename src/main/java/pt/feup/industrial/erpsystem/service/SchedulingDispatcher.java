@@ -0,0 +1,181 @@
+package pt.feup.industrial.erpsystem.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import pt.feup.industrial.erpsystem.event.CapacityResetEvent;
+import pt.feup.industrial.erpsystem.event.OrderItemsCompletedEvent;
+import pt.feup.industrial.erpsystem.event.OrdersPersistedEvent;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts scheduling runs when something changed instead of waiting for the cron: committed
+ * orders, completed items and a new day's capacity each request a run. Requests are debounced,
+ * so a burst of orders becomes one run {@code debounce} after the last of them, but a steady
+ * stream still gets one at least every {@code max-delay}. A run is only started when there are
+ * PENDING items and today's capacity is not used up; in cluster mode the run itself decides,
+ * through the scheduler lease, whether this instance may dispatch. Orders persisted by another
+ * instance raise no event here, so the leader polls for them every {@code catch-up-interval-ms}.
+ */
+@Component
+public class SchedulingDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(SchedulingDispatcher.class);
+
+    private final SchedulingService schedulingService;
+    private final SchedulingQueue schedulingQueue;
+    private final SchedulerLeadership leadership;
+    private final boolean enabled;
+    private final long debounceNanos;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService executor;
+    private final Map<String, Counter> triggerCounters;
+    private final Counter runCounter;
+
+    private ScheduledFuture<?> pendingRun;
+    // When the oldest request the pending run answers was made
+    private long firstRequestNanos;
+
+    @Autowired
+    public SchedulingDispatcher(SchedulingService schedulingService, SchedulingQueue schedulingQueue,
+                                SchedulerLeadership leadership,
+                                @Value("${erp.scheduling.dispatch.event-driven:true}") boolean enabled,
+                                @Value("${erp.scheduling.dispatch.debounce:500ms}") Duration debounce,
+                                @Value("${erp.scheduling.dispatch.max-delay:5s}") Duration maxDelay,
+                                MeterRegistry meterRegistry) {
+        this.schedulingService = schedulingService;
+        this.schedulingQueue = schedulingQueue;
+        this.leadership = leadership;
+        this.enabled = enabled;
+        this.debounceNanos = debounce.toNanos();
+        this.maxDelayNanos = Math.max(debounce.toNanos(), maxDelay.toNanos());
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "Scheduling-Dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.executor = scheduler;
+        this.triggerCounters = Map.of(
+                "orders", triggerCounter(meterRegistry, "orders"),
+                "completions", triggerCounter(meterRegistry, "completions"),
+                "capacity-reset", triggerCounter(meterRegistry, "capacity-reset"),
+                "startup", triggerCounter(meterRegistry, "startup"),
+                "catch-up", triggerCounter(meterRegistry, "catch-up"));
+        this.runCounter = Counter.builder("erp.scheduling.dispatch.runs")
+                .description("Scheduling runs started by events")
+                .register(meterRegistry);
+    }
+
+    @TransactionalEventListener
+    public void onOrdersPersisted(OrdersPersistedEvent event) {
+        request("orders");
+    }
+
+    @TransactionalEventListener
+    public void onItemsCompleted(OrderItemsCompletedEvent event) {
+        schedulingService.onItemsCompleted();
+        request("completions");
+    }
+
+    @EventListener
+    public void onCapacityReset(CapacityResetEvent event) {
+        request("capacity-reset");
+    }
+
+    // Runs after the scheduling queue is built (see SchedulingQueue#rebuild), so the backlog found at startup gets a run too
+    @EventListener(ApplicationReadyEvent.class)
+    @Order
+    public void onApplicationReady() {
+        request("startup");
+    }
+
+    @Scheduled(initialDelayString = "${erp.scheduling.cluster.catch-up-interval-ms:5000}",
+            fixedDelayString = "${erp.scheduling.cluster.catch-up-interval-ms:5000}")
+    public void catchUp() {
+        if (!enabled || !leadership.isClusterMode() || !leadership.isLeader() || !schedulingQueue.isReady()) {
+            return;
+        }
+        if (schedulingQueue.catchUp() > 0) {
+            request("catch-up");
+        }
+    }
+
+    /**
+     * Asks for a scheduling run soon. Cheap and never blocking: callers are order ingest and
+     * completion threads. Requests while there is nothing to do are dropped without a database
+     * round trip; the next event or the cron picks up anything missed.
+     */
+    public void request(String reason) {
+        if (!enabled) {
+            return;
+        }
+        triggerCounters.get(reason).increment();
+        if (!hasWork()) {
+            log.debug("Scheduling run requested ({}) but there is no work or capacity for it.", reason);
+            return;
+        }
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (pendingRun == null) {
+                firstRequestNanos = now;
+            } else {
+                pendingRun.cancel(false);
+            }
+            long delay = Math.min(debounceNanos, firstRequestNanos + maxDelayNanos - now);
+            try {
+                pendingRun = executor.schedule(this::run, Math.max(0, delay), TimeUnit.NANOSECONDS);
+            } catch (RuntimeException e) {
+                // Shutting down
+                pendingRun = null;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run() {
+        synchronized (this) {
+            pendingRun = null;
+        }
+        if (!hasWork()) {
+            return;
+        }
+        runCounter.increment();
+        try {
+            schedulingService.sendPendingOrdersToMes();
+        } catch (RuntimeException e) {
+            log.error("Event-driven scheduling run failed; the next event or the cron retries it.", e);
+        }
+    }
+
+    private boolean hasWork() {
+        return schedulingQueue.isReady() && schedulingQueue.size() > 0 && schedulingService.hasCapacityLeft();
+    }
+
+    private static Counter triggerCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("erp.scheduling.dispatch.requests")
+                .description("Scheduling runs requested, by what changed")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,205 @@
+package pt.feup.industrial.erpsystem.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import pt.feup.industrial.erpsystem.event.OrdersPersistedEvent;
+import pt.feup.industrial.erpsystem.model.OrderItem;
+import pt.feup.industrial.erpsystem.model.OrderItemStatus;
+import pt.feup.industrial.erpsystem.model.OrderStatus;
+import pt.feup.industrial.erpsystem.model.SchedulableItem;
+import pt.feup.industrial.erpsystem.repository.OrderItemRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PENDING order items in scheduling order ({@link SchedulableItem#PRIORITY}), kept in memory so a
+ * scheduling run only looks at the head instead of loading and sorting the whole backlog. Built
+ * from the database at startup, then maintained from order ingest, dispatch and completion, and
+ * periodically reconciled with the database to repair any drift (e.g. a failed status update). In
+ * cluster mode the leader also catches up with orders the other instances persisted.
+ */
+@Component
+public class SchedulingQueue implements Iterable<SchedulableItem> {
+
+    private static final Logger log = LoggerFactory.getLogger(SchedulingQueue.class);
+
+    private final OrderItemRepository orderItemRepository;
+    private final NavigableSet<SchedulableItem> queue = new ConcurrentSkipListSet<>(SchedulableItem.PRIORITY);
+    private final Map<Long, SchedulableItem> itemsById = new ConcurrentHashMap<>();
+    // Taken out of the queue for a dispatch still in progress; still PENDING in the database meanwhile
+    private final Set<Long> dispatchingItemIds = ConcurrentHashMap.newKeySet();
+    private final Counter driftCounter;
+    // Bumped on every change, so a plan can tell whether it was made from the current contents
+    private final AtomicLong version = new AtomicLong();
+    // Bumped when new items join, from ingest or reconciliation, but not when a run puts its own items back
+    private final AtomicLong arrivals = new AtomicLong();
+
+    // Reaches back beyond the last catch-up for transactions still open at the time and clock differences between instances
+    @Value("${erp.scheduling.cluster.catch-up-overlap:1m}")
+    private Duration catchUpOverlap = Duration.ofMinutes(1);
+
+    private volatile boolean ready;
+    // Orders received before this were seen by the last reconciliation or catch-up
+    private volatile LocalDateTime caughtUpTo;
+
+    @Autowired
+    public SchedulingQueue(OrderItemRepository orderItemRepository, MeterRegistry meterRegistry) {
+        this.orderItemRepository = orderItemRepository;
+        Gauge.builder("erp.scheduling.queue.size", itemsById, Map::size)
+                .description("PENDING order items waiting to be scheduled")
+                .register(meterRegistry);
+        this.driftCounter = Counter.builder("erp.scheduling.queue.drift")
+                .description("Items added or removed by reconciliation with the database")
+                .register(meterRegistry);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public synchronized void add(SchedulableItem item) {
+        SchedulableItem previous = itemsById.put(item.itemId(), item);
+        if (previous != null) {
+            queue.remove(previous);
+        }
+        queue.add(item);
+        version.incrementAndGet();
+    }
+
+    public synchronized void remove(long itemId) {
+        SchedulableItem item = itemsById.remove(itemId);
+        if (item != null) {
+            queue.remove(item);
+            version.incrementAndGet();
+        }
+    }
+
+    public void startDispatch(Collection<Long> itemIds) {
+        dispatchingItemIds.addAll(itemIds);
+        for (Long itemId : itemIds) {
+            remove(itemId);
+        }
+    }
+
+    public void finishDispatch(Collection<Long> itemIds) {
+        dispatchingItemIds.removeAll(itemIds);
+        // Plans count the day's dispatches, which are committed by now
+        version.incrementAndGet();
+    }
+
+    // Highest priority first; weakly consistent, so items may be removed while iterating
+    @Override
+    public Iterator<SchedulableItem> iterator() {
+        return queue.iterator();
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    public long arrivals() {
+        return arrivals.get();
+    }
+
+    public int size() {
+        return itemsById.size();
+    }
+
+    @TransactionalEventListener
+    public void onOrdersPersisted(OrdersPersistedEvent event) {
+        for (OrdersPersistedEvent.PersistedOrder persistedOrder : event.orders()) {
+            for (OrderItem item : persistedOrder.order().getItems()) {
+                add(SchedulableItem.of(item));
+            }
+        }
+        arrivals.incrementAndGet();
+    }
+
+    // First among the ready listeners, so those that use the queue find it built
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void rebuild() {
+        reconcile();
+        ready = true;
+        log.info("Scheduling queue built with {} PENDING items.", size());
+    }
+
+    @Scheduled(initialDelayString = "${erp.scheduling.queue-reconcile-interval-ms:600000}",
+            fixedDelayString = "${erp.scheduling.queue-reconcile-interval-ms:600000}")
+    public void reconcile() {
+        LocalDateTime startedAt = LocalDateTime.now();
+        // Only items present before the query may be dropped: anything added meanwhile can be newer than what the query saw
+        Set<Long> knownBefore = new HashSet<>(itemsById.keySet());
+        List<SchedulableItem> pending = orderItemRepository.findSchedulableItems(OrderItemStatus.PENDING, OrderStatus.PENDING);
+
+        int added = 0;
+        for (SchedulableItem item : pending) {
+            if (dispatchingItemIds.contains(item.itemId())) {
+                continue;
+            }
+            if (!knownBefore.remove(item.itemId())) {
+                added++;
+            }
+            add(item);
+        }
+        for (Long staleItemId : knownBefore) {
+            remove(staleItemId);
+        }
+
+        if (added > 0) {
+            arrivals.incrementAndGet();
+        }
+        caughtUpTo = startedAt;
+        int drift = added + knownBefore.size();
+        if (ready && drift > 0) {
+            driftCounter.increment(drift);
+            log.warn("Scheduling queue reconciled with the database: {} item(s) added, {} removed.", added, knownBefore.size());
+        }
+    }
+
+    /**
+     * Adds the PENDING items of orders received since the last catch-up or reconciliation. Orders
+     * persisted by another instance raise their ingest event only there, so the leader looks for
+     * them here instead of waiting for the next reconciliation. Returns how many items were new.
+     */
+    public int catchUp() {
+        LocalDateTime startedAt = LocalDateTime.now();
+        LocalDateTime since = (caughtUpTo == null ? startedAt : caughtUpTo).minus(catchUpOverlap);
+        int added = 0;
+        for (SchedulableItem item : orderItemRepository.findSchedulableItemsReceivedSince(OrderItemStatus.PENDING, OrderStatus.PENDING, since)) {
+            if (!dispatchingItemIds.contains(item.itemId()) && !itemsById.containsKey(item.itemId())) {
+                add(item);
+                added++;
+            }
+        }
+        caughtUpTo = startedAt;
+        if (added > 0) {
+            arrivals.incrementAndGet();
+            log.debug("Scheduling queue caught up with {} item(s) persisted by other instances.", added);
+        }
+        return added;
+    }
+}
@@ -5,18 +5,24 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import pt.feup.industrial.erpsystem.dto.MesProductionOrderDto;
-import pt.feup.industrial.erpsystem.mes.MesClientService;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import pt.feup.industrial.erpsystem.model.ClientOrder;
+import pt.feup.industrial.erpsystem.model.MesOutboxEntry;
 import pt.feup.industrial.erpsystem.model.OrderItem;
 import pt.feup.industrial.erpsystem.model.OrderItemStatus;
 import pt.feup.industrial.erpsystem.model.OrderStatus;
-import pt.feup.industrial.erpsystem.repository.ClientOrderRepository;
+import pt.feup.industrial.erpsystem.model.SchedulableItem;
+import pt.feup.industrial.erpsystem.repository.MesOutboxRepository;
 import pt.feup.industrial.erpsystem.repository.OrderItemRepository;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @Service
@@ -24,126 +30,186 @@ public class SchedulingService {
 
     private static final Logger log = LoggerFactory.getLogger(SchedulingService.class);
 
-    private final ClientOrderRepository clientOrderRepository;
-    private final MesClientService mesClientService;
     private final OrderItemRepository orderItemRepository;
+    private final MesOutboxRepository mesOutboxRepository;
+    private final SchedulingQueue schedulingQueue;
+    private final SchedulerLeadership leadership;
+    private final ProductionPlanner productionPlanner;
+    private final TransactionTemplate transaction;
 
-    private static final int DAILY_FACTORY_PIECE_CAPACITY = 24;
+    // Set when a run finds nothing more fits today; holds until the day rolls over, new items arrive or completions come in
+    private volatile CapacityExhausted capacityExhausted;
 
     @Autowired
-    public SchedulingService(ClientOrderRepository clientOrderRepository, MesClientService mesClientService, OrderItemRepository orderItemRepository) {
-        this.clientOrderRepository = clientOrderRepository;
-        this.mesClientService = mesClientService;
+    public SchedulingService(OrderItemRepository orderItemRepository, MesOutboxRepository mesOutboxRepository,
+                             SchedulingQueue schedulingQueue, SchedulerLeadership leadership,
+                             ProductionPlanner productionPlanner, PlatformTransactionManager transactionManager) {
         this.orderItemRepository = orderItemRepository;
+        this.mesOutboxRepository = mesOutboxRepository;
+        this.schedulingQueue = schedulingQueue;
+        this.leadership = leadership;
+        this.productionPlanner = productionPlanner;
+        this.transaction = new TransactionTemplate(transactionManager);
     }
 
+    /**
+     * Dispatches today's slice of the production plan. No MES round trips here: the run only writes
+     * outbox entries, which MesOutboxRelay delivers. Normally started by SchedulingDispatcher as
+     * orders arrive; the cron is a safety net for anything an event did not cover.
+     */
     @Scheduled(cron = "${erp.scheduling.mes-sync-cron:0 0 9 * * *}")
-    @Transactional // One transaction for the whole daily scheduling run
-    public void sendPendingOrdersToMes() {
+    public synchronized void sendPendingOrdersToMes() {
         log.info("Daily Scheduling Task: Starting to process orders for MES.");
 
-        List<OrderItem> sortedPendingItems = orderItemRepository.findPendingItemsSortedByDueDate(
-                OrderItemStatus.PENDING, OrderStatus.PENDING
-        );
-
-        if (sortedPendingItems.isEmpty()) {
+        if (!schedulingQueue.isReady()) {
+            log.info("Daily Scheduling Task: Scheduling queue not built yet. Skipping this run.");
+            return;
+        }
+        if (leadership.isClusterMode() && leadership.isLeader()) {
+            // Orders persisted by the other instances never reached this queue through an ingest event
+            schedulingQueue.catchUp();
+        }
+        if (schedulingQueue.size() == 0) {
             log.info("Daily Scheduling Task: No PENDING items found to schedule.");
             return;
         }
+        if (!hasCapacityLeft()) {
+            log.info("Daily Scheduling Task: Today's factory capacity is used up. Skipping this run.");
+            return;
+        }
 
-        log.info("Daily Scheduling Task: Found {} PENDING items to consider.", sortedPendingItems.size());
+        boolean wasLeader = leadership.isLeader();
+        if (!leadership.acquire()) {
+            log.info("Daily Scheduling Task: Another instance holds the scheduler lease. Skipping this run.");
+            return;
+        }
+        if (!wasLeader) {
+            // Whatever the previous leader dispatched is still in this instance's queue
+            schedulingQueue.reconcile();
+        }
 
-        int piecesScheduledThisRun = 0;
-        Set<Long> affectedClientOrderIds = new HashSet<>();
+        log.info("Daily Scheduling Task: {} PENDING items queued.", schedulingQueue.size());
 
-        for (OrderItem item : sortedPendingItems) {
-            if (piecesScheduledThisRun + item.getQuantity() > DAILY_FACTORY_PIECE_CAPACITY) {
-                log.info("Daily Scheduling Task: Daily factory capacity ({}) reached or would be exceeded. " +
-                                "Stopping further scheduling for this run. Pieces scheduled so far: {}.",
-                        DAILY_FACTORY_PIECE_CAPACITY, piecesScheduledThisRun);
-                break; // Stop processing more items for this run
-            }
+        // Taken before planning, so items arriving during the run lift the latch this run may set
+        CapacityExhausted exhausted = new CapacityExhausted(LocalDate.now(), schedulingQueue.arrivals());
+        ProductionPlan plan = productionPlanner.currentPlan();
+        log.info("Daily Scheduling Task: '{}' plan dispatches {} items today; {} items beyond the {}-day horizon; expected lateness penalty {}.",
+                productionPlanner.strategyName(), plan.firstDay().size(), plan.unplannedItems(), productionPlanner.planHorizonDays(), plan.expectedPenalty());
 
-            ClientOrder parentOrder = item.getClientOrder();
-            if (parentOrder.getStatus() != OrderStatus.PENDING) {
-                log.warn("Item ID {} belongs to Order ID {} which is no longer PENDING (Status: {}). Skipping item.",
-                        item.getId(), parentOrder.getId(), parentOrder.getStatus());
-                continue;
+        List<SchedulableItem> selectedItems = plan.firstDay();
+        if (selectedItems.isEmpty()) {
+            // The plan already counts today's dispatches, so no later run today finds anything either unless the queue changes
+            capacityExhausted = exhausted;
+            log.info("Daily Scheduling Task: Nothing fits what is left of today's capacity. Skipping this run.");
+            return;
+        }
+        List<Long> selectedItemIds = selectedItems.stream().map(SchedulableItem::itemId).toList();
+        schedulingQueue.startDispatch(selectedItemIds);
+        try {
+            QueuedForMes queued;
+            try {
+                queued = transaction.execute(status -> queueForMes(selectedItems));
+            } catch (RuntimeException e) {
+                // Rolled back, so all of them are still PENDING
+                selectedItems.forEach(schedulingQueue::add);
+                throw e;
             }
-
-            log.debug("Processing Item ID {} (Due: {}, Qty: {}) from Order ID {}",
-                    item.getId(), item.getDueDate(), item.getQuantity(), parentOrder.getId());
-
-            MesProductionOrderDto mesRequest = new MesProductionOrderDto(
-                    parentOrder.getId(), item.getId(), item.getProductType(), item.getQuantity(), item.getDueDate());
-
-            boolean sentSuccessfully = mesClientService.sendProductionOrder(mesRequest);
-
-            if (sentSuccessfully) {
-                item.setStatus(OrderItemStatus.SENT_TO_MES);
-                orderItemRepository.save(item); // Persist item status change
-                piecesScheduledThisRun += item.getQuantity();
-                affectedClientOrderIds.add(parentOrder.getId());
-                log.info("Successfully sent Item ID {} to MES (Qty: {}). Status -> SENT_TO_MES. Total pieces scheduled this run: {}",
-                        item.getId(), item.getQuantity(), piecesScheduledThisRun);
-            } else {
-                item.setStatus(OrderItemStatus.FAILED_TO_SEND);
-                orderItemRepository.save(item); // Persist item status change
-                affectedClientOrderIds.add(parentOrder.getId());
-                log.warn("Failed to send Item ID {} to MES. Status -> FAILED_TO_SEND. Order ID {} will be re-evaluated for overall status.",
-                        item.getId(), parentOrder.getId());
+            queued.deferredItems().forEach(schedulingQueue::add);
+            if (queued.capacityExhausted()) {
+                capacityExhausted = exhausted;
             }
+            log.info("Daily Scheduling Task Finished. Total pieces scheduled and queued for MES: {} ({} items deferred to a later run)",
+                    queued.pieces(), queued.deferredItems().size());
+        } finally {
+            schedulingQueue.finishDispatch(selectedItemIds);
         }
+    }
 
-        updateAffectedClientOrderStatuses(affectedClientOrderIds);
+    // False once today's capacity is used up, or too little is left for any queued item, until something changes
+    public boolean hasCapacityLeft() {
+        CapacityExhausted exhausted = capacityExhausted;
+        return exhausted == null || !exhausted.day().equals(LocalDate.now()) || exhausted.arrivals() != schedulingQueue.arrivals();
+    }
 
-        log.info("Daily Scheduling Task Finished. Total pieces scheduled and sent to MES: {}", piecesScheduledThisRun);
+    // Completed items may change what fits; the next run re-evaluates instead of trusting the latch
+    public void onItemsCompleted() {
+        capacityExhausted = null;
     }
 
-    private void updateAffectedClientOrderStatuses(Set<Long> clientOrderIds) {
-        if (clientOrderIds.isEmpty()) {
-            return;
+    /**
+     * Claims the items (row locks, skipping rows another instance holds), marks them QUEUED_FOR_MES
+     * and writes their outbox entries in one transaction. Today's pieces already dispatched, by
+     * earlier runs or by any instance in cluster mode, count against the capacity, so neither a
+     * later run nor a new leader starts the day's budget over; items beyond it stay PENDING.
+     */
+    private QueuedForMes queueForMes(List<SchedulableItem> selectedItems) {
+        if (!leadership.holdsLease()) {
+            log.warn("Daily Scheduling Task: Scheduler lease lost during the run. Nothing dispatched.");
+            return new QueuedForMes(0, selectedItems, false);
         }
-        log.debug("Re-evaluating status for ClientOrder IDs: {}", clientOrderIds);
 
-        for (Long orderId : clientOrderIds) {
-            ClientOrder order = clientOrderRepository.findById(orderId).orElse(null);
-            if (order == null) {
-                log.warn("Could not find ClientOrder with ID {} for status update.", orderId);
+        LocalDateTime now = LocalDateTime.now();
+        SchedulingCapacity capacity = productionPlanner.schedulingCapacity();
+        DayLoad todaysLoad = DayLoad.of(productionPlanner.piecesDispatchedOn(now.toLocalDate()));
+        List<Long> itemIds = selectedItems.stream().map(SchedulableItem::itemId).toList();
+        Map<Long, OrderItem> claimedItems = new HashMap<>();
+        for (OrderItem item : orderItemRepository.claimWithClientOrderByIdIn(itemIds, OrderItemStatus.PENDING)) {
+            claimedItems.put(item.getId(), item);
+        }
+        // Rows skipped because another transaction holds them are still PENDING, unlike those that moved on
+        List<Long> unclaimedItemIds = itemIds.stream().filter(itemId -> !claimedItems.containsKey(itemId)).toList();
+        Set<Long> lockedItemIds = unclaimedItemIds.isEmpty() ? Set.of()
+                : new HashSet<>(orderItemRepository.findIdsByIdInAndStatus(unclaimedItemIds, OrderItemStatus.PENDING));
+
+        List<MesOutboxEntry> outboxEntries = new ArrayList<>(claimedItems.size());
+        List<SchedulableItem> deferredItems = new ArrayList<>();
+        int piecesQueued = 0;
+        for (SchedulableItem selected : selectedItems) {
+            OrderItem item = claimedItems.get(selected.itemId());
+            if (item == null && lockedItemIds.contains(selected.itemId())) {
+                log.debug("Queued Item ID {} is locked by another transaction. Keeping it for a later run.", selected.itemId());
+                deferredItems.add(selected);
                 continue;
             }
-
-            List<OrderItem> itemsOfThisOrder = orderItemRepository.findByClientOrder_Id(orderId);
-            if (itemsOfThisOrder.isEmpty() && order.getStatus() == OrderStatus.PENDING) {
-                log.warn("Order ID {} is PENDING but has no items. Setting to an error or re-evaluating logic.", order.getId());
+            // The queue can lag behind the database; the entity has the final word
+            if (item == null) {
+                log.debug("Queued Item ID {} is no longer PENDING. Dropping it from the scheduling queue.", selected.itemId());
                 continue;
             }
 
-
-            boolean allItemsSentOrBeyond = true;
-            boolean anyItemFailedToSend = false;
-
-            for (OrderItem item : itemsOfThisOrder) {
-                if (item.getStatus() == OrderItemStatus.PENDING) {
-                    allItemsSentOrBeyond = false;
-                    break;
-                }
-                if (item.getStatus() == OrderItemStatus.FAILED_TO_SEND) {
-                    anyItemFailedToSend = true;
-                    allItemsSentOrBeyond = false;
-                    break;
-                }
+            ClientOrder parentOrder = item.getClientOrder();
+            if (parentOrder.getStatus() != OrderStatus.PENDING) {
+                log.warn("Item ID {} belongs to Order ID {} which is no longer PENDING (Status: {}). Skipping item.",
+                        item.getId(), parentOrder.getId(), parentOrder.getStatus());
+                continue;
             }
 
-            if (allItemsSentOrBeyond && order.getStatus() == OrderStatus.PENDING) {
-                order.setStatus(OrderStatus.SENT_TO_MES);
-                clientOrderRepository.save(order);
-                log.info("Updated ClientOrder ID {} status to SENT_TO_MES.", order.getId());
-            } else if (anyItemFailedToSend && order.getStatus() == OrderStatus.PENDING) {
-                log.info("ClientOrder ID {} remains PENDING due to FAILED_TO_SEND items.", order.getId());
-            } else if (!allItemsSentOrBeyond && order.getStatus() == OrderStatus.PENDING) {
-                log.info("ClientOrder ID {} remains PENDING as not all items are sent/processed yet.", order.getId());
+            if (!todaysLoad.fits(selected, capacity)) {
+                deferredItems.add(selected);
+                continue;
             }
+
+            log.debug("Processing Item ID {} (Due: {}, Qty: {}) from Order ID {}",
+                    item.getId(), item.getDueDate(), item.getQuantity(), parentOrder.getId());
+
+            todaysLoad.add(selected);
+            outboxEntries.add(MesOutboxEntry.forItem(item, now));
+            piecesQueued += item.getQuantity();
         }
+        if (!outboxEntries.isEmpty()) {
+            // One statement for all items; the claimed rows are locked, so none can have changed status
+            orderItemRepository.updateStatusByIdIn(outboxEntries.stream().map(MesOutboxEntry::getOrderItemId).toList(),
+                    OrderItemStatus.PENDING, OrderItemStatus.QUEUED_FOR_MES);
+            mesOutboxRepository.saveAll(outboxEntries);
+        }
+        // A remainder too small for any pending item is as good as no capacity
+        boolean capacityExhausted = todaysLoad.fitsNoneOf(schedulingQueue, capacity) && todaysLoad.fitsNoneOf(deferredItems, capacity);
+        return new QueuedForMes(piecesQueued, deferredItems, capacityExhausted);
+    }
+
+    private record CapacityExhausted(LocalDate day, long arrivals) {
+    }
+
+    private record QueuedForMes(int pieces, List<SchedulableItem> deferredItems, boolean capacityExhausted) {
     }
-}
\ No newline at end of file
+}
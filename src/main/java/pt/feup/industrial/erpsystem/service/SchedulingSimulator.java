@@ -0,0 +1,146 @@
+package pt.feup.industrial.erpsystem.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pt.feup.industrial.erpsystem.dto.SimulationRequestDto;
+import pt.feup.industrial.erpsystem.dto.SimulationResultDto;
+import pt.feup.industrial.erpsystem.dto.SimulationScenarioDto;
+import pt.feup.industrial.erpsystem.model.SchedulableItem;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * What-if scheduling: plans a snapshot of the scheduling queue under several configurations
+ * (strategy, capacity, horizon) in parallel on a dedicated fork-join pool. Works on the in-memory
+ * snapshot only, so it never reads or writes the database and never calls the MES.
+ */
+@Service
+public class SchedulingSimulator {
+
+    private static final Logger log = LoggerFactory.getLogger(SchedulingSimulator.class);
+
+    private final SchedulingQueue schedulingQueue;
+    private final ProductionPlanner productionPlanner;
+    private final Map<String, SchedulingStrategy> schedulingStrategies;
+    private final ForkJoinPool pool;
+
+    @Value("${erp.simulation.max-scenarios:16}")
+    private int maxScenarios;
+
+    @Value("${erp.simulation.max-horizon-days:365}")
+    private int maxHorizonDays;
+
+    @Autowired
+    public SchedulingSimulator(SchedulingQueue schedulingQueue, ProductionPlanner productionPlanner,
+                               Map<String, SchedulingStrategy> schedulingStrategies,
+                               @Value("${erp.simulation.parallelism:0}") int parallelism) {
+        this.schedulingQueue = schedulingQueue;
+        this.productionPlanner = productionPlanner;
+        this.schedulingStrategies = schedulingStrategies;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return schedulingQueue.isReady();
+    }
+
+    // Throws IllegalArgumentException for an unknown strategy or a request over the configured limits
+    public SimulationResultDto simulate(SimulationRequestDto request) throws InterruptedException {
+        if (request.getScenarios().size() > maxScenarios) {
+            throw new IllegalArgumentException("At most " + maxScenarios + " scenarios per simulation");
+        }
+        List<Scenario> scenarios = request.getScenarios().stream().map(this::resolve).toList();
+
+        LocalDate startDate = LocalDate.now();
+        List<SchedulableItem> backlog = new ArrayList<>();
+        schedulingQueue.forEach(backlog::add);
+        List<SchedulableItem> snapshot = List.copyOf(backlog);
+        log.info("Simulating {} scheduling scenario(s) against {} pending items.", scenarios.size(), snapshot.size());
+
+        List<Callable<SimulationResultDto.Scenario>> tasks = scenarios.stream()
+                .<Callable<SimulationResultDto.Scenario>>map(scenario -> () -> run(scenario, snapshot, startDate, request.isIncludeItemIds()))
+                .toList();
+        List<SimulationResultDto.Scenario> results = new ArrayList<>(tasks.size());
+        for (Future<SimulationResultDto.Scenario> result : pool.invokeAll(tasks)) {
+            try {
+                results.add(result.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Simulation failed: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+        return new SimulationResultDto(startDate, snapshot.size(), results);
+    }
+
+    private Scenario resolve(SimulationScenarioDto dto) {
+        String strategyName = dto.getStrategy() != null ? dto.getStrategy() : productionPlanner.strategyName();
+        SchedulingStrategy strategy = schedulingStrategies.get(strategyName);
+        if (strategy == null) {
+            throw new IllegalArgumentException("Unknown strategy '" + strategyName + "' in scenario '" + dto.getName()
+                    + "', expected one of " + schedulingStrategies.keySet());
+        }
+        SchedulingCapacity live = productionPlanner.schedulingCapacity();
+        SchedulingCapacity capacity = new SchedulingCapacity(
+                dto.getDailyCapacity() != null ? dto.getDailyCapacity() : live.dailyPieces(),
+                dto.getProductTypeDailyCapacity() != null ? dto.getProductTypeDailyCapacity() : live.dailyPiecesByProductType());
+        int horizonDays = dto.getHorizonDays() != null ? dto.getHorizonDays() : productionPlanner.planHorizonDays();
+        if (horizonDays > maxHorizonDays) {
+            throw new IllegalArgumentException("Scenario '" + dto.getName() + "' exceeds the maximum horizon of " + maxHorizonDays + " days");
+        }
+        return new Scenario(dto.getName(), strategyName, strategy, capacity, horizonDays);
+    }
+
+    private static SimulationResultDto.Scenario run(Scenario scenario, List<SchedulableItem> snapshot, LocalDate startDate, boolean includeItemIds) {
+        long started = System.nanoTime();
+        ProductionPlan plan = scenario.strategy().plan(snapshot, scenario.capacity(), startDate, scenario.horizonDays());
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+
+        List<SimulationResultDto.Day> days = new ArrayList<>(plan.days().size());
+        Map<Long, Long> finishedEpochDay = new HashMap<>();
+        for (int day = 0; day < plan.days().size(); day++) {
+            LocalDate date = startDate.plusDays(day);
+            int pieces = 0;
+            double penalty = 0;
+            for (SchedulableItem item : plan.days().get(day)) {
+                pieces += item.quantity();
+                penalty += ProductionPlan.latenessPenalty(item, date.toEpochDay());
+                finishedEpochDay.put(item.itemId(), date.toEpochDay());
+            }
+            List<Long> itemIds = includeItemIds ? plan.days().get(day).stream().map(SchedulableItem::itemId).toList() : null;
+            days.add(new SimulationResultDto.Day(date, plan.days().get(day).size(), pieces, penalty, itemIds));
+        }
+
+        long afterHorizon = startDate.toEpochDay() + scenario.horizonDays();
+        int lateItems = 0;
+        long totalLatenessDays = 0;
+        for (SchedulableItem item : snapshot) {
+            long lateness = finishedEpochDay.getOrDefault(item.itemId(), afterHorizon) - item.dueEpochDay();
+            if (lateness > 0) {
+                lateItems++;
+                totalLatenessDays += lateness;
+            }
+        }
+        return new SimulationResultDto.Scenario(scenario.name(), scenario.strategyName(), scenario.capacity().dailyPieces(),
+                scenario.capacity().dailyPiecesByProductType(), scenario.horizonDays(), finishedEpochDay.size(),
+                plan.unplannedItems(), lateItems, totalLatenessDays, plan.expectedPenalty(), elapsedMillis, days);
+    }
+
+    private record Scenario(String name, String strategyName, SchedulingStrategy strategy, SchedulingCapacity capacity, int horizonDays) {
+    }
+}
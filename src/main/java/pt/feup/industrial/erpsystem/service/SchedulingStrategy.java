@@ -0,0 +1,28 @@
+package pt.feup.industrial.erpsystem.service;
+
+import pt.feup.industrial.erpsystem.model.ProductTypePieces;
+import pt.feup.industrial.erpsystem.model.SchedulableItem;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Decides which pending items go to the factory on which day. Implementations are beans named
+ * after their {@code erp.scheduling.strategy} value.
+ */
+public interface SchedulingStrategy {
+
+    // Plans from a start day with its full capacity available
+    default ProductionPlan plan(Iterable<SchedulableItem> pendingItems, SchedulingCapacity capacity, LocalDate startDate, int horizonDays) {
+        return plan(pendingItems, capacity, startDate, horizonDays, List.of());
+    }
+
+    /**
+     * @param pendingItems items to plan, in {@link SchedulableItem#PRIORITY} order
+     * @param startDate    the first planned day, dispatched right away
+     * @param horizonDays  days to plan; items that do not fit are left unplanned
+     * @param startDayUsed pieces already dispatched on the start day, which only gets what is left
+     */
+    ProductionPlan plan(Iterable<SchedulableItem> pendingItems, SchedulingCapacity capacity, LocalDate startDate, int horizonDays,
+                        List<ProductTypePieces> startDayUsed);
+}
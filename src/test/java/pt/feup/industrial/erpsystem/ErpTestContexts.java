@@ -0,0 +1,28 @@
+package pt.feup.industrial.erpsystem;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.stream.Stream;
+
+/**
+ * Starts the application without a web server on the {@code test} profile
+ * (src/test/resources/application-test.properties). Several contexts may run side by side, on one
+ * database or on separate ones; the caller closes them.
+ */
+public final class ErpTestContexts {
+
+    private ErpTestContexts() {
+    }
+
+    // properties are "name=value" pairs; as command line arguments they override both property files
+    public static ConfigurableApplicationContext start(String database, String... properties) {
+        return new SpringApplicationBuilder(ErpSystemApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("test")
+                .run(Stream.concat(Stream.of("erp.test.database=" + database), Stream.of(properties))
+                        .map(property -> "--" + property)
+                        .toArray(String[]::new));
+    }
+}
@@ -0,0 +1,114 @@
+package pt.feup.industrial.erpsystem.controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import pt.feup.industrial.erpsystem.ErpTestContexts;
+import pt.feup.industrial.erpsystem.dto.CursorPageDto;
+import pt.feup.industrial.erpsystem.model.Client;
+import pt.feup.industrial.erpsystem.model.ClientOrder;
+import pt.feup.industrial.erpsystem.model.OrderItem;
+import pt.feup.industrial.erpsystem.repository.ClientOrderRepository;
+import pt.feup.industrial.erpsystem.repository.ClientRepository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Walks the keyset-paginated query endpoints page by page: every row exactly once, newest first,
+ * and no cursor after the last page even when it is full.
+ */
+class OrderQueryControllerTest {
+
+    private static final int PAGE_SIZE = 10;
+
+    private ConfigurableApplicationContext context;
+    private OrderQueryController controller;
+
+    @BeforeEach
+    void startContext() {
+        context = ErpTestContexts.start("order-query", "erp.query.max-page-size=50");
+        controller = context.getBean(OrderQueryController.class);
+    }
+
+    @AfterEach
+    void stopContext() {
+        context.close();
+    }
+
+    @Test
+    void pagesCoverEveryRowOnceNewestFirst() {
+        List<ClientOrder> first = seedOrders(500100001L, 25, 5);
+        List<ClientOrder> second = seedOrders(500100002L, 5, 7);
+        List<ClientOrder> all = Stream.concat(first.stream(), second.stream()).toList();
+
+        assertThat(walk((limit, cursor) -> controller.getAllOrders(limit, cursor), ClientOrder::getId))
+                .isEqualTo(idsNewestFirst(all.stream().map(ClientOrder::getId)));
+        assertThat(walk((limit, cursor) -> controller.getOrdersByClientNif(500100001L, limit, cursor), ClientOrder::getId))
+                .isEqualTo(idsNewestFirst(first.stream().map(ClientOrder::getId)));
+        assertThat(walk((limit, cursor) -> controller.getItemsByType(7, limit, cursor), OrderItem::getId))
+                .isEqualTo(idsNewestFirst(second.stream().flatMap(order -> order.getItems().stream()).map(OrderItem::getId)));
+        assertThat(walk((limit, cursor) -> controller.getItemsDue(LocalDate.now(), limit, cursor), OrderItem::getId))
+                .isEqualTo(idsNewestFirst(all.stream().flatMap(order -> order.getItems().stream()).map(OrderItem::getId)));
+
+        // Orders come with their items
+        ClientOrder newest = controller.getAllOrders(1, null).getBody().getContent().get(0);
+        assertThat(newest.getItems()).hasSize(1);
+    }
+
+    @Test
+    void rejectsPageSizesOutOfBoundsAndForeignCursors() {
+        assertThat(controller.getAllOrders(0, null).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(controller.getAllOrders(51, null).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(controller.getAllOrders(null, "not-a-cursor").getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(controller.getAllOrders(null, null).getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    private static <T> List<Long> walk(BiFunction<Integer, String, ResponseEntity<CursorPageDto<T>>> endpoint, ToLongFunction<T> id) {
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPageDto<T> page = endpoint.apply(PAGE_SIZE, cursor).getBody();
+            assertThat(page.getContent()).hasSizeLessThanOrEqualTo(PAGE_SIZE);
+            page.getContent().forEach(row -> ids.add(id.applyAsLong(row)));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    private static List<Long> idsNewestFirst(Stream<Long> ids) {
+        return ids.sorted(Comparator.reverseOrder()).toList();
+    }
+
+    private List<ClientOrder> seedOrders(long nif, int count, int productType) {
+        Client client = new Client();
+        client.setName("Query Client " + nif);
+        client.setNif(nif);
+        context.getBean(ClientRepository.class).save(client);
+
+        List<ClientOrder> orders = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ClientOrder order = new ClientOrder();
+            order.setClient(client);
+            order.setClientOrderId((long) i);
+            OrderItem item = new OrderItem();
+            item.setProductType(productType);
+            item.setQuantity(1);
+            item.setPenaltyPerDay(10.0);
+            item.setDueDate(LocalDate.now());
+            order.addOrderItem(item);
+            orders.add(order);
+        }
+        return context.getBean(ClientOrderRepository.class).saveAll(orders);
+    }
+}
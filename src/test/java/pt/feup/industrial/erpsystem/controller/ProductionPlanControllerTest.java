@@ -0,0 +1,96 @@
+package pt.feup.industrial.erpsystem.controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import pt.feup.industrial.erpsystem.ErpTestContexts;
+import pt.feup.industrial.erpsystem.dto.OrderPlanProjectionDto;
+import pt.feup.industrial.erpsystem.model.Client;
+import pt.feup.industrial.erpsystem.model.ClientOrder;
+import pt.feup.industrial.erpsystem.model.OrderItem;
+import pt.feup.industrial.erpsystem.model.PlannedDayLoad;
+import pt.feup.industrial.erpsystem.model.PlannedItem;
+import pt.feup.industrial.erpsystem.repository.ClientOrderRepository;
+import pt.feup.industrial.erpsystem.repository.ClientRepository;
+import pt.feup.industrial.erpsystem.service.ProductionPlanner;
+import pt.feup.industrial.erpsystem.service.SchedulingQueue;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The /api/plan views over the materialized plan: an order of two product types that fills today
+ * and spills into tomorrow.
+ */
+class ProductionPlanControllerTest {
+
+    private ConfigurableApplicationContext context;
+    private ProductionPlanController controller;
+    private ClientOrder order;
+
+    @BeforeEach
+    void startContext() {
+        context = ErpTestContexts.start("production-plan-api",
+                "erp.scheduling.daily-capacity=10",
+                "erp.scheduling.plan.refresh-interval-ms=3600000");
+        controller = context.getBean(ProductionPlanController.class);
+        order = seedOrder(item(5, 6), item(7, 4), item(7, 2));
+        context.getBean(SchedulingQueue.class).reconcile();
+        context.getBean(ProductionPlanner.class).refresh();
+    }
+
+    @AfterEach
+    void stopContext() {
+        context.close();
+    }
+
+    @Test
+    void servesTheOrderProjectionAndThePlannedDays() {
+        LocalDate today = LocalDate.now();
+
+        ResponseEntity<OrderPlanProjectionDto> projection = controller.getOrderProjection(order.getId());
+        assertThat(projection.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(projection.getBody().getItems()).hasSize(3);
+        assertThat(projection.getBody().getProjectedShipDate()).isEqualTo(today.plusDays(1));
+        assertThat(controller.getOrderProjection(-1L).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+
+        List<PlannedItem> plannedToday = controller.getPlannedItems(today);
+        assertThat(plannedToday).extracting(PlannedItem::getProductType).containsExactly(5, 7);
+        assertThat(controller.getPlannedItems(today.plusDays(30))).isEmpty();
+
+        assertThat(controller.getPlannedLoad(today, today.plusDays(1))).containsExactly(
+                new PlannedDayLoad(today, 5, 1, 6),
+                new PlannedDayLoad(today, 7, 1, 4),
+                new PlannedDayLoad(today.plusDays(1), 7, 1, 2));
+        assertThat(controller.getPlannedLoad(today.plusDays(1), today.plusDays(1))).hasSize(1);
+    }
+
+    private ClientOrder seedOrder(OrderItem... items) {
+        Client client = new Client();
+        client.setName("Plan API Client");
+        client.setNif(500200400L);
+        context.getBean(ClientRepository.class).save(client);
+
+        ClientOrder clientOrder = new ClientOrder();
+        clientOrder.setClient(client);
+        clientOrder.setClientOrderId(1L);
+        for (OrderItem item : items) {
+            clientOrder.addOrderItem(item);
+        }
+        return context.getBean(ClientOrderRepository.class).save(clientOrder);
+    }
+
+    private static OrderItem item(int productType, int quantity) {
+        OrderItem item = new OrderItem();
+        item.setProductType(productType);
+        item.setQuantity(quantity);
+        item.setPenaltyPerDay(5.0);
+        item.setDueDate(LocalDate.now().plusDays(2));
+        return item;
+    }
+}
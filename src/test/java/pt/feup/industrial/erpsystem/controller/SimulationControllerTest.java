@@ -0,0 +1,69 @@
+package pt.feup.industrial.erpsystem.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import pt.feup.industrial.erpsystem.dto.SimulationResultDto;
+import pt.feup.industrial.erpsystem.service.SchedulingSimulator;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Request validation of POST /api/simulations: scenarios with capacities that are not positive
+ * are refused before any planning.
+ */
+class SimulationControllerTest {
+
+    private final SchedulingSimulator schedulingSimulator = mock(SchedulingSimulator.class);
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        when(schedulingSimulator.isReady()).thenReturn(true);
+        when(schedulingSimulator.simulate(any())).thenReturn(new SimulationResultDto(LocalDate.now(), 0, List.of()));
+        mockMvc = MockMvcBuilders.standaloneSetup(new SimulationController(schedulingSimulator)).build();
+    }
+
+    @Test
+    void acceptsAValidScenario() throws Exception {
+        simulate("{\"scenarios\": [{\"name\": \"more\", \"dailyCapacity\": 30, \"productTypeDailyCapacity\": {\"5\": 12}}]}")
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void refusesCapacitiesThatAreNotPositive() throws Exception {
+        simulate("{\"scenarios\": [{\"name\": \"none\", \"dailyCapacity\": 0}]}")
+                .andExpect(status().isBadRequest());
+        simulate("{\"scenarios\": [{\"name\": \"no type 5\", \"productTypeDailyCapacity\": {\"5\": 0}}]}")
+                .andExpect(status().isBadRequest());
+        simulate("{\"scenarios\": [{\"name\": \"negative\", \"productTypeDailyCapacity\": {\"5\": 12, \"7\": -1}}]}")
+                .andExpect(status().isBadRequest());
+        simulate("{\"scenarios\": [{\"name\": \"unset\", \"productTypeDailyCapacity\": {\"5\": null}}]}")
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void refusesWhatTheSimulatorRejectsAndWaitsForTheQueue() throws Exception {
+        when(schedulingSimulator.simulate(any())).thenThrow(new IllegalArgumentException("Unknown strategy"));
+        simulate("{\"scenarios\": [{\"name\": \"bad\", \"strategy\": \"fastest\"}]}")
+                .andExpect(status().isBadRequest());
+
+        when(schedulingSimulator.isReady()).thenReturn(false);
+        simulate("{\"scenarios\": [{\"name\": \"live\"}]}")
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    private ResultActions simulate(String body) throws Exception {
+        return mockMvc.perform(post("/api/simulations").contentType(MediaType.APPLICATION_JSON).content(body));
+    }
+}
@@ -0,0 +1,126 @@
+package pt.feup.industrial.erpsystem.journal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import pt.feup.industrial.erpsystem.dto.ClientOrderRequestDto;
+import pt.feup.industrial.erpsystem.service.OrderIngestBatcher;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * The ingest lanes acknowledge journal entries in whatever order their batches commit, so the
+ * checkpoint may only move up to the lowest entry that is still unacknowledged.
+ */
+class OrderJournalDrainerTest {
+
+    @TempDir
+    Path directory;
+
+    private final BlockingQueue<Submission> submissions = new LinkedBlockingQueue<>();
+    private final List<OrderJournalDrainer> drainers = new ArrayList<>();
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        for (OrderJournalDrainer drainer : drainers) {
+            drainer.stop();
+        }
+    }
+
+    @Test
+    void outOfOrderAcknowledgementsDoNotMoveTheCheckpointPastAnUnacknowledgedEntry() throws Exception {
+        OrderJournal journal = open();
+        for (long orderId = 1; orderId <= 4; orderId++) {
+            journal.append(List.of(OrderJournalTest.order(orderId)));
+        }
+        start(journal);
+        List<Submission> received = take(4);
+
+        received.get(2).onProcessed().run();
+        received.get(0).onProcessed().run();
+        received.get(3).onProcessed().run();
+        drainers.get(0).checkpointPeriodically();
+
+        // Entry 2 is still in its lane, so 3 and 4 must be replayed should the process stop now
+        assertThat(journal.checkpointedSequence()).isEqualTo(1);
+
+        received.get(1).onProcessed().run();
+        drainers.get(0).checkpointPeriodically();
+
+        assertThat(journal.checkpointedSequence()).isEqualTo(4);
+    }
+
+    @Test
+    void aRestartReplaysOnlyTheUnacknowledgedEntries() throws Exception {
+        OrderJournal journal = open();
+        for (long orderId = 1; orderId <= 4; orderId++) {
+            journal.append(List.of(OrderJournalTest.order(orderId)));
+        }
+        start(journal);
+        List<Submission> received = take(4);
+        received.get(0).onProcessed().run();
+        received.get(1).onProcessed().run();
+        received.get(3).onProcessed().run();
+        drainers.get(0).stop();
+        drainers.clear();
+
+        start(open());
+
+        assertThat(orderIds(take(2))).containsExactly(3L, 4L);
+        assertThat(submissions.poll(300, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    private OrderJournal open() throws IOException {
+        OrderJournal journal = new OrderJournal(new ObjectMapper(), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "directory", directory);
+        ReflectionTestUtils.setField(journal, "segmentSize", 1024);
+        ReflectionTestUtils.setField(journal, "maxSegments", 64);
+        journal.open();
+        return journal;
+    }
+
+    private void start(OrderJournal journal) throws InterruptedException {
+        OrderIngestBatcher batcher = mock(OrderIngestBatcher.class);
+        doAnswer(invocation -> submissions.add(new Submission(invocation.getArgument(0), invocation.getArgument(1))))
+                .when(batcher).submit(anyList(), any(Runnable.class));
+        OrderJournalDrainer drainer = new OrderJournalDrainer(journal, batcher);
+        drainers.add(drainer);
+        drainer.start();
+    }
+
+    private List<Submission> take(int count) throws InterruptedException {
+        List<Submission> taken = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Submission submission = submissions.poll(5, TimeUnit.SECONDS);
+            assertThat(submission).as("submission %d of %d", i + 1, count).isNotNull();
+            taken.add(submission);
+        }
+        return taken;
+    }
+
+    private static List<Long> orderIds(List<Submission> submissions) {
+        return submissions.stream()
+                .flatMap(submission -> submission.orders().stream())
+                .map(ClientOrderRequestDto::getOrderID)
+                .toList();
+    }
+
+    private record Submission(List<ClientOrderRequestDto> orders, Runnable onProcessed) {
+    }
+}
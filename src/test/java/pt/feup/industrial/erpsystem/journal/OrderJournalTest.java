@@ -0,0 +1,202 @@
+package pt.feup.industrial.erpsystem.journal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import pt.feup.industrial.erpsystem.dto.ClientOrderRequestDto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Reopens journals on the same directory to stand in for a restart: recovery must stop at the first
+ * record a crash left torn or corrupt, and only entries above the checkpoint are replayed.
+ */
+class OrderJournalTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void entriesAboveTheCheckpointAreReplayedAfterARestart() throws IOException {
+        OrderJournal journal = open(64);
+        for (long orderId = 1; orderId <= 5; orderId++) {
+            assertThat(journal.append(List.of(order(orderId)))).isEqualTo(orderId);
+        }
+        journal.checkpoint(3);
+
+        OrderJournal reopened = open(64);
+
+        assertThat(reopened.checkpointedSequence()).isEqualTo(3);
+        assertThat(reopened.lastAppendedSequence()).isEqualTo(5);
+        assertThat(replayedOrderIds(reopened)).containsExactly(4L, 5L);
+        // New entries continue the sequence and follow the replayed ones
+        assertThat(reopened.append(List.of(order(6)))).isEqualTo(6);
+        assertThat(replayedOrderIds(reopened)).containsExactly(4L, 5L, 6L);
+    }
+
+    @Test
+    void recoveryStopsAtATornRecord() throws IOException {
+        OrderJournal journal = open(64);
+        for (long orderId = 1; orderId <= 3; orderId++) {
+            journal.append(List.of(order(orderId)));
+        }
+        Path segment = segmentFiles().get(0);
+        List<Integer> offsets = recordOffsets(segment);
+
+        // A crash after the length was written but before the payload reached the disk
+        overwrite(segment, offsets.get(2) + JournalSegment.HEADER_SIZE, new byte[8]);
+
+        OrderJournal reopened = open(64);
+
+        assertThat(reopened.lastAppendedSequence()).isEqualTo(2);
+        assertThat(replayedOrderIds(reopened)).containsExactly(1L, 2L);
+        assertThat(reopened.append(List.of(order(4)))).isEqualTo(3);
+        assertThat(replayedOrderIds(reopened)).containsExactly(1L, 2L, 4L);
+    }
+
+    @Test
+    void recoveryStopsAtTheFirstRecordFailingItsChecksum() throws IOException {
+        OrderJournal journal = open(64);
+        for (long orderId = 1; orderId <= 3; orderId++) {
+            journal.append(List.of(order(orderId)));
+        }
+        Path segment = segmentFiles().get(0);
+        int second = recordOffsets(segment).get(1);
+        byte[] flipped = read(segment, second + JournalSegment.HEADER_SIZE, 1);
+        flipped[0] ^= 0x01;
+        overwrite(segment, second + JournalSegment.HEADER_SIZE, flipped);
+
+        OrderJournal reopened = open(64);
+
+        // The intact third record behind the corrupt one is not trusted either
+        assertThat(reopened.lastAppendedSequence()).isEqualTo(1);
+        assertThat(replayedOrderIds(reopened)).containsExactly(1L);
+    }
+
+    @Test
+    void segmentsEntirelyBehindTheCheckpointAreDeleted() throws IOException {
+        OrderJournal journal = open(64);
+        long last = 0;
+        while (segmentFiles().size() < 4) {
+            last = journal.append(List.of(order(last + 1)));
+        }
+        List<Path> before = segmentFiles();
+        long secondSegmentStart = firstSequence(before.get(1));
+        long checkpoint = secondSegmentStart + 1;
+
+        journal.checkpoint(checkpoint);
+
+        // The first segment is fully checkpointed; the second still holds entries past the checkpoint
+        assertThat(segmentFiles()).isEqualTo(before.subList(1, before.size()));
+        assertThat(replayedOrderIds(journal)).first().isEqualTo(checkpoint + 1);
+        assertThat(replayedOrderIds(journal)).last().isEqualTo(last);
+
+        journal.checkpoint(last);
+
+        // Only the active segment, which is never deleted while written to, is left
+        assertThat(segmentFiles()).containsExactly(before.get(before.size() - 1));
+        assertThat(open(64).lastAppendedSequence()).isEqualTo(last);
+    }
+
+    @Test
+    void aFullJournalRejectsAppendsUntilTheCheckpointFreesSegments() throws IOException {
+        OrderJournal journal = open(2);
+        long last = 0;
+        IOException full = null;
+        while (full == null) {
+            try {
+                last = journal.append(List.of(order(last + 1)));
+            } catch (IOException e) {
+                full = e;
+            }
+        }
+        assertThat(full).hasMessageContaining("full");
+        assertThatThrownBy(() -> journal.append(List.of(order(0)))).isInstanceOf(IOException.class);
+
+        journal.checkpoint(last);
+
+        assertThat(journal.append(List.of(order(last + 1)))).isEqualTo(last + 1);
+    }
+
+    private OrderJournal open(int maxSegments) throws IOException {
+        OrderJournal journal = new OrderJournal(new ObjectMapper(), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "directory", directory);
+        ReflectionTestUtils.setField(journal, "segmentSize", SEGMENT_SIZE);
+        ReflectionTestUtils.setField(journal, "maxSegments", maxSegments);
+        journal.open();
+        return journal;
+    }
+
+    static ClientOrderRequestDto order(long orderId) {
+        ClientOrderRequestDto order = new ClientOrderRequestDto();
+        order.setName("Client " + orderId);
+        order.setNif(123456789L);
+        order.setOrderID(orderId);
+        order.setOrders(List.of());
+        return order;
+    }
+
+    private static List<Long> replayedOrderIds(OrderJournal journal) throws IOException {
+        List<Long> orderIds = new ArrayList<>();
+        OrderJournal.Reader reader = journal.readerAfter(journal.checkpointedSequence());
+        OrderJournal.Entry entry;
+        while ((entry = reader.next()) != null) {
+            for (ClientOrderRequestDto order : journal.decode(entry.payload())) {
+                orderIds.add(order.getOrderID());
+            }
+        }
+        return orderIds;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(JournalSegment::isSegmentFile).sorted().toList();
+        }
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring("orders-".length(), name.length() - ".journal".length()));
+    }
+
+    private static List<Integer> recordOffsets(Path segment) throws IOException {
+        List<Integer> offsets = new ArrayList<>();
+        int position = 0;
+        int length;
+        while ((length = ByteBuffer.wrap(read(segment, position, Integer.BYTES)).getInt()) > 0) {
+            offsets.add(position);
+            position += JournalSegment.HEADER_SIZE + length;
+        }
+        return offsets;
+    }
+
+    private static byte[] read(Path file, int position, int length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer content = ByteBuffer.allocate(length);
+            channel.read(content, position);
+            return content.array();
+        }
+    }
+
+    private static void overwrite(Path file, int position, byte[] content) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(content), position);
+        }
+    }
+}
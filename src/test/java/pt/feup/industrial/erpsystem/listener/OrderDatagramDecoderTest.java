@@ -0,0 +1,128 @@
+package pt.feup.industrial.erpsystem.listener;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.Test;
+import pt.feup.industrial.erpsystem.dto.ClientOrderRequestDto;
+import pt.feup.industrial.erpsystem.dto.OrderItemDto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderDatagramDecoderTest {
+
+    private static final String ORDER = """
+            {"name": "Alpha Client", "nif": 123456, "orderID": 1, "orders": [{"type": 5, "quantity": 3, "dDate": 10, "penalty": 1.5}]}""";
+
+    private static final String BATCH = """
+            [
+              {"name": "Alpha Client", "nif": 123456, "orderID": 1, "orders": [{"type": 5, "quantity": 3, "dDate": 10, "penalty": 1.5}]},
+              {"name": "Beta Client", "nif": 654321, "orderID": 2, "orders": [{"type": 7, "quantity": 1, "dDate": 9, "penalty": 2.0}]}
+            ]""";
+
+    private final OrderDatagramDecoder decoder = new OrderDatagramDecoder(new ObjectMapper(), true);
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+
+    @Test
+    void decodesASingleJsonOrder() throws IOException {
+        List<ClientOrderRequestDto> orders = decoder.decode(json(ORDER));
+
+        assertEquals(List.of(order("Alpha Client", 123456L, 1L, 5, 3, 10, 1.5)), orders);
+    }
+
+    @Test
+    void decodesAJsonBatchEnvelope() throws IOException {
+        List<ClientOrderRequestDto> orders = decoder.decode(json(BATCH));
+
+        assertEquals(List.of(1L, 2L), orders.stream().map(ClientOrderRequestDto::getOrderID).toList());
+        assertEquals(9, orders.get(1).getOrders().get(0).getDDate());
+    }
+
+    @Test
+    void payloadsStartingWithTheSmileHeaderAreReadAsSmile() throws IOException {
+        ClientOrderRequestDto alpha = order("Alpha Client", 123456L, 1L, 5, 3, 10, 1.5);
+        ClientOrderRequestDto beta = order("Beta Client", 654321L, 2L, 7, 1, 9, 2.0);
+        byte[] single = smileMapper.writeValueAsBytes(alpha);
+        byte[] batch = smileMapper.writeValueAsBytes(List.of(alpha, beta));
+        assertEquals(':', single[0]);
+
+        assertEquals(List.of(alpha), decoder.decode(single));
+        assertEquals(List.of(alpha, beta), decoder.decode(batch));
+        assertEquals("<" + batch.length + " bytes of Smile>", decoder.describe(ByteBuffer.wrap(batch)));
+    }
+
+    @Test
+    void smilePayloadsAreRejectedWhenSmileIsDisabled() throws IOException {
+        OrderDatagramDecoder jsonOnly = new OrderDatagramDecoder(new ObjectMapper(), false);
+        byte[] smile = smileMapper.writeValueAsBytes(order("Alpha Client", 123456L, 1L, 5, 3, 10, 1.5));
+
+        assertThrows(IOException.class, () -> jsonOnly.decode(smile));
+        assertEquals(1, jsonOnly.decode(json(ORDER)).size());
+    }
+
+    @Test
+    void decodesOnlyTheRemainingBytesOfHeapAndDirectBuffers() throws IOException {
+        byte[] payload = json(BATCH);
+        ByteBuffer heap = ByteBuffer.allocate(payload.length + 8);
+        heap.position(4);
+        heap.put(payload).flip().position(4);
+        ByteBuffer direct = ByteBuffer.allocateDirect(payload.length);
+        direct.put(payload).flip();
+
+        assertEquals(2, decoder.decode(heap.slice()).size());
+        assertEquals(2, decoder.decode(heap).size());
+        assertEquals(2, decoder.decode(direct).size());
+        // Left as they were, for the log line describing the datagram
+        assertEquals(4, heap.position());
+        assertEquals(0, direct.position());
+        assertEquals(BATCH, decoder.describe(direct));
+    }
+
+    @Test
+    void malformedPayloadsFailToDecode() {
+        byte[] truncatedJson = Arrays.copyOf(json(ORDER), ORDER.length() / 2);
+        assertThrows(IOException.class, () -> decoder.decode(truncatedJson));
+        assertThrows(IOException.class, () -> decoder.decode(json("not json")));
+        assertThrows(IOException.class, () -> decoder.decode(json("null")));
+        assertThrows(IOException.class, () -> decoder.decode(new byte[0]));
+        // A batch envelope holds order objects only
+        assertThrows(IOException.class, () -> decoder.decode(json("[" + ORDER + ", 42]")));
+        assertThrows(IOException.class, () -> decoder.decode(json("[" + ORDER)));
+    }
+
+    @Test
+    void malformedSmilePayloadsFailToDecode() throws IOException {
+        byte[] smile = smileMapper.writeValueAsBytes(List.of(order("Alpha Client", 123456L, 1L, 5, 3, 10, 1.5)));
+        byte[] truncated = Arrays.copyOf(smile, smile.length / 2);
+        byte[] headerOnly = Arrays.copyOf(smile, 4);
+        byte[] badHeader = smile.clone();
+        badHeader[1] = 'x';
+
+        assertThrows(IOException.class, () -> decoder.decode(truncated));
+        assertThrows(IOException.class, () -> decoder.decode(headerOnly));
+        assertThrows(IOException.class, () -> decoder.decode(badHeader));
+    }
+
+    private static byte[] json(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ClientOrderRequestDto order(String name, Long nif, Long orderId, int type, int quantity, int dDate, double penalty) {
+        OrderItemDto item = new OrderItemDto();
+        item.setType(type);
+        item.setQuantity(quantity);
+        item.setDDate(dDate);
+        item.setPenalty(penalty);
+        ClientOrderRequestDto order = new ClientOrderRequestDto();
+        order.setName(name);
+        order.setNif(nif);
+        order.setOrderID(orderId);
+        order.setOrders(List.of(item));
+        return order;
+    }
+}
@@ -0,0 +1,133 @@
+package pt.feup.industrial.erpsystem.listener;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import pt.feup.industrial.erpsystem.dto.ClientOrderRequestDto;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderFragmentReassemblerTest {
+
+    private static final String BATCH = """
+            [
+              {"name": "Alpha Client", "nif": 123456, "orderID": 1, "orders": [{"type": 5, "quantity": 3, "dDate": 10, "penalty": 1.0}]},
+              {"name": "Beta Client", "nif": 654321, "orderID": 2, "orders": [{"type": 7, "quantity": 1, "dDate": 9, "penalty": 2.0}]}
+            ]""";
+
+    private final SocketAddress sender = new InetSocketAddress("127.0.0.1", 40000);
+    private OrderFragmentReassembler reassembler;
+    private OrderDatagramDecoder decoder;
+
+    @BeforeEach
+    void setUp() {
+        reassembler = new OrderFragmentReassembler(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(reassembler, "reassemblyTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(reassembler, "maxMessageSize", 1 << 20);
+        ReflectionTestUtils.setField(reassembler, "maxPendingMessages", 16);
+        decoder = new OrderDatagramDecoder(new ObjectMapper(), true);
+    }
+
+    @Test
+    void reassemblesOutOfOrderFragmentsIntoABatch() throws Exception {
+        List<ByteBuffer> fragments = fragment(7L, BATCH.getBytes(StandardCharsets.UTF_8), 3);
+
+        assertNull(reassembler.accept(sender, fragments.get(2)));
+        assertNull(reassembler.accept(sender, fragments.get(0)));
+        assertNull(reassembler.accept(sender, fragments.get(0).rewind()));
+        byte[] message = reassembler.accept(sender, fragments.get(1));
+
+        assertNotNull(message);
+        assertEquals(0, reassembler.pendingMessages());
+        List<ClientOrderRequestDto> orders = decoder.decode(message);
+        assertEquals(List.of(1L, 2L), orders.stream().map(ClientOrderRequestDto::getOrderID).toList());
+    }
+
+    @Test
+    void dropsIncompleteMessagesAfterTheTimeout() throws Exception {
+        List<ByteBuffer> fragments = fragment(8L, BATCH.getBytes(StandardCharsets.UTF_8), 2);
+        assertNull(reassembler.accept(sender, fragments.get(0)));
+
+        ReflectionTestUtils.setField(reassembler, "reassemblyTimeoutMs", 0L);
+        Thread.sleep(1);
+        reassembler.evictExpired();
+
+        assertEquals(0, reassembler.pendingMessages());
+        assertNull(reassembler.accept(sender, fragments.get(1)));
+    }
+
+    @Test
+    void neverHoldsMoreThanTheMaximumOfIncompleteMessages() throws Exception {
+        ByteBuffer first = fragment(9L, BATCH.getBytes(StandardCharsets.UTF_8), 2).get(0);
+        int threads = 8;
+        int sendersPerThread = 8;
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            // Each round 64 senders start a message at once against a limit of 16, then the messages expire
+            for (int round = 0; round < 100; round++) {
+                CyclicBarrier start = new CyclicBarrier(threads);
+                AtomicInteger refused = new AtomicInteger();
+                List<Future<?>> senders = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    int firstPort = 40001 + t * sendersPerThread;
+                    senders.add(executor.submit(() -> {
+                        start.await();
+                        for (int port = firstPort; port < firstPort + sendersPerThread; port++) {
+                            try {
+                                reassembler.accept(new InetSocketAddress("127.0.0.1", port), first.duplicate());
+                            } catch (IOException e) {
+                                refused.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> sending : senders) {
+                    sending.get();
+                }
+
+                assertEquals(16, reassembler.pendingMessages());
+                assertEquals(threads * sendersPerThread - 16, refused.get());
+
+                ReflectionTestUtils.setField(reassembler, "reassemblyTimeoutMs", -1L);
+                reassembler.evictExpired();
+                assertEquals(0, reassembler.pendingMessages());
+            }
+        }
+
+        // The evicted messages gave their slots back
+        ReflectionTestUtils.setField(reassembler, "reassemblyTimeoutMs", 5000L);
+        assertNull(reassembler.accept(sender, first.duplicate()));
+        assertEquals(1, reassembler.pendingMessages());
+    }
+
+    private static List<ByteBuffer> fragment(long messageId, byte[] payload, int count) {
+        int sliceSize = (payload.length + count - 1) / count;
+        return java.util.stream.IntStream.range(0, count).mapToObj(index -> {
+            byte[] slice = Arrays.copyOfRange(payload, index * sliceSize, Math.min(payload.length, (index + 1) * sliceSize));
+            return ByteBuffer.allocate(OrderFragmentReassembler.HEADER_SIZE + slice.length)
+                    .put(OrderFragmentReassembler.FRAGMENT_MAGIC)
+                    .put(OrderFragmentReassembler.FRAGMENT_VERSION)
+                    .putLong(messageId)
+                    .putShort((short) index)
+                    .putShort((short) count)
+                    .put(slice)
+                    .flip();
+        }).toList();
+    }
+}
@@ -0,0 +1,225 @@
+package pt.feup.industrial.erpsystem.listener;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import pt.feup.industrial.erpsystem.ErpTestContexts;
+import pt.feup.industrial.erpsystem.dto.OrderItemCompletionDto;
+import pt.feup.industrial.erpsystem.model.Client;
+import pt.feup.industrial.erpsystem.model.ClientOrder;
+import pt.feup.industrial.erpsystem.model.OrderItem;
+import pt.feup.industrial.erpsystem.model.OrderItemStatus;
+import pt.feup.industrial.erpsystem.model.OrderStatus;
+import pt.feup.industrial.erpsystem.repository.ClientOrderRepository;
+import pt.feup.industrial.erpsystem.repository.ClientRepository;
+import pt.feup.industrial.erpsystem.repository.OrderItemRepository;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Loopback MES client for the completion stream: pipelines frames over one connection and checks
+ * that they are acknowledged in order, applied in far fewer transactions than frames, and that
+ * repeated events are coalesced; and that it sustains a far higher event rate than one PUT per
+ * completion against the REST endpoint.
+ */
+class TcpCompletionListenerTest {
+
+    private static final int ITEMS_PER_ORDER = 10;
+    private static final int EVENTS_PER_FRAME = 20;
+
+    private ConfigurableApplicationContext context;
+    private Client client;
+
+    @BeforeEach
+    void startContext() {
+        // A wide window, so batching does not depend on how fast this machine is; a web server for the REST comparison
+        context = ErpTestContexts.start("tcp-completions", "erp.completions.stream.batch-window-ms=200",
+                "spring.main.web-application-type=servlet", "server.port=0");
+        client = new Client();
+        client.setName("Streaming Client");
+        client.setNif(500300400L);
+        context.getBean(ClientRepository.class).save(client);
+    }
+
+    @AfterEach
+    void stopContext() {
+        context.close();
+    }
+
+    @Test
+    void pipelinedFramesAreAppliedInBatchesAndAcknowledged() throws Exception {
+        List<ClientOrder> orders = seedSentOrders(200);
+
+        // Each frame reports its items twice, as a MES repeating a notification would
+        List<Long> itemIds = orders.stream().flatMap(order -> order.getItems().stream()).map(OrderItem::getId).toList();
+        List<byte[]> frames = new ArrayList<>();
+        for (int from = 0; from < itemIds.size(); from += EVENTS_PER_FRAME) {
+            List<Long> frameItemIds = itemIds.subList(from, Math.min(from + EVENTS_PER_FRAME, itemIds.size()));
+            frames.add(frame(Stream.concat(frameItemIds.stream(), frameItemIds.stream()).toList()));
+        }
+        // A frame that cannot be read is skipped but still acknowledged
+        frames.add(frame("{not json".getBytes(StandardCharsets.UTF_8)));
+
+        stream(frames);
+
+        ClientOrderRepository clientOrders = context.getBean(ClientOrderRepository.class);
+        for (ClientOrder order : orders) {
+            ClientOrder completed = clientOrders.findById(order.getId()).orElseThrow();
+            assertThat(completed.getStatus()).isEqualTo(OrderStatus.COMPLETED);
+            assertThat(completed.getItemsCompleted()).isEqualTo(ITEMS_PER_ORDER);
+        }
+        MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+        assertThat(meterRegistry.get("erp.completions.tcp.events").counter().count()).isEqualTo(2.0 * itemIds.size());
+        assertThat(meterRegistry.get("erp.completions.tcp.rejected-frames").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("erp.completions.stream.coalesced").counter().count()).isEqualTo(itemIds.size());
+        DistributionSummary batches = meterRegistry.get("erp.completions.stream.batch-size").summary();
+        assertThat(batches.totalAmount()).isEqualTo(itemIds.size());
+        assertThat(batches.count()).isLessThan(frames.size() / 2);
+    }
+
+    @Test
+    void streamingSustainsAFarHigherEventRateThanRestPuts() throws Exception {
+        List<Long> restItemIds = itemIds(seedSentOrders(50, 0));
+        List<Long> streamItemIds = itemIds(seedSentOrders(400, 50));
+        HttpClient http = HttpClient.newHttpClient();
+        String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/erp/order-items/";
+
+        // Warm both paths up before timing them
+        for (Long itemId : restItemIds.subList(0, 50)) {
+            put(http, baseUrl, itemId);
+        }
+        stream(List.of(frame(streamItemIds.subList(0, 100))));
+
+        long restStart = System.nanoTime();
+        for (Long itemId : restItemIds.subList(50, restItemIds.size())) {
+            put(http, baseUrl, itemId);
+        }
+        double restRate = eventsPerSecond(restItemIds.size() - 50, System.nanoTime() - restStart);
+
+        List<byte[]> frames = new ArrayList<>();
+        for (int from = 100; from < streamItemIds.size(); from += EVENTS_PER_FRAME) {
+            frames.add(frame(streamItemIds.subList(from, Math.min(from + EVENTS_PER_FRAME, streamItemIds.size()))));
+        }
+        long streamStart = System.nanoTime();
+        stream(frames);
+        double streamRate = eventsPerSecond(streamItemIds.size() - 100, System.nanoTime() - streamStart);
+
+        assertThat(streamRate).as("events/s streamed vs %.0f events/s over REST", restRate).isGreaterThan(5 * restRate);
+        OrderItemRepository orderItems = context.getBean(OrderItemRepository.class);
+        assertThat(orderItems.findAllById(streamItemIds)).extracting(OrderItem::getStatus).containsOnly(OrderItemStatus.COMPLETED);
+        assertThat(orderItems.findAllById(restItemIds)).extracting(OrderItem::getStatus).containsOnly(OrderItemStatus.COMPLETED);
+    }
+
+    // Sends the frames pipelined over one connection and waits until all of them are acknowledged, in order
+    private void stream(List<byte[]> frames) throws Exception {
+        int port = context.getBean(TcpCompletionListener.class).port();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(30));
+            DataInputStream acks = new DataInputStream(socket.getInputStream());
+            CompletableFuture<Void> sender = CompletableFuture.runAsync(() -> send(socket, frames));
+            long acknowledged = 0;
+            while (acknowledged < frames.size()) {
+                long ack = acks.readLong();
+                assertThat(ack).isGreaterThan(acknowledged);
+                acknowledged = ack;
+            }
+            sender.join();
+        }
+    }
+
+    private void put(HttpClient http, String baseUrl, Long itemId) throws Exception {
+        byte[] body = context.getBean(ObjectMapper.class).writeValueAsBytes(new OrderItemCompletionDto(itemId, LocalDateTime.now(), 1));
+        HttpResponse<Void> response = http.send(HttpRequest.newBuilder(URI.create(baseUrl + itemId + "/complete"))
+                        .header("Content-Type", "application/json")
+                        .PUT(HttpRequest.BodyPublishers.ofByteArray(body))
+                        .build(),
+                HttpResponse.BodyHandlers.discarding());
+        assertThat(response.statusCode()).isEqualTo(200);
+    }
+
+    private static double eventsPerSecond(int events, long nanos) {
+        return events * 1e9 / nanos;
+    }
+
+    private static List<Long> itemIds(List<ClientOrder> orders) {
+        return orders.stream().flatMap(order -> order.getItems().stream()).map(OrderItem::getId).toList();
+    }
+
+    private List<ClientOrder> seedSentOrders(int count) {
+        return seedSentOrders(count, 0);
+    }
+
+    private List<ClientOrder> seedSentOrders(int count, int firstClientOrderId) {
+        List<ClientOrder> orders = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ClientOrder order = new ClientOrder();
+            order.setClient(client);
+            order.setClientOrderId((long) firstClientOrderId + i);
+            order.setStatus(OrderStatus.SENT_TO_MES);
+            for (int j = 0; j < ITEMS_PER_ORDER; j++) {
+                OrderItem item = new OrderItem();
+                item.setProductType(5);
+                item.setQuantity(1);
+                item.setPenaltyPerDay(10.0);
+                item.setDueDate(LocalDate.now());
+                item.setStatus(OrderItemStatus.SENT_TO_MES);
+                order.addOrderItem(item);
+            }
+            orders.add(order);
+        }
+        return context.getBean(ClientOrderRepository.class).saveAll(orders);
+    }
+
+    private byte[] frame(List<Long> itemIds) throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        List<OrderItemCompletionDto> completions = itemIds.stream()
+                .map(itemId -> new OrderItemCompletionDto(itemId, now, 1))
+                .toList();
+        return frame(context.getBean(ObjectMapper.class).writeValueAsBytes(completions));
+    }
+
+    private static byte[] frame(byte[] payload) {
+        byte[] frame = new byte[4 + payload.length];
+        frame[0] = (byte) (payload.length >>> 24);
+        frame[1] = (byte) (payload.length >>> 16);
+        frame[2] = (byte) (payload.length >>> 8);
+        frame[3] = (byte) payload.length;
+        System.arraycopy(payload, 0, frame, 4, payload.length);
+        return frame;
+    }
+
+    private static void send(Socket socket, List<byte[]> frames) {
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            for (byte[] frame : frames) {
+                out.write(frame);
+            }
+            out.flush();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
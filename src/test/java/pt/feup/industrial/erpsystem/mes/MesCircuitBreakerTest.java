@@ -0,0 +1,70 @@
+package pt.feup.industrial.erpsystem.mes;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Calls let through while CLOSED can still be running when the breaker opens and then goes
+ * HALF_OPEN. Their outcomes must not be taken for the probes'.
+ */
+class MesCircuitBreakerTest {
+
+    private MesCircuitBreaker circuitBreaker;
+    private MesCircuitBreaker.Permit slowCall;
+
+    @BeforeEach
+    void openWithACallStillInFlight() throws InterruptedException {
+        circuitBreaker = new MesCircuitBreaker(50, 10, 2, Duration.ofMillis(100), 2, new SimpleMeterRegistry());
+        slowCall = circuitBreaker.tryAcquire();
+        assertNotNull(slowCall);
+        circuitBreaker.onFailure(circuitBreaker.tryAcquire());
+        circuitBreaker.onFailure(circuitBreaker.tryAcquire());
+        assertEquals(MesCircuitBreaker.State.OPEN, circuitBreaker.state());
+        Thread.sleep(150);
+    }
+
+    @Test
+    void aCallFromBeforeTheBreakerOpenedIsNotCountedAsAProbeSuccess() {
+        MesCircuitBreaker.Permit probe = circuitBreaker.tryAcquire();
+        assertNotNull(probe);
+
+        circuitBreaker.onSuccess(slowCall);
+        circuitBreaker.onSuccess(probe);
+
+        // One of the two probes answered: the breaker stays half-open with one probe left
+        assertEquals(MesCircuitBreaker.State.HALF_OPEN, circuitBreaker.state());
+        assertEquals(1, circuitBreaker.permittedCalls());
+
+        circuitBreaker.onSuccess(circuitBreaker.tryAcquire());
+        assertEquals(MesCircuitBreaker.State.CLOSED, circuitBreaker.state());
+    }
+
+    @Test
+    void releasingACallFromBeforeTheBreakerOpenedFreesNoProbeSlot() {
+        MesCircuitBreaker.Permit firstProbe = circuitBreaker.tryAcquire();
+        MesCircuitBreaker.Permit secondProbe = circuitBreaker.tryAcquire();
+        assertNotNull(firstProbe);
+        assertNotNull(secondProbe);
+
+        circuitBreaker.release(slowCall);
+
+        assertEquals(0, circuitBreaker.permittedCalls());
+        assertNull(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    void aFailureFromBeforeTheBreakerOpenedDoesNotReopenIt() {
+        MesCircuitBreaker.Permit probe = circuitBreaker.tryAcquire();
+
+        circuitBreaker.onFailure(slowCall);
+        assertEquals(MesCircuitBreaker.State.HALF_OPEN, circuitBreaker.state());
+
+        circuitBreaker.onFailure(probe);
+        assertEquals(MesCircuitBreaker.State.OPEN, circuitBreaker.state());
+    }
+}
@@ -0,0 +1,139 @@
+package pt.feup.industrial.erpsystem.mes;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import pt.feup.industrial.erpsystem.dto.MesProductionOrderDto;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MesClientServiceTest {
+
+    private StubMesServer mes;
+    private MesCircuitBreaker circuitBreaker;
+    private MesClientService mesClientService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        mes = new StubMesServer();
+        circuitBreaker = new MesCircuitBreaker(50, 10, 10, Duration.ofMillis(300), 2, new SimpleMeterRegistry());
+        mesClientService = new MesClientService(WebClient.builder().baseUrl(mes.baseUrl()).build(), circuitBreaker);
+        ReflectionTestUtils.setField(mesClientService, "productionOrderEndpoint", StubMesServer.ITEM_ENDPOINT);
+        ReflectionTestUtils.setField(mesClientService, "bulkProductionOrderEndpoint", StubMesServer.BULK_ENDPOINT);
+        ReflectionTestUtils.setField(mesClientService, "requestTimeout", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(mesClientService, "bulkEnabled", true);
+        ReflectionTestUtils.setField(mesClientService, "bulkSize", 100);
+        ReflectionTestUtils.setField(mesClientService, "bulkProbeInterval", Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        mes.close();
+    }
+
+    @Test
+    void bulkModeSendsChunksAndReportsPerItemResults() {
+        mes.rejectedItemIds.add(7L);
+
+        Map<Long, Boolean> accepted = dispatchAll(250);
+
+        assertEquals(3, mes.bulkRequests.get());
+        assertEquals(0, mes.itemRequests.get());
+        assertEquals(250, accepted.size());
+        assertFalse(accepted.get(7L));
+        assertEquals(249, accepted.values().stream().filter(Boolean::booleanValue).count());
+    }
+
+    @Test
+    void fallsBackToPerItemRequestsWithoutBulkSupport() {
+        mes.bulkSupported = false;
+        mes.rejectedItemIds.add(7L);
+
+        Map<Long, Boolean> accepted = dispatchAll(250);
+
+        assertEquals(250, mes.itemRequests.get());
+        assertEquals(250, accepted.size());
+        assertFalse(accepted.get(7L));
+
+        // Remembered: the next run goes one by one straight away
+        dispatchAll(10);
+        assertEquals(260, mes.itemRequests.get());
+        assertEquals(0, mes.bulkRequests.get());
+    }
+
+    @Test
+    void circuitBreakerFailsFastWhileMesIsDownThenRecovers() throws InterruptedException {
+        ReflectionTestUtils.setField(mesClientService, "bulkEnabled", false);
+        mes.failWithStatus = 503;
+
+        Map<Long, Boolean> accepted = dispatchAll(100, 1);
+
+        assertEquals(10, mes.itemRequests.get());
+        assertEquals(0, accepted.values().stream().filter(Boolean::booleanValue).count());
+        assertEquals(MesCircuitBreaker.State.OPEN, circuitBreaker.state());
+        assertEquals(0, mesClientService.permittedCalls());
+
+        mes.failWithStatus = 0;
+        Thread.sleep(350);
+        assertEquals(MesCircuitBreaker.State.HALF_OPEN, circuitBreaker.state());
+
+        accepted = dispatchAll(20, 1);
+
+        assertEquals(20, accepted.values().stream().filter(Boolean::booleanValue).count());
+        assertEquals(MesCircuitBreaker.State.CLOSED, circuitBreaker.state());
+    }
+
+    @Test
+    void refusedOrdersDoNotOpenTheCircuitBreaker() {
+        ReflectionTestUtils.setField(mesClientService, "bulkEnabled", false);
+        mes.failWithStatus = 422;
+
+        dispatchAll(50);
+
+        assertEquals(50, mes.itemRequests.get());
+        assertEquals(MesCircuitBreaker.State.CLOSED, circuitBreaker.state());
+    }
+
+    @Test
+    void bulkModeNeedsOneRequestPerChunkInsteadOfOnePerItem() {
+        int items = 1000;
+
+        Map<Long, Boolean> bulkAccepted = dispatchAll(items);
+
+        assertEquals(items / 100, mes.bulkRequests.get());
+        assertEquals(0, mes.itemRequests.get());
+        assertEquals(items, bulkAccepted.values().stream().filter(Boolean::booleanValue).count());
+
+        ReflectionTestUtils.setField(mesClientService, "bulkEnabled", false);
+        mes.receivedItemIds.clear();
+        Map<Long, Boolean> perItemAccepted = dispatchAll(items);
+
+        assertEquals(items / 100, mes.bulkRequests.get());
+        assertEquals(items, mes.itemRequests.get());
+        assertEquals(items, perItemAccepted.values().stream().filter(Boolean::booleanValue).count());
+        assertEquals(items, mes.receivedItemIds.size());
+    }
+
+    private Map<Long, Boolean> dispatchAll(int count) {
+        return dispatchAll(count, 8);
+    }
+
+    private Map<Long, Boolean> dispatchAll(int count, int maxConcurrency) {
+        List<MesProductionOrderDto> requests = LongStream.rangeClosed(1, count)
+                .mapToObj(id -> new MesProductionOrderDto(id / 2 + 1, id, 5, 1, LocalDate.of(2025, 1, 10)))
+                .toList();
+        return mesClientService.dispatchAll(requests, maxConcurrency)
+                .collect(Collectors.toMap(result -> result.request().getErpOrderItemId(), MesDispatchResult::accepted))
+                .block(Duration.ofSeconds(30));
+    }
+}
@@ -0,0 +1,107 @@
+package pt.feup.industrial.erpsystem.mes;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Embedded stand-in for the MES production order API: one-by-one and bulk endpoints, optional
+ * rejection of given item ids, an optional per-request delay, the bulk endpoint can be switched
+ * off to look like an MES without bulk support, and every request can be failed with a given status,
+ * or only the next few of them with 503.
+ */
+public class StubMesServer implements AutoCloseable {
+
+    public static final String ITEM_ENDPOINT = "/api/production-orders";
+    public static final String BULK_ENDPOINT = "/api/production-orders/bulk";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+
+    public final AtomicInteger itemRequests = new AtomicInteger();
+    public final AtomicInteger bulkRequests = new AtomicInteger();
+    // Orders received, counting repeats of the same item
+    public final AtomicInteger receivedOrders = new AtomicInteger();
+    public final Set<Long> receivedItemIds = ConcurrentHashMap.newKeySet();
+    public final Set<Long> rejectedItemIds = ConcurrentHashMap.newKeySet();
+    public volatile boolean bulkSupported = true;
+    public volatile long delayMillis;
+    public volatile int failWithStatus;
+    public final AtomicInteger failNextRequests = new AtomicInteger();
+
+    public StubMesServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext(ITEM_ENDPOINT, this::handle);
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            delay();
+            JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+            int failureStatus = failWithStatus != 0 ? failWithStatus
+                    : failNextRequests.getAndUpdate(left -> Math.max(left - 1, 0)) > 0 ? 503 : 0;
+            if (failureStatus != 0) {
+                (exchange.getRequestURI().getPath().equals(BULK_ENDPOINT) ? bulkRequests : itemRequests).incrementAndGet();
+                exchange.sendResponseHeaders(failureStatus, -1);
+                return;
+            }
+            if (exchange.getRequestURI().getPath().equals(BULK_ENDPOINT)) {
+                if (!bulkSupported) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+                bulkRequests.incrementAndGet();
+                ArrayNode results = objectMapper.createArrayNode();
+                for (JsonNode order : body) {
+                    long itemId = order.get("erpOrderItemId").asLong();
+                    receivedOrders.incrementAndGet();
+                    receivedItemIds.add(itemId);
+                    boolean accepted = !rejectedItemIds.contains(itemId);
+                    results.addObject().put("erpOrderItemId", itemId).put("accepted", accepted)
+                            .put("reason", accepted ? null : "Rejected by stub");
+                }
+                byte[] response = objectMapper.writeValueAsBytes(results);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, response.length);
+                exchange.getResponseBody().write(response);
+            } else {
+                itemRequests.incrementAndGet();
+                long itemId = body.get("erpOrderItemId").asLong();
+                receivedOrders.incrementAndGet();
+                receivedItemIds.add(itemId);
+                exchange.sendResponseHeaders(rejectedItemIds.contains(itemId) ? 422 : 202, -1);
+            }
+        }
+    }
+
+    private void delay() {
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
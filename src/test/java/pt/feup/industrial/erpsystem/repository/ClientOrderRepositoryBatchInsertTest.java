@@ -0,0 +1,68 @@
+package pt.feup.industrial.erpsystem.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import pt.feup.industrial.erpsystem.model.Client;
+import pt.feup.industrial.erpsystem.model.ClientOrder;
+import pt.feup.industrial.erpsystem.model.OrderItem;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class ClientOrderRepositoryBatchInsertTest {
+
+    private static final int ITEM_COUNT = 20;
+
+    @Autowired
+    private ClientRepository clientRepository;
+
+    @Autowired
+    private ClientOrderRepository clientOrderRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void multiItemOrderIsInsertedInBatchedStatements() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        Client client = new Client();
+        client.setName("Batch Client");
+        client.setNif(999000111L);
+        clientRepository.save(client);
+
+        ClientOrder order = new ClientOrder();
+        order.setClient(client);
+        order.setClientOrderId(1L);
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            OrderItem item = new OrderItem();
+            item.setProductType(5);
+            item.setQuantity(1);
+            item.setPenaltyPerDay(1.0);
+            item.setDueDate(LocalDate.now().plusDays(i));
+            order.addOrderItem(item);
+        }
+
+        statistics.clear();
+        clientOrderRepository.save(order);
+        entityManager.flush();
+
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(2 + ITEM_COUNT);
+        // One statement per table plus the sequence calls, instead of one statement per row
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(6);
+        assertThat(order.getItems()).allSatisfy(item -> assertThat(item.getId()).isNotNull());
+    }
+}
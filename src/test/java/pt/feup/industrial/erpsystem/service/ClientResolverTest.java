@@ -0,0 +1,158 @@
+package pt.feup.industrial.erpsystem.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import pt.feup.industrial.erpsystem.ErpTestContexts;
+import pt.feup.industrial.erpsystem.dto.ClientOrderRequestDto;
+import pt.feup.industrial.erpsystem.dto.OrderItemDto;
+import pt.feup.industrial.erpsystem.model.Client;
+import pt.feup.industrial.erpsystem.repository.ClientOrderRepository;
+import pt.feup.industrial.erpsystem.repository.ClientRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The first orders of a new client arriving together must end up with one client row: on one
+ * instance they wait for a single lookup-or-insert, across instances the loser of the insert race
+ * picks up the winner's row.
+ */
+class ClientResolverTest {
+
+    private static final long NIF = 500400500L;
+    private static final int THREADS = 8;
+
+    private final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+
+    @AfterEach
+    void stopContexts() {
+        contexts.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    void concurrentFirstOrdersOfANewClientCreateOneClient() throws Exception {
+        ConfigurableApplicationContext context = start("create");
+        OrderService orderService = context.getBean(OrderService.class);
+
+        List<Callable<Integer>> batches = new ArrayList<>();
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            long orderId = i;
+            batches.add(() -> {
+                start.await();
+                return orderService.processAndSaveOrders(List.of(order(orderId)));
+            });
+        }
+        assertThat(runAll(batches)).containsOnly(1);
+
+        assertThat(context.getBean(ClientRepository.class).findAll()).singleElement()
+                .matches(client -> client.getNif() == NIF);
+        assertThat(context.getBean(ClientOrderRepository.class).count()).isEqualTo(THREADS);
+    }
+
+    @Test
+    void instancesRacingToCreateTheSameClientAgreeOnOneRow() throws Exception {
+        ClientResolver first = start("create").getBean(ClientResolver.class);
+        ClientResolver second = start("none").getBean(ClientResolver.class);
+
+        List<Callable<Long>> resolutions = new ArrayList<>();
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            ClientResolver resolver = i % 2 == 0 ? first : second;
+            resolutions.add(() -> {
+                start.await();
+                return resolver.resolveClientId(NIF, "Racing Client");
+            });
+        }
+        List<Long> clientIds = runAll(resolutions);
+
+        assertThat(clientIds).containsOnly(clientIds.get(0));
+        assertThat(contexts.get(0).getBean(ClientRepository.class).count()).isOne();
+    }
+
+    @Test
+    void aClientInsertedElsewhereMeanwhileIsLookedUpAgain() {
+        ClientRepository clientRepository = mock(ClientRepository.class);
+        Client existing = new Client();
+        existing.setId(42L);
+        existing.setNif(NIF);
+        when(clientRepository.findByNif(NIF)).thenReturn(Optional.empty(), Optional.of(existing));
+        when(clientRepository.save(any(Client.class))).thenThrow(new DataIntegrityViolationException("uk_client_nif"));
+        ClientResolver resolver = resolver(clientRepository);
+
+        assertThat(resolver.resolveClientId(NIF, "Client")).isEqualTo(42L);
+        // Cached: the next order of the client needs no lookup
+        assertThat(resolver.resolveClientId(NIF, "Client")).isEqualTo(42L);
+        verify(clientRepository, times(2)).findByNif(NIF);
+    }
+
+    @Test
+    void anIntegrityViolationNotCausedByTheClientExistingIsRethrown() {
+        ClientRepository clientRepository = mock(ClientRepository.class);
+        DataIntegrityViolationException violation = new DataIntegrityViolationException("name too long");
+        when(clientRepository.findByNif(NIF)).thenReturn(Optional.empty());
+        when(clientRepository.save(any(Client.class))).thenThrow(violation);
+        ClientResolver resolver = resolver(clientRepository);
+
+        assertThatThrownBy(() -> resolver.resolveClientId(NIF, "Client")).isSameAs(violation);
+    }
+
+    private static ClientResolver resolver(ClientRepository clientRepository) {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        return new ClientResolver(clientRepository, transactionManager, new SimpleMeterRegistry(), 100, Duration.ofHours(1));
+    }
+
+    private ConfigurableApplicationContext start(String ddlAuto) {
+        ConfigurableApplicationContext context = ErpTestContexts.start("client-resolver", "spring.jpa.hibernate.ddl-auto=" + ddlAuto);
+        contexts.add(context);
+        return context;
+    }
+
+    private static <T> List<T> runAll(List<Callable<T>> tasks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            List<T> results = new ArrayList<>();
+            for (Future<T> result : executor.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static ClientOrderRequestDto order(long clientOrderId) {
+        OrderItemDto item = new OrderItemDto();
+        item.setType(5);
+        item.setQuantity(1);
+        item.setDDate(3);
+        item.setPenalty(10.0);
+        ClientOrderRequestDto order = new ClientOrderRequestDto();
+        order.setName("New Client");
+        order.setNif(NIF);
+        order.setOrderID(clientOrderId);
+        order.setOrders(List.of(item));
+        return order;
+    }
+}
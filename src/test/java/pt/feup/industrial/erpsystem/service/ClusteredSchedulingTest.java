@@ -0,0 +1,191 @@
+package pt.feup.industrial.erpsystem.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import pt.feup.industrial.erpsystem.ErpTestContexts;
+import pt.feup.industrial.erpsystem.dto.ClientOrderRequestDto;
+import pt.feup.industrial.erpsystem.dto.OrderItemDto;
+import pt.feup.industrial.erpsystem.mes.StubMesServer;
+import pt.feup.industrial.erpsystem.model.MesOutboxEntry;
+import pt.feup.industrial.erpsystem.model.OrderItemStatus;
+import pt.feup.industrial.erpsystem.model.OrderStatus;
+import pt.feup.industrial.erpsystem.model.SchedulableItem;
+import pt.feup.industrial.erpsystem.repository.ClientOrderRepository;
+import pt.feup.industrial.erpsystem.repository.MesOutboxRepository;
+import pt.feup.industrial.erpsystem.repository.OrderItemRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two ERP instances in cluster mode on one (H2) database: only one may schedule, they share the
+ * daily capacity, both relay the outbox without sending any item twice, and orders ingested on
+ * either reach the leader's queue and plan.
+ */
+class ClusteredSchedulingTest {
+
+    private static final int DAILY_CAPACITY = 24;
+
+    private StubMesServer mes;
+    private ConfigurableApplicationContext nodeA;
+    private ConfigurableApplicationContext nodeB;
+
+    @BeforeEach
+    void startMes() throws Exception {
+        mes = new StubMesServer();
+    }
+
+    @AfterEach
+    void stopNodes() {
+        if (nodeB != null) {
+            nodeB.close();
+        }
+        if (nodeA != null && nodeA.isActive()) {
+            nodeA.close();
+        }
+        mes.close();
+    }
+
+    @Test
+    void instancesShareTheDailyCapacityAndNeverDispatchAnItemTwice() throws Exception {
+        startNodes();
+        // Each instance only learns of its own orders through ingest; the leader has to find the others'
+        ingestOn(nodeA, 0, 15, 2, 2);
+        ingestOn(nodeB, 15, 15, 2, 2);
+
+        CyclicBarrier start = new CyclicBarrier(2);
+        CompletableFuture<Void> runsOnA = CompletableFuture.runAsync(() -> scheduleRepeatedly(nodeA, start, 3));
+        CompletableFuture<Void> runsOnB = CompletableFuture.runAsync(() -> scheduleRepeatedly(nodeB, start, 3));
+        CompletableFuture.allOf(runsOnA, runsOnB).join();
+
+        assertThat(nodeA.getBean(SchedulerLeadership.class).isLeader())
+                .isNotEqualTo(nodeB.getBean(SchedulerLeadership.class).isLeader());
+        List<MesOutboxEntry> outbox = nodeA.getBean(MesOutboxRepository.class).findAll();
+        assertThat(outbox.stream().mapToInt(MesOutboxEntry::getQuantity).sum()).isEqualTo(DAILY_CAPACITY);
+        assertThat(outbox.stream().map(MesOutboxEntry::getOrderItemId).distinct()).hasSize(outbox.size());
+
+        // The surviving instance takes over, but today's capacity is already used up
+        ConfigurableApplicationContext leader = nodeA.getBean(SchedulerLeadership.class).isLeader() ? nodeA : nodeB;
+        ConfigurableApplicationContext survivor = leader == nodeA ? nodeB : nodeA;
+        leader.close();
+        survivor.getBean(SchedulingService.class).sendPendingOrdersToMes();
+        assertThat(survivor.getBean(SchedulerLeadership.class).isLeader()).isTrue();
+        assertThat(survivor.getBean(MesOutboxRepository.class).count()).isEqualTo(outbox.size());
+    }
+
+    @Test
+    void bothInstancesRelayTheOutboxWithoutDuplicates() throws Exception {
+        startNodes();
+        assertThat(nodeA.getBean(SchedulerLeadership.class).acquire()).isTrue();
+        // Persisted by the follower: the leader's run picks the orders up without a reconciliation
+        ingestOn(nodeB, 0, 40, 1, 1);
+        nodeA.getBean(SchedulingService.class).sendPendingOrdersToMes();
+
+        CyclicBarrier start = new CyclicBarrier(2);
+        CompletableFuture<Void> relayA = CompletableFuture.runAsync(() -> relay(nodeA, start));
+        CompletableFuture<Void> relayB = CompletableFuture.runAsync(() -> relay(nodeB, start));
+        CompletableFuture.allOf(relayA, relayB).join();
+
+        assertThat(mes.receivedItemIds).hasSize(DAILY_CAPACITY);
+        assertThat(mes.receivedOrders.get()).isEqualTo(DAILY_CAPACITY);
+        assertThat(nodeA.getBean(OrderItemRepository.class).findAll())
+                .filteredOn(item -> item.getStatus() == OrderItemStatus.SENT_TO_MES)
+                .hasSize(DAILY_CAPACITY);
+        // One item per order, so exactly the orders of the sent items moved on
+        assertThat(nodeA.getBean(ClientOrderRepository.class).findByStatus(OrderStatus.SENT_TO_MES)).hasSize(DAILY_CAPACITY);
+    }
+
+    @Test
+    void theLeaderDispatchesAndPlansOrdersIngestedOnAFollower() throws Exception {
+        startNodes("erp.scheduling.dispatch.event-driven=true",
+                "erp.scheduling.dispatch.debounce=50ms",
+                "erp.scheduling.cluster.catch-up-interval-ms=200");
+        assertThat(nodeA.getBean(SchedulerLeadership.class).acquire()).isTrue();
+
+        // The follower's own runs are refused the lease; the leader finds the orders by itself
+        ingestOn(nodeB, 0, 40, 1, 1);
+        MesOutboxRepository outbox = nodeA.getBean(MesOutboxRepository.class);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (outbox.count() < DAILY_CAPACITY && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+
+        assertThat(outbox.findAll().stream().mapToInt(MesOutboxEntry::getQuantity).sum()).isEqualTo(DAILY_CAPACITY);
+        assertThat(nodeB.getBean(SchedulerLeadership.class).isLeader()).isFalse();
+        // What did not fit today is in the leader's plan
+        ProductionPlanner planner = nodeA.getBean(ProductionPlanner.class);
+        planner.refresh();
+        List<SchedulableItem> waiting = nodeA.getBean(OrderItemRepository.class).findSchedulableItems(OrderItemStatus.PENDING, OrderStatus.PENDING);
+        assertThat(waiting).hasSize(40 - DAILY_CAPACITY);
+        assertThat(waiting).allSatisfy(item -> assertThat(planner.projectOrder(item.orderId())).isPresent());
+    }
+
+    private void startNodes(String... properties) {
+        nodeA = startNode("node-a", "create", properties);
+        nodeB = startNode("node-b", "none", properties);
+    }
+
+    private ConfigurableApplicationContext startNode(String nodeId, String ddlAuto, String... properties) {
+        return ErpTestContexts.start("clustered-scheduling", Stream.concat(Stream.of(
+                "spring.jpa.hibernate.ddl-auto=" + ddlAuto,
+                "erp.scheduling.daily-capacity=" + DAILY_CAPACITY,
+                "erp.scheduling.cluster.enabled=true",
+                "erp.scheduling.cluster.node-id=" + nodeId,
+                "erp.mes.outbox.batch-size=5",
+                "mes.api.baseUrl=" + mes.baseUrl(),
+                "mes.api.productionOrderEndpoint=" + StubMesServer.ITEM_ENDPOINT,
+                "mes.api.bulkProductionOrderEndpoint=" + StubMesServer.BULK_ENDPOINT), Stream.of(properties)).toArray(String[]::new));
+    }
+
+    // Through the node's own ingest path, so only that node's queue hears of the orders
+    private static void ingestOn(ConfigurableApplicationContext node, int firstOrderId, int orders, int itemsPerOrder, int quantity) {
+        List<ClientOrderRequestDto> orderRequests = new ArrayList<>();
+        for (int i = firstOrderId; i < firstOrderId + orders; i++) {
+            List<OrderItemDto> items = new ArrayList<>();
+            for (int j = 0; j < itemsPerOrder; j++) {
+                OrderItemDto item = new OrderItemDto();
+                item.setType(5);
+                item.setQuantity(quantity);
+                item.setDDate(1 + i % 7);
+                item.setPenalty(10.0);
+                items.add(item);
+            }
+            ClientOrderRequestDto orderRequest = new ClientOrderRequestDto();
+            orderRequest.setName("Cluster Client");
+            orderRequest.setNif(500100200L);
+            orderRequest.setOrderID((long) i);
+            orderRequest.setOrders(items);
+            orderRequests.add(orderRequest);
+        }
+        assertThat(node.getBean(OrderService.class).processAndSaveOrders(orderRequests)).isEqualTo(orders);
+    }
+
+    private static void scheduleRepeatedly(ConfigurableApplicationContext node, CyclicBarrier start, int runs) {
+        SchedulingService scheduler = node.getBean(SchedulingService.class);
+        for (int run = 0; run < runs; run++) {
+            await(start);
+            scheduler.sendPendingOrdersToMes();
+        }
+    }
+
+    private static void relay(ConfigurableApplicationContext node, CyclicBarrier start) {
+        await(start);
+        node.getBean(MesOutboxRelay.class).relay();
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package pt.feup.industrial.erpsystem.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.CannotCreateTransactionException;
+import pt.feup.industrial.erpsystem.dto.OrderItemCompletionDto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * A completion that cannot be applied must not hold up the stream: it is isolated from the rest of
+ * its batch, counted and acknowledged past. An unavailable database is waited out instead, and
+ * nothing is acknowledged until the batch is applied.
+ */
+class CompletionCoalescerTest {
+
+    private final OrderService orderService = mock(OrderService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private CompletionCoalescer coalescer;
+
+    @BeforeEach
+    void start() {
+        // A wide window, so everything submitted below lands in one batch
+        coalescer = new CompletionCoalescer(orderService, meterRegistry, 500, 200, 100);
+        coalescer.start();
+    }
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        coalescer.stop();
+    }
+
+    @Test
+    void aPoisonEventIsIsolatedAndAcknowledgedPast() throws InterruptedException {
+        doThrow(new DataIntegrityViolationException("bad item"))
+                .when(orderService).markOrderItemsAsCompleted(argThat(completions -> containsItem(completions, 3L)));
+
+        CountDownLatch acks = new CountDownLatch(3);
+        coalescer.submit(List.of(completion(1L), completion(2L)), acks::countDown);
+        coalescer.submit(List.of(completion(3L), completion(1L)), acks::countDown);
+        coalescer.submit(List.of(completion(4L)), acks::countDown);
+        assertThat(acks.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // Everything but the bad event was applied, the repeated event for item 1 only once
+        verify(orderService).markOrderItemsAsCompleted(List.of(completion(1L), completion(2L)));
+        verify(orderService).markOrderItemsAsCompleted(List.of(completion(4L)));
+        assertThat(meterRegistry.get("erp.completions.stream.failed").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("erp.completions.stream.coalesced").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void transientFailuresAreRetried() throws InterruptedException {
+        when(orderService.markOrderItemsAsCompleted(anyList()))
+                .thenThrow(new CannotAcquireLockException("deadlock"))
+                .thenReturn(List.of());
+
+        CountDownLatch acks = new CountDownLatch(1);
+        coalescer.submit(List.of(completion(1L), completion(2L)), acks::countDown);
+        assertThat(acks.await(10, TimeUnit.SECONDS)).isTrue();
+
+        verify(orderService, times(2)).markOrderItemsAsCompleted(List.of(completion(1L), completion(2L)));
+        assertThat(meterRegistry.get("erp.completions.stream.failed").counter().count()).isZero();
+    }
+
+    @Test
+    void anOutageIsWaitedOutBeforeAcknowledging() throws InterruptedException {
+        // Longer than any fixed number of attempts would have allowed before
+        AtomicInteger calls = new AtomicInteger();
+        when(orderService.markOrderItemsAsCompleted(anyList())).thenAnswer(invocation -> {
+            if (calls.incrementAndGet() <= 5) {
+                throw new CannotCreateTransactionException("database down");
+            }
+            return List.of();
+        });
+
+        AtomicInteger callsWhenAcknowledged = new AtomicInteger();
+        CountDownLatch acks = new CountDownLatch(1);
+        coalescer.submit(List.of(completion(1L)), () -> {
+            callsWhenAcknowledged.set(calls.get());
+            acks.countDown();
+        });
+        assertThat(acks.await(20, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(callsWhenAcknowledged.get()).isEqualTo(6);
+        assertThat(meterRegistry.get("erp.completions.stream.failed").counter().count()).isZero();
+    }
+
+    @Test
+    void aShutdownDuringAnOutageLeavesTheEventsUnacknowledged() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        when(orderService.markOrderItemsAsCompleted(anyList())).thenAnswer(invocation -> {
+            calls.incrementAndGet();
+            throw new CannotCreateTransactionException("database down");
+        });
+
+        CountDownLatch acks = new CountDownLatch(1);
+        coalescer.submit(List.of(completion(1L), completion(2L)), acks::countDown);
+        while (calls.get() < 2) {
+            Thread.sleep(10);
+        }
+        coalescer.stop();
+
+        assertThat(acks.getCount()).isEqualTo(1);
+        assertThat(meterRegistry.get("erp.completions.stream.failed").counter().count()).isZero();
+    }
+
+    private static boolean containsItem(List<OrderItemCompletionDto> completions, Long itemId) {
+        return completions != null && completions.stream().anyMatch(completion -> itemId.equals(completion.getErpOrderItemId()));
+    }
+
+    private static OrderItemCompletionDto completion(Long itemId) {
+        return new OrderItemCompletionDto(itemId, LocalDateTime.of(2025, 6, 1, 12, 0), null);
+    }
+}
@@ -0,0 +1,243 @@
+package pt.feup.industrial.erpsystem.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import pt.feup.industrial.erpsystem.ErpTestContexts;
+import pt.feup.industrial.erpsystem.mes.MesCircuitBreaker;
+import pt.feup.industrial.erpsystem.mes.StubMesServer;
+import pt.feup.industrial.erpsystem.model.Client;
+import pt.feup.industrial.erpsystem.model.ClientOrder;
+import pt.feup.industrial.erpsystem.model.MesOutboxEntry;
+import pt.feup.industrial.erpsystem.model.MesOutboxStatus;
+import pt.feup.industrial.erpsystem.model.OrderItem;
+import pt.feup.industrial.erpsystem.model.OrderItemStatus;
+import pt.feup.industrial.erpsystem.model.OrderStatus;
+import pt.feup.industrial.erpsystem.repository.ClientOrderRepository;
+import pt.feup.industrial.erpsystem.repository.ClientRepository;
+import pt.feup.industrial.erpsystem.repository.MesOutboxRepository;
+import pt.feup.industrial.erpsystem.repository.OrderItemRepository;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The outbox relay against a stub MES: which entries it claims depending on the circuit breaker,
+ * that only requests which reached the MES spend a delivery attempt, and how failed deliveries are
+ * retried with a growing backoff until they succeed, run out of attempts or are refused.
+ */
+class MesOutboxRelayTest {
+
+    private static final int ENTRIES = 10;
+
+    private static final String[] QUICK_BREAKER = {
+            "mes.api.circuit-breaker.window-size=2",
+            "mes.api.circuit-breaker.minimum-calls=2",
+            "mes.api.circuit-breaker.open-duration=300ms",
+            "mes.api.circuit-breaker.half-open-probes=2"};
+    // Delays of 1s, 2s, then capped at 3s; the default breaker stays closed over a handful of failures
+    private static final String[] RETRIES = {
+            "erp.mes.outbox.max-attempts=4",
+            "erp.mes.outbox.initial-backoff=1s",
+            "erp.mes.outbox.max-backoff=3s"};
+
+    private StubMesServer mes;
+    private ConfigurableApplicationContext context;
+    private MesOutboxRelay relay;
+    private MesOutboxRepository outbox;
+
+    @BeforeEach
+    void startMes() throws Exception {
+        mes = new StubMesServer();
+    }
+
+    @AfterEach
+    void stopContext() {
+        if (context != null) {
+            context.close();
+        }
+        mes.close();
+    }
+
+    @Test
+    void requestsFailedFastDoNotSpendAttempts() {
+        startContext(ENTRIES, QUICK_BREAKER);
+        mes.failWithStatus = 503;
+
+        relay.relay();
+
+        // Two requests opened the breaker; the other entries were failed fast and given their attempt back
+        assertThat(mes.itemRequests.get()).isEqualTo(2);
+        assertThat(outbox.findAll()).extracting(MesOutboxEntry::getStatus).containsOnly(MesOutboxStatus.PENDING);
+        assertThat(totalAttempts()).isEqualTo(2);
+        assertThat(outbox.findAll()).filteredOn(entry -> entry.getAttempts() == 0)
+                .allMatch(entry -> !entry.getNextAttemptAt().isAfter(LocalDateTime.now()) && entry.getLastError() == null);
+    }
+
+    @Test
+    void relayHoldsBackWhileOpenAndClaimsOnlyTheProbesWhenHalfOpen() throws InterruptedException {
+        startContext(ENTRIES, QUICK_BREAKER);
+        MesCircuitBreaker circuitBreaker = context.getBean(MesCircuitBreaker.class);
+        circuitBreaker.onFailure(circuitBreaker.tryAcquire());
+        circuitBreaker.onFailure(circuitBreaker.tryAcquire());
+        assertThat(circuitBreaker.state()).isEqualTo(MesCircuitBreaker.State.OPEN);
+
+        relay.relay();
+        assertThat(mes.itemRequests.get()).isZero();
+        assertThat(totalAttempts()).isZero();
+
+        Thread.sleep(350);
+        mes.failWithStatus = 503;
+        relay.relay();
+
+        // One probe failed and opened the breaker again; nothing beyond the probes was claimed
+        assertThat(mes.itemRequests.get()).isEqualTo(1);
+        assertThat(totalAttempts()).isEqualTo(1);
+        assertThat(circuitBreaker.state()).isEqualTo(MesCircuitBreaker.State.OPEN);
+
+        Thread.sleep(350);
+        mes.failWithStatus = 0;
+        relay.relay();
+
+        // The probes succeeded, the breaker closed and the same run delivered the rest, except the
+        // entry whose probe failed: it waits out its backoff
+        assertThat(circuitBreaker.state()).isEqualTo(MesCircuitBreaker.State.CLOSED);
+        assertThat(outbox.findAll()).filteredOn(entry -> entry.getStatus() == MesOutboxStatus.DELIVERED).hasSize(ENTRIES - 1);
+        assertThat(outbox.findAll()).filteredOn(entry -> entry.getStatus() == MesOutboxStatus.PENDING)
+                .singleElement()
+                .matches(entry -> entry.getAttempts() == 1 && entry.getNextAttemptAt().isAfter(LocalDateTime.now()));
+    }
+
+    @Test
+    void retriesWithAGrowingBackoffUntilTheMesAccepts() {
+        startContext(1, RETRIES);
+        mes.failNextRequests.set(3);
+
+        relayAndExpectRetry(1, Duration.ofSeconds(1));
+        relayAndExpectRetry(2, Duration.ofSeconds(2));
+        relayAndExpectRetry(3, Duration.ofSeconds(3));
+        relayDue();
+
+        assertThat(mes.itemRequests.get()).isEqualTo(4);
+        MesOutboxEntry entry = entry();
+        assertThat(entry.getStatus()).isEqualTo(MesOutboxStatus.DELIVERED);
+        assertThat(entry.getAttempts()).isEqualTo(4);
+        assertThat(itemStatus(entry)).isEqualTo(OrderItemStatus.SENT_TO_MES);
+    }
+
+    @Test
+    void deadLettersAfterTheLastAttempt() {
+        startContext(1, RETRIES);
+        mes.failWithStatus = 503;
+
+        relayAndExpectRetry(1, Duration.ofSeconds(1));
+        relayAndExpectRetry(2, Duration.ofSeconds(2));
+        relayAndExpectRetry(3, Duration.ofSeconds(3));
+        relayDue();
+
+        MesOutboxEntry entry = entry();
+        assertThat(entry.getStatus()).isEqualTo(MesOutboxStatus.DEAD);
+        assertThat(entry.getAttempts()).isEqualTo(4);
+        assertThat(entry.getLastError()).isNotNull();
+        assertThat(itemStatus(entry)).isEqualTo(OrderItemStatus.FAILED_TO_SEND);
+
+        // Nothing is claimed once dead-lettered
+        relayDue();
+        assertThat(mes.itemRequests.get()).isEqualTo(4);
+    }
+
+    @Test
+    void anOrderTheMesRefusesIsNotRetried() {
+        startContext(1, RETRIES);
+        mes.failWithStatus = 422;
+
+        relay.relay();
+
+        assertThat(mes.itemRequests.get()).isEqualTo(1);
+        MesOutboxEntry entry = entry();
+        assertThat(entry.getStatus()).isEqualTo(MesOutboxStatus.DEAD);
+        assertThat(entry.getAttempts()).isEqualTo(1);
+        assertThat(itemStatus(entry)).isEqualTo(OrderItemStatus.FAILED_TO_SEND);
+    }
+
+    private void startContext(int entries, String... properties) {
+        context = ErpTestContexts.start("mes-outbox-relay", Stream.concat(Stream.of(
+                "mes.api.baseUrl=" + mes.baseUrl(),
+                "mes.api.productionOrderEndpoint=" + StubMesServer.ITEM_ENDPOINT,
+                "mes.api.bulkProductionOrderEndpoint=" + StubMesServer.BULK_ENDPOINT,
+                "mes.api.bulk-enabled=false",
+                // One request at a time, so the breaker opens after exactly minimum-calls failures
+                "erp.mes.outbox.concurrency=1"), Stream.of(properties)).toArray(String[]::new));
+        relay = context.getBean(MesOutboxRelay.class);
+        outbox = context.getBean(MesOutboxRepository.class);
+        seedOutbox(entries);
+    }
+
+    // The backoff is jittered between half and all of the expected delay
+    private void relayAndExpectRetry(int attempts, Duration delay) {
+        LocalDateTime before = LocalDateTime.now();
+        relayDue();
+        LocalDateTime after = LocalDateTime.now();
+
+        MesOutboxEntry entry = entry();
+        assertThat(entry.getStatus()).isEqualTo(MesOutboxStatus.PENDING);
+        assertThat(entry.getAttempts()).isEqualTo(attempts);
+        assertThat(entry.getLastError()).isNotNull();
+        assertThat(entry.getNextAttemptAt()).isBetween(before.plus(delay.dividedBy(2)), after.plus(delay));
+        assertThat(itemStatus(entry)).isEqualTo(OrderItemStatus.QUEUED_FOR_MES);
+    }
+
+    // Runs the relay as if the entry's backoff had run out
+    private void relayDue() {
+        MesOutboxEntry entry = entry();
+        entry.setNextAttemptAt(LocalDateTime.now());
+        outbox.save(entry);
+        relay.relay();
+    }
+
+    private MesOutboxEntry entry() {
+        return outbox.findAll().get(0);
+    }
+
+    private OrderItemStatus itemStatus(MesOutboxEntry entry) {
+        return context.getBean(OrderItemRepository.class).findById(entry.getOrderItemId()).orElseThrow().getStatus();
+    }
+
+    private int totalAttempts() {
+        return outbox.findAll().stream().mapToInt(MesOutboxEntry::getAttempts).sum();
+    }
+
+    private void seedOutbox(int entries) {
+        Client client = new Client();
+        client.setName("Relay Client");
+        client.setNif(500400500L);
+        context.getBean(ClientRepository.class).save(client);
+
+        List<ClientOrder> orders = new ArrayList<>();
+        for (int i = 0; i < entries; i++) {
+            ClientOrder order = new ClientOrder();
+            order.setClient(client);
+            order.setClientOrderId((long) i);
+            order.setStatus(OrderStatus.PENDING);
+            OrderItem item = new OrderItem();
+            item.setProductType(5);
+            item.setQuantity(1);
+            item.setPenaltyPerDay(10.0);
+            item.setDueDate(LocalDate.now());
+            item.setStatus(OrderItemStatus.QUEUED_FOR_MES);
+            order.addOrderItem(item);
+            orders.add(order);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        outbox.saveAll(context.getBean(ClientOrderRepository.class).saveAll(orders).stream()
+                .map(order -> MesOutboxEntry.forItem(order.getItems().get(0), now))
+                .toList());
+    }
+}
@@ -0,0 +1,109 @@
+package pt.feup.industrial.erpsystem.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import pt.feup.industrial.erpsystem.ErpTestContexts;
+import pt.feup.industrial.erpsystem.dto.OrderItemCompletionDto;
+import pt.feup.industrial.erpsystem.dto.OrderItemCompletionResultDto;
+import pt.feup.industrial.erpsystem.model.Client;
+import pt.feup.industrial.erpsystem.model.ClientOrder;
+import pt.feup.industrial.erpsystem.model.OrderItem;
+import pt.feup.industrial.erpsystem.model.OrderItemStatus;
+import pt.feup.industrial.erpsystem.model.OrderStatus;
+import pt.feup.industrial.erpsystem.repository.ClientOrderRepository;
+import pt.feup.industrial.erpsystem.repository.ClientRepository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Completion notifications for sibling items arriving at the same time: the last one to commit
+ * must see all the others and complete the order, and repeated notifications count once.
+ */
+class OrderCompletionConcurrencyTest {
+
+    private static final int ITEMS = 8;
+
+    private ConfigurableApplicationContext context;
+
+    @BeforeEach
+    void startContext() {
+        context = ErpTestContexts.start("order-completion", "erp.completions.max-attempts=10");
+    }
+
+    @AfterEach
+    void stopContext() {
+        context.close();
+    }
+
+    @Test
+    void concurrentCompletionsOfSiblingItemsCompleteTheOrderOnce() throws Exception {
+        ClientOrder order = seedSentOrder();
+        OrderService orderService = context.getBean(OrderService.class);
+
+        // Every item is reported twice, by two threads racing each other
+        CyclicBarrier start = new CyclicBarrier(ITEMS * 2);
+        List<Callable<OrderItemCompletionResultDto>> completions = new ArrayList<>();
+        for (int i = 0; i < ITEMS * 2; i++) {
+            Long itemId = order.getItems().get(i % ITEMS).getId();
+            completions.add(() -> {
+                await(start);
+                return orderService.markOrderItemsAsCompleted(
+                        List.of(new OrderItemCompletionDto(itemId, LocalDateTime.now(), null))).get(0);
+            });
+        }
+        List<OrderItemCompletionResultDto> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(ITEMS * 2)) {
+            for (Future<OrderItemCompletionResultDto> result : executor.invokeAll(completions)) {
+                results.add(result.get());
+            }
+        }
+
+        assertThat(results).filteredOn(result -> result.getOutcome() == OrderItemCompletionResultDto.Outcome.COMPLETED).hasSize(ITEMS);
+        assertThat(results).filteredOn(result -> result.getOutcome() == OrderItemCompletionResultDto.Outcome.DUPLICATE).hasSize(ITEMS);
+        ClientOrder completed = context.getBean(ClientOrderRepository.class).findById(order.getId()).orElseThrow();
+        assertThat(completed.getItemsCompleted()).isEqualTo(ITEMS);
+        assertThat(completed.getStatus()).isEqualTo(OrderStatus.COMPLETED);
+    }
+
+    private ClientOrder seedSentOrder() {
+        Client client = new Client();
+        client.setName("Completion Client");
+        client.setNif(500200300L);
+        context.getBean(ClientRepository.class).save(client);
+
+        ClientOrder order = new ClientOrder();
+        order.setClient(client);
+        order.setClientOrderId(1L);
+        order.setStatus(OrderStatus.SENT_TO_MES);
+        for (int i = 0; i < ITEMS; i++) {
+            OrderItem item = new OrderItem();
+            item.setProductType(5);
+            item.setQuantity(1);
+            item.setPenaltyPerDay(10.0);
+            item.setDueDate(LocalDate.now());
+            item.setStatus(OrderItemStatus.SENT_TO_MES);
+            order.addOrderItem(item);
+        }
+        return context.getBean(ClientOrderRepository.class).save(order);
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package pt.feup.industrial.erpsystem.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import pt.feup.industrial.erpsystem.ErpTestContexts;
+import pt.feup.industrial.erpsystem.dto.ClientOrderRequestDto;
+import pt.feup.industrial.erpsystem.dto.OrderItemDto;
+import pt.feup.industrial.erpsystem.event.OrdersPersistedEvent;
+import pt.feup.industrial.erpsystem.event.OrdersPersistedEvent.PersistedOrder;
+import pt.feup.industrial.erpsystem.model.ClientOrder;
+import pt.feup.industrial.erpsystem.model.OrderKey;
+import pt.feup.industrial.erpsystem.repository.ClientOrderRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The index may only answer NEW or DUPLICATE when that is certain: not before it was warmed up
+ * from the stored orders, and not for orders whose transaction has not committed.
+ */
+class OrderIdempotencyIndexTest {
+
+    private static final long NIF = 500300400L;
+
+    private final ClientOrderRepository clientOrderRepository = mock(ClientOrderRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+
+    @AfterEach
+    void stopContexts() {
+        contexts.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    void everythingIsUnknownUntilWarmedUp() {
+        OrderIdempotencyIndex index = index(10);
+        index.onOrdersPersisted(new OrdersPersistedEvent(List.of(new PersistedOrder(key(1), new ClientOrder()))));
+
+        // Keys stored before this instance started are not in the filter yet: its absence proves nothing
+        assertThat(index.check(key(2))).isEqualTo(OrderIdempotencyIndex.Verdict.UNKNOWN);
+        assertThat(meterRegistry.counter("erp.idempotency.database-checks").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("erp.idempotency.misses").count()).isZero();
+    }
+
+    @Test
+    void recentKeysAreDuplicatesOlderOnesNeedTheDatabaseAndUnseenOnesAreNew() {
+        // Newest first, as the warm-up query returns them; only the two newest fit in the recent set
+        when(clientOrderRepository.findOrderKeysBefore(eq(Long.MAX_VALUE), any(Limit.class)))
+                .thenReturn(List.of(row(30, 3), row(20, 2), row(10, 1)));
+        OrderIdempotencyIndex index = index(2);
+        index.warmUp();
+
+        assertThat(index.check(key(3))).isEqualTo(OrderIdempotencyIndex.Verdict.DUPLICATE);
+        assertThat(index.check(key(2))).isEqualTo(OrderIdempotencyIndex.Verdict.DUPLICATE);
+        assertThat(index.check(key(1))).isEqualTo(OrderIdempotencyIndex.Verdict.UNKNOWN);
+        assertThat(index.check(key(4))).isEqualTo(OrderIdempotencyIndex.Verdict.NEW);
+
+        // The database confirmed the old key: it is now answered without a lookup
+        index.recordDatabaseCheck(key(1), true);
+        assertThat(index.check(key(1))).isEqualTo(OrderIdempotencyIndex.Verdict.DUPLICATE);
+
+        assertThat(meterRegistry.counter("erp.idempotency.hits").count()).isEqualTo(3);
+        assertThat(meterRegistry.counter("erp.idempotency.misses").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("erp.idempotency.database-checks").count()).isEqualTo(1);
+    }
+
+    @Test
+    void warmUpPagesThroughEveryStoredKey() {
+        List<ClientOrderRepository.OrderKeyRow> firstPage = LongStream.range(0, 5000)
+                .mapToObj(i -> row(100_000 - i, 100_000 - i))
+                .toList();
+        when(clientOrderRepository.findOrderKeysBefore(eq(Long.MAX_VALUE), any(Limit.class))).thenReturn(firstPage);
+        when(clientOrderRepository.findOrderKeysBefore(eq(95_001L), any(Limit.class))).thenReturn(List.of(row(7, 7)));
+        OrderIdempotencyIndex index = index(10);
+        index.warmUp();
+
+        verify(clientOrderRepository).findOrderKeysBefore(eq(95_001L), any(Limit.class));
+        assertThat(index.check(key(7))).isEqualTo(OrderIdempotencyIndex.Verdict.UNKNOWN);
+        assertThat(index.check(key(95_001))).isEqualTo(OrderIdempotencyIndex.Verdict.UNKNOWN);
+    }
+
+    @Test
+    void theIndexIsWarmedUpFromStoredOrdersWhenTheApplicationIsReady() {
+        ConfigurableApplicationContext first = start("create");
+        assertThat(first.getBean(OrderService.class).processAndSaveOrders(List.of(order(1), order(2)))).isEqualTo(2);
+
+        // A second instance on the same database learns of the orders only through its warm-up
+        OrderIdempotencyIndex index = start("none").getBean(OrderIdempotencyIndex.class);
+
+        assertThat(index.check(key(1))).isEqualTo(OrderIdempotencyIndex.Verdict.DUPLICATE);
+        assertThat(index.check(key(2))).isEqualTo(OrderIdempotencyIndex.Verdict.DUPLICATE);
+        assertThat(index.check(key(3))).isEqualTo(OrderIdempotencyIndex.Verdict.NEW);
+    }
+
+    @Test
+    void storedOrdersAreIndexedOnlyOnceTheirTransactionCommits() {
+        ConfigurableApplicationContext context = start("create");
+        OrderIdempotencyIndex index = context.getBean(OrderIdempotencyIndex.class);
+        OrderService orderService = context.getBean(OrderService.class);
+
+        transaction(context).executeWithoutResult(status -> {
+            assertThat(orderService.processAndSaveOrders(List.of(order(1)))).isEqualTo(1);
+            assertThat(index.check(key(1))).isEqualTo(OrderIdempotencyIndex.Verdict.NEW);
+        });
+
+        assertThat(index.check(key(1))).isEqualTo(OrderIdempotencyIndex.Verdict.DUPLICATE);
+    }
+
+    @Test
+    void ordersRolledBackAreNotIndexed() {
+        ConfigurableApplicationContext context = start("create");
+        OrderIdempotencyIndex index = context.getBean(OrderIdempotencyIndex.class);
+        OrderService orderService = context.getBean(OrderService.class);
+
+        transaction(context).executeWithoutResult(status -> {
+            assertThat(orderService.processAndSaveOrders(List.of(order(1)))).isEqualTo(1);
+            status.setRollbackOnly();
+        });
+
+        // Otherwise the retransmission of an order that was never stored would be dropped as a duplicate
+        assertThat(index.check(key(1))).isEqualTo(OrderIdempotencyIndex.Verdict.NEW);
+        assertThat(orderService.processAndSaveOrders(List.of(order(1)))).isEqualTo(1);
+    }
+
+    private OrderIdempotencyIndex index(long recentCapacity) {
+        return new OrderIdempotencyIndex(clientOrderRepository, meterRegistry, 1000, 0.01, recentCapacity);
+    }
+
+    private ConfigurableApplicationContext start(String ddlAuto) {
+        ConfigurableApplicationContext context = ErpTestContexts.start("idempotency-index", "spring.jpa.hibernate.ddl-auto=" + ddlAuto);
+        contexts.add(context);
+        return context;
+    }
+
+    private static TransactionTemplate transaction(ConfigurableApplicationContext context) {
+        return new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+    }
+
+    private static OrderKey key(long clientOrderId) {
+        return new OrderKey(NIF, clientOrderId);
+    }
+
+    private static ClientOrderRepository.OrderKeyRow row(long id, long clientOrderId) {
+        return new Row(id, NIF, clientOrderId);
+    }
+
+    private static ClientOrderRequestDto order(long clientOrderId) {
+        OrderItemDto item = new OrderItemDto();
+        item.setType(5);
+        item.setQuantity(1);
+        item.setDDate(3);
+        item.setPenalty(10.0);
+        ClientOrderRequestDto order = new ClientOrderRequestDto();
+        order.setName("Idempotency Client");
+        order.setNif(NIF);
+        order.setOrderID(clientOrderId);
+        order.setOrders(List.of(item));
+        return order;
+    }
+
+    private record Row(Long getId, Long getNif, Long getClientOrderId) implements ClientOrderRepository.OrderKeyRow {
+    }
+}
@@ -0,0 +1,164 @@
+package pt.feup.industrial.erpsystem.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import pt.feup.industrial.erpsystem.ErpTestContexts;
+import pt.feup.industrial.erpsystem.dto.ClientOrderRequestDto;
+import pt.feup.industrial.erpsystem.dto.OrderItemDto;
+import pt.feup.industrial.erpsystem.repository.ClientOrderRepository;
+import pt.feup.industrial.erpsystem.repository.ClientRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Orders of one client go through one lane and are persisted in arrival order; a lane that stays
+ * full rejects instead of blocking its producer for good. A lane persists a batch on one
+ * connection, new clients included: with a single lane on a pool of one connection, orders of
+ * clients never seen before are still stored.
+ */
+class OrderIngestBatcherTest {
+
+    private final OrderService orderService = mock(OrderService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ConfigurableApplicationContext context;
+    private OrderIngestBatcher batcher;
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        if (batcher != null) {
+            batcher.stop();
+        }
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    void ordersOfOneClientArePersistedInArrivalOrderOnOneLane() throws Exception {
+        Map<Long, List<Long>> persistedOrderIds = new ConcurrentHashMap<>();
+        Map<Long, Set<String>> laneThreads = new ConcurrentHashMap<>();
+        when(orderService.processAndSaveOrders(anyList())).thenAnswer(invocation -> {
+            List<ClientOrderRequestDto> batch = invocation.getArgument(0);
+            for (ClientOrderRequestDto orderRequest : batch) {
+                persistedOrderIds.computeIfAbsent(orderRequest.getNif(), nif -> new CopyOnWriteArrayList<>()).add(orderRequest.getOrderID());
+                laneThreads.computeIfAbsent(orderRequest.getNif(), nif -> ConcurrentHashMap.newKeySet()).add(Thread.currentThread().getName());
+            }
+            // Slow enough for the lanes to overlap and the queues to build up
+            Thread.sleep(2);
+            return batch.size();
+        });
+        startBatcher(4, 3, 100);
+
+        // Three clients on three different lanes, their orders interleaved on submission
+        List<Long> nifs = List.of(100000001L, 100000002L, 100000003L);
+        CountDownLatch processed = new CountDownLatch(nifs.size() * 30);
+        for (long orderId = 1; orderId <= 30; orderId++) {
+            for (Long nif : nifs) {
+                batcher.submit(List.of(orderRequest(nif, orderId)), processed::countDown);
+            }
+        }
+
+        assertThat(processed.await(30, TimeUnit.SECONDS)).isTrue();
+        List<Long> expected = LongStream.rangeClosed(1, 30).boxed().toList();
+        for (Long nif : nifs) {
+            assertThat(persistedOrderIds.get(nif)).as("orders of NIF %d", nif).isEqualTo(expected);
+            assertThat(laneThreads.get(nif)).as("lanes of NIF %d", nif).hasSize(1);
+        }
+        assertThat(laneThreads.values().stream().flatMap(Set::stream).distinct()).hasSize(nifs.size());
+    }
+
+    @Test
+    void aLaneThatStaysFullRejectsAndCountsTheRejection() throws Exception {
+        CountDownLatch persisting = new CountDownLatch(1);
+        CountDownLatch databaseBack = new CountDownLatch(1);
+        when(orderService.processAndSaveOrders(anyList())).thenAnswer(invocation -> {
+            persisting.countDown();
+            databaseBack.await();
+            return invocation.<List<?>>getArgument(0).size();
+        });
+        startBatcher(2, 1, 2);
+        // Odd NIFs map to lane 1 of 2, even ones to lane 0
+        long busyClient = 100000001L;
+
+        CountDownLatch processed = new CountDownLatch(3);
+        batcher.submit(List.of(orderRequest(busyClient, 1)), processed::countDown);
+        assertThat(persisting.await(5, TimeUnit.SECONDS)).isTrue();
+        // The lane is stuck on its first batch; two more entries fill its queue
+        batcher.submit(List.of(orderRequest(busyClient, 2)), processed::countDown);
+        batcher.submit(List.of(orderRequest(busyClient, 3)), processed::countDown);
+
+        AtomicBoolean rejectedAcknowledged = new AtomicBoolean();
+        assertThatThrownBy(() -> batcher.submit(List.of(orderRequest(busyClient, 4)), () -> rejectedAcknowledged.set(true)))
+                .isInstanceOf(RejectedExecutionException.class);
+        assertThat(meterRegistry.counter("erp.ingest.lane.rejected", "lane", "1").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("erp.ingest.lane.rejected", "lane", "0").count()).isZero();
+        assertThat(meterRegistry.get("erp.ingest.lane.queue-depth").tag("lane", "1").gauge().value()).isEqualTo(2);
+
+        databaseBack.countDown();
+        assertThat(processed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(rejectedAcknowledged).isFalse();
+    }
+
+    @Test
+    void ordersOfNewClientsAreStoredWithOneConnectionPerLane() throws Exception {
+        context = ErpTestContexts.start("order-ingest",
+                "erp.ingest.lanes=1",
+                "spring.datasource.hikari.maximum-pool-size=1",
+                "spring.datasource.hikari.connection-timeout=2000");
+        List<ClientOrderRequestDto> orderRequests = new ArrayList<>();
+        for (long nif = 100000001; nif <= 100000020; nif++) {
+            orderRequests.add(orderRequest(nif, 1));
+            orderRequests.add(orderRequest(nif, 2));
+        }
+
+        CountDownLatch processed = new CountDownLatch(1);
+        context.getBean(OrderIngestBatcher.class).submit(orderRequests, processed::countDown);
+
+        assertThat(processed.await(30, TimeUnit.SECONDS)).isTrue();
+        assertThat(context.getBean(ClientRepository.class).count()).isEqualTo(20);
+        assertThat(context.getBean(ClientOrderRepository.class).count()).isEqualTo(40);
+    }
+
+    private void startBatcher(int lanes, int batchSize, int queueCapacity) {
+        batcher = new OrderIngestBatcher(orderService, meterRegistry);
+        ReflectionTestUtils.setField(batcher, "laneCount", lanes);
+        ReflectionTestUtils.setField(batcher, "batchSize", batchSize);
+        ReflectionTestUtils.setField(batcher, "batchWindowMs", 5L);
+        ReflectionTestUtils.setField(batcher, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(batcher, "offerTimeoutMs", 100L);
+        batcher.start();
+    }
+
+    private static ClientOrderRequestDto orderRequest(long nif, long orderId) {
+        OrderItemDto item = new OrderItemDto();
+        item.setType(5);
+        item.setQuantity(2);
+        item.setDDate(3);
+        item.setPenalty(10.0);
+        ClientOrderRequestDto orderRequest = new ClientOrderRequestDto();
+        orderRequest.setName("Client " + nif);
+        orderRequest.setNif(nif);
+        orderRequest.setOrderID(orderId);
+        orderRequest.setOrders(List.of(item));
+        return orderRequest;
+    }
+}
@@ -0,0 +1,50 @@
+package pt.feup.industrial.erpsystem.service;
+
+import org.junit.jupiter.api.Test;
+import pt.feup.industrial.erpsystem.model.OrderKey;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderKeyBloomFilterTest {
+
+    private static final int KEYS = 100_000;
+
+    @Test
+    void everyInsertedKeyIsFoundAndTheFalsePositiveRateStaysNearTheTarget() {
+        OrderKeyBloomFilter filter = new OrderKeyBloomFilter(KEYS, 0.01);
+        for (long i = 0; i < KEYS; i++) {
+            filter.put(key(i));
+        }
+
+        assertThat(LongStream.range(0, KEYS).allMatch(i -> filter.mightContain(key(i)))).isTrue();
+        // Same NIFs, other orderIDs: the keys retransmissions are checked against in practice
+        long falsePositives = LongStream.range(KEYS, 2L * KEYS).filter(i -> filter.mightContain(key(i))).count();
+        assertThat((double) falsePositives / KEYS).isLessThan(0.02);
+    }
+
+    @Test
+    void concurrentInsertsLoseNoBits() {
+        OrderKeyBloomFilter filter = new OrderKeyBloomFilter(KEYS, 0.01);
+        List<CompletableFuture<Void>> writers = new ArrayList<>();
+        for (int writer = 0; writer < 4; writer++) {
+            long first = writer;
+            writers.add(CompletableFuture.runAsync(() -> {
+                for (long i = first; i < KEYS; i += 4) {
+                    filter.put(key(i));
+                }
+            }));
+        }
+        writers.forEach(CompletableFuture::join);
+
+        assertThat(LongStream.range(0, KEYS).allMatch(i -> filter.mightContain(key(i)))).isTrue();
+    }
+
+    private static OrderKey key(long i) {
+        return new OrderKey(500_000_000L + i % 100, i);
+    }
+}
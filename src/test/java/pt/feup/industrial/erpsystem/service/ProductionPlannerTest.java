@@ -0,0 +1,161 @@
+package pt.feup.industrial.erpsystem.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import pt.feup.industrial.erpsystem.ErpTestContexts;
+import pt.feup.industrial.erpsystem.dto.OrderPlanProjectionDto;
+import pt.feup.industrial.erpsystem.model.Client;
+import pt.feup.industrial.erpsystem.model.ClientOrder;
+import pt.feup.industrial.erpsystem.model.MesOutboxEntry;
+import pt.feup.industrial.erpsystem.model.MesOutboxStatus;
+import pt.feup.industrial.erpsystem.model.OrderItem;
+import pt.feup.industrial.erpsystem.model.PlannedDayLoad;
+import pt.feup.industrial.erpsystem.model.PlannedItem;
+import pt.feup.industrial.erpsystem.model.ProductTypePieces;
+import pt.feup.industrial.erpsystem.repository.ClientOrderRepository;
+import pt.feup.industrial.erpsystem.repository.ClientRepository;
+import pt.feup.industrial.erpsystem.repository.MesOutboxRepository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The materialized production plan: ten orders of 3 pieces each, all due tomorrow, on a factory
+ * taking 10 pieces a day over a 3-day horizon. The greedy plan puts three orders on each day and
+ * leaves the last one beyond the horizon.
+ */
+class ProductionPlannerTest {
+
+    private ConfigurableApplicationContext context;
+    private ProductionPlanner planner;
+    private List<ClientOrder> orders;
+    private LocalDate today;
+
+    @BeforeEach
+    void startContext() {
+        context = ErpTestContexts.start("production-plan",
+                "erp.scheduling.strategy=greedy",
+                "erp.scheduling.daily-capacity=10",
+                "erp.scheduling.plan-horizon-days=3",
+                "erp.scheduling.plan.refresh-interval-ms=3600000");
+        planner = context.getBean(ProductionPlanner.class);
+        today = LocalDate.now();
+        orders = seedOrders(10);
+        context.getBean(SchedulingQueue.class).reconcile();
+    }
+
+    @AfterEach
+    void stopContext() {
+        context.close();
+    }
+
+    @Test
+    void materializesThePlanPerDayAndProjectsOrders() {
+        planner.refresh();
+
+        assertThat(plannedOrderIds(today)).containsExactly(orderId(0), orderId(1), orderId(2));
+        assertThat(plannedOrderIds(today.plusDays(1))).containsExactly(orderId(3), orderId(4), orderId(5));
+        assertThat(plannedOrderIds(today.plusDays(2))).containsExactly(orderId(6), orderId(7), orderId(8));
+        assertThat(planner.plannedLoad(today, today.plusDays(7))).containsExactly(
+                new PlannedDayLoad(today, 5, 3, 9),
+                new PlannedDayLoad(today.plusDays(1), 5, 3, 9),
+                new PlannedDayLoad(today.plusDays(2), 5, 3, 9));
+
+        OrderPlanProjectionDto onTime = planner.projectOrder(orderId(4)).orElseThrow();
+        assertThat(onTime.getProjectedShipDate()).isEqualTo(today.plusDays(1));
+        assertThat(onTime.isBeyondHorizon()).isFalse();
+        assertThat(onTime.getProjectedLatenessDays()).isZero();
+        assertThat(onTime.getProjectedPenalty()).isZero();
+
+        OrderPlanProjectionDto late = planner.projectOrder(orderId(7)).orElseThrow();
+        assertThat(late.getProjectedShipDate()).isEqualTo(today.plusDays(2));
+        assertThat(late.getProjectedLatenessDays()).isEqualTo(1);
+        assertThat(late.getProjectedPenalty()).isEqualTo(10.0);
+
+        // Counted as finished the day after the horizon
+        OrderPlanProjectionDto beyondHorizon = planner.projectOrder(orderId(9)).orElseThrow();
+        assertThat(beyondHorizon.isBeyondHorizon()).isTrue();
+        assertThat(beyondHorizon.getProjectedShipDate()).isNull();
+        assertThat(beyondHorizon.getProjectedLatenessDays()).isEqualTo(2);
+        assertThat(beyondHorizon.getProjectedPenalty()).isEqualTo(20.0);
+
+        assertThat(planner.projectOrder(-1L)).isEmpty();
+    }
+
+    @Test
+    void dispatchedItemsLeaveThePlanAndTodayOnlyGetsTheCapacityLeft() {
+        planner.refresh();
+        ProductionPlan before = planner.currentPlan();
+        assertThat(planner.currentPlan()).isSameAs(before);
+
+        // A scheduling run sends the first two orders: 6 of today's 10 pieces are gone
+        SchedulingQueue schedulingQueue = context.getBean(SchedulingQueue.class);
+        List<Long> dispatchedItemIds = List.of(itemId(0), itemId(1));
+        schedulingQueue.startDispatch(dispatchedItemIds);
+        context.getBean(MesOutboxRepository.class).saveAll(List.of(
+                MesOutboxEntry.forItem(orders.get(0).getItems().get(0), LocalDateTime.now()),
+                MesOutboxEntry.forItem(orders.get(1).getItems().get(0), LocalDateTime.now())));
+        schedulingQueue.finishDispatch(dispatchedItemIds);
+        planner.refresh();
+
+        assertThat(planner.currentPlan()).isNotSameAs(before);
+        assertThat(planner.projectOrder(orderId(0))).isEmpty();
+        assertThat(planner.projectOrder(orderId(1))).isEmpty();
+        assertThat(plannedOrderIds(today)).containsExactly(orderId(2));
+        assertThat(plannedOrderIds(today.plusDays(1))).containsExactly(orderId(3), orderId(4), orderId(5));
+        assertThat(plannedOrderIds(today.plusDays(2))).containsExactly(orderId(6), orderId(7), orderId(8));
+        assertThat(planner.projectOrder(orderId(9)).orElseThrow().isBeyondHorizon()).isTrue();
+    }
+
+    @Test
+    void entriesTheMesNeverTookDoNotCountAsDispatched() {
+        MesOutboxEntry delivered = MesOutboxEntry.forItem(orders.get(0).getItems().get(0), LocalDateTime.now());
+        delivered.setStatus(MesOutboxStatus.DELIVERED);
+        MesOutboxEntry dead = MesOutboxEntry.forItem(orders.get(1).getItems().get(0), LocalDateTime.now());
+        dead.setStatus(MesOutboxStatus.DEAD);
+        MesOutboxEntry pending = MesOutboxEntry.forItem(orders.get(2).getItems().get(0), LocalDateTime.now());
+        context.getBean(MesOutboxRepository.class).saveAll(List.of(delivered, dead, pending));
+
+        assertThat(planner.piecesDispatchedOn(today)).containsExactly(new ProductTypePieces(5, 6L));
+    }
+
+    private List<Long> plannedOrderIds(LocalDate day) {
+        return planner.plannedOn(day).stream().map(PlannedItem::getClientOrderId).toList();
+    }
+
+    private long orderId(int index) {
+        return orders.get(index).getId();
+    }
+
+    private long itemId(int index) {
+        return orders.get(index).getItems().get(0).getId();
+    }
+
+    private List<ClientOrder> seedOrders(int count) {
+        Client client = new Client();
+        client.setName("Plan Client");
+        client.setNif(500200300L);
+        context.getBean(ClientRepository.class).save(client);
+
+        List<ClientOrder> seeded = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ClientOrder order = new ClientOrder();
+            order.setClient(client);
+            order.setClientOrderId((long) i);
+            OrderItem item = new OrderItem();
+            item.setProductType(5);
+            item.setQuantity(3);
+            item.setPenaltyPerDay(10.0);
+            item.setDueDate(LocalDate.now().plusDays(1));
+            order.addOrderItem(item);
+            seeded.add(order);
+        }
+        return context.getBean(ClientOrderRepository.class).saveAll(seeded);
+    }
+}
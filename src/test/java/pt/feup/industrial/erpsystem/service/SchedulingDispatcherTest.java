@@ -0,0 +1,119 @@
+package pt.feup.industrial.erpsystem.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pt.feup.industrial.erpsystem.event.CapacityResetEvent;
+import pt.feup.industrial.erpsystem.event.OrderItemsCompletedEvent;
+import pt.feup.industrial.erpsystem.event.OrdersPersistedEvent;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Event-driven scheduling runs: a burst of events becomes one run, a steady stream still gets one
+ * within max-delay, and nothing runs once today's capacity is used up until a new day's capacity.
+ */
+class SchedulingDispatcherTest {
+
+    private static final Duration DEBOUNCE = Duration.ofMillis(200);
+
+    private final SchedulingService schedulingService = mock(SchedulingService.class);
+    private final SchedulingQueue schedulingQueue = mock(SchedulingQueue.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicBoolean capacityLeft = new AtomicBoolean(true);
+    // One permit per run; runs are counted here rather than with verify(timeout), which would hold the
+    // monitor of the synchronized sendPendingOrdersToMes while waiting and so block the run itself
+    private final Semaphore runs = new Semaphore(0);
+    private SchedulingDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        when(schedulingQueue.isReady()).thenReturn(true);
+        when(schedulingQueue.size()).thenReturn(10);
+        when(schedulingService.hasCapacityLeft()).thenAnswer(invocation -> capacityLeft.get());
+        doAnswer(invocation -> {
+            runs.release();
+            return null;
+        }).when(schedulingService).sendPendingOrdersToMes();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void aBurstOfEventsBecomesOneRun() throws InterruptedException {
+        dispatcher = dispatcher(Duration.ofSeconds(5));
+
+        for (int i = 0; i < 50; i++) {
+            dispatcher.onOrdersPersisted(new OrdersPersistedEvent(List.of()));
+        }
+
+        assertThat(runs.tryAcquire(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(runs.tryAcquire(3 * DEBOUNCE.toMillis(), TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(meterRegistry.get("erp.scheduling.dispatch.requests").tag("reason", "orders").counter().count()).isEqualTo(50);
+    }
+
+    @Test
+    void aSteadyStreamOfEventsStillGetsARunWithinMaxDelay() throws InterruptedException {
+        dispatcher = dispatcher(Duration.ofMillis(500));
+
+        // Events closer together than the debounce: without max-delay the run would wait for them to stop
+        long streamEnd = System.nanoTime() + Duration.ofMillis(1500).toNanos();
+        while (System.nanoTime() < streamEnd) {
+            dispatcher.onItemsCompleted(new OrderItemsCompletedEvent(List.of(1L)));
+            Thread.sleep(DEBOUNCE.toMillis() / 4);
+        }
+
+        assertThat(runs.availablePermits()).isPositive();
+    }
+
+    @Test
+    void eventsAreIgnoredOnceCapacityIsUsedUpUntilANewDay() throws InterruptedException {
+        dispatcher = dispatcher(Duration.ofSeconds(5));
+        // The run uses up today's capacity
+        doAnswer(invocation -> {
+            capacityLeft.set(false);
+            runs.release();
+            return null;
+        }).when(schedulingService).sendPendingOrdersToMes();
+
+        dispatcher.onOrdersPersisted(new OrdersPersistedEvent(List.of()));
+        assertThat(runs.tryAcquire(2, TimeUnit.SECONDS)).isTrue();
+
+        dispatcher.onOrdersPersisted(new OrdersPersistedEvent(List.of()));
+        dispatcher.onItemsCompleted(new OrderItemsCompletedEvent(List.of(1L)));
+        assertThat(runs.tryAcquire(3 * DEBOUNCE.toMillis(), TimeUnit.MILLISECONDS)).isFalse();
+
+        capacityLeft.set(true);
+        dispatcher.onCapacityReset(new CapacityResetEvent(LocalDate.now()));
+        assertThat(runs.tryAcquire(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(meterRegistry.get("erp.scheduling.dispatch.runs").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void nothingRunsWithoutPendingItems() throws InterruptedException {
+        dispatcher = dispatcher(Duration.ofSeconds(5));
+        when(schedulingQueue.size()).thenReturn(0);
+
+        dispatcher.onOrdersPersisted(new OrdersPersistedEvent(List.of()));
+
+        assertThat(runs.tryAcquire(3 * DEBOUNCE.toMillis(), TimeUnit.MILLISECONDS)).isFalse();
+    }
+
+    private SchedulingDispatcher dispatcher(Duration maxDelay) {
+        return new SchedulingDispatcher(schedulingService, schedulingQueue, mock(SchedulerLeadership.class), true, DEBOUNCE, maxDelay, meterRegistry);
+    }
+}
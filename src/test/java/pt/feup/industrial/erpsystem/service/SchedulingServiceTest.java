@@ -0,0 +1,136 @@
+package pt.feup.industrial.erpsystem.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.PlatformTransactionManager;
+import pt.feup.industrial.erpsystem.event.OrdersPersistedEvent;
+import pt.feup.industrial.erpsystem.model.ClientOrder;
+import pt.feup.industrial.erpsystem.model.MesOutboxEntry;
+import pt.feup.industrial.erpsystem.model.OrderItem;
+import pt.feup.industrial.erpsystem.model.OrderItemStatus;
+import pt.feup.industrial.erpsystem.model.OrderKey;
+import pt.feup.industrial.erpsystem.model.SchedulableItem;
+import pt.feup.industrial.erpsystem.repository.MesOutboxRepository;
+import pt.feup.industrial.erpsystem.repository.OrderItemRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * What a scheduling run does with the queue when it cannot claim everything it selected, and when
+ * the capacity left today holds nothing more. The claim uses SKIP LOCKED, which the H2 test
+ * database does not honour, so the repository is mocked.
+ */
+class SchedulingServiceTest {
+
+    private static final long TODAY = LocalDate.now().toEpochDay();
+
+    private final OrderItemRepository orderItemRepository = mock(OrderItemRepository.class);
+    private final ProductionPlanner productionPlanner = mock(ProductionPlanner.class);
+    private final SchedulerLeadership leadership = mock(SchedulerLeadership.class);
+    private final MesOutboxRepository mesOutboxRepository = mock(MesOutboxRepository.class);
+    private final SchedulingQueue schedulingQueue = new SchedulingQueue(orderItemRepository, new SimpleMeterRegistry());
+    private final List<SchedulableItem> selected = List.of(
+            new SchedulableItem(1, 1, 5, 2, TODAY, 10.0),
+            new SchedulableItem(2, 2, 5, 2, TODAY + 1, 10.0),
+            new SchedulableItem(3, 3, 5, 2, TODAY + 2, 10.0));
+    private SchedulingService schedulingService;
+
+    @BeforeEach
+    void setUp() {
+        when(leadership.isLeader()).thenReturn(true);
+        when(leadership.acquire()).thenReturn(true);
+        when(leadership.holdsLease()).thenReturn(true);
+        when(productionPlanner.schedulingCapacity()).thenReturn(new SchedulingCapacity(24, Map.of()));
+        when(productionPlanner.currentPlan()).thenReturn(new ProductionPlan(LocalDate.now(), List.of(selected), 0, 0));
+        // The queue only needs to be marked ready; the items are added below
+        schedulingQueue.rebuild();
+        selected.forEach(schedulingQueue::add);
+        schedulingService = new SchedulingService(orderItemRepository, mesOutboxRepository, schedulingQueue,
+                leadership, productionPlanner, mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    void itemsHeldByAnotherTransactionStayQueuedWhileThoseThatMovedOnAreDropped() {
+        // Item 2 is locked elsewhere and still PENDING; item 3 was completed meanwhile
+        when(orderItemRepository.claimWithClientOrderByIdIn(List.of(1L, 2L, 3L), OrderItemStatus.PENDING)).thenReturn(List.of(orderItem(1)));
+        when(orderItemRepository.findIdsByIdInAndStatus(List.of(2L, 3L), OrderItemStatus.PENDING)).thenReturn(List.of(2L));
+
+        schedulingService.sendPendingOrdersToMes();
+
+        assertThat(queuedItemIds()).containsExactly(2L);
+        assertThat(schedulingService.hasCapacityLeft()).isTrue();
+    }
+
+    @Test
+    void aFailedRunPutsEverySelectedItemBack() {
+        when(orderItemRepository.claimWithClientOrderByIdIn(anyCollection(), eq(OrderItemStatus.PENDING)))
+                .thenThrow(new QueryTimeoutException("lock wait"));
+
+        assertThatThrownBy(() -> schedulingService.sendPendingOrdersToMes()).isInstanceOf(QueryTimeoutException.class);
+
+        assertThat(queuedItemIds()).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    void aSmallOrderArrivingAfterNothingFitTodayIsStillDispatched() {
+        // None of the queued items fits what is left of today
+        when(productionPlanner.currentPlan()).thenReturn(new ProductionPlan(LocalDate.now(), List.of(), 3, 0));
+        schedulingService.sendPendingOrdersToMes();
+        assertThat(schedulingService.hasCapacityLeft()).isFalse();
+
+        OrderItem small = orderItem(4);
+        schedulingQueue.onOrdersPersisted(new OrdersPersistedEvent(List.of(
+                new OrdersPersistedEvent.PersistedOrder(new OrderKey(500100100L, 4L), small.getClientOrder()))));
+        assertThat(schedulingService.hasCapacityLeft()).isTrue();
+
+        when(productionPlanner.currentPlan()).thenReturn(new ProductionPlan(LocalDate.now(), List.of(List.of(SchedulableItem.of(small))), 3, 0));
+        when(orderItemRepository.claimWithClientOrderByIdIn(List.of(4L), OrderItemStatus.PENDING)).thenReturn(List.of(small));
+        schedulingService.sendPendingOrdersToMes();
+
+        verify(mesOutboxRepository).saveAll(argThat(entries -> StreamSupport.stream(entries.spliterator(), false)
+                .map(MesOutboxEntry::getOrderItemId).toList().equals(List.of(4L))));
+        assertThat(queuedItemIds()).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    void completionsLiftTheCapacityLatch() {
+        when(productionPlanner.currentPlan()).thenReturn(new ProductionPlan(LocalDate.now(), List.of(), 3, 0));
+        schedulingService.sendPendingOrdersToMes();
+        assertThat(schedulingService.hasCapacityLeft()).isFalse();
+
+        schedulingService.onItemsCompleted();
+
+        assertThat(schedulingService.hasCapacityLeft()).isTrue();
+    }
+
+    private List<Long> queuedItemIds() {
+        return StreamSupport.stream(schedulingQueue.spliterator(), false).map(SchedulableItem::itemId).toList();
+    }
+
+    private static OrderItem orderItem(long id) {
+        ClientOrder order = new ClientOrder();
+        order.setId(id);
+        OrderItem item = new OrderItem();
+        item.setId(id);
+        item.setProductType(5);
+        item.setQuantity(2);
+        item.setPenaltyPerDay(10.0);
+        item.setDueDate(LocalDate.now());
+        order.addOrderItem(item);
+        return item;
+    }
+}
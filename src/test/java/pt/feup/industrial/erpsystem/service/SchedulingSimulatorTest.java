@@ -0,0 +1,118 @@
+package pt.feup.industrial.erpsystem.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import pt.feup.industrial.erpsystem.dto.SimulationRequestDto;
+import pt.feup.industrial.erpsystem.dto.SimulationResultDto;
+import pt.feup.industrial.erpsystem.dto.SimulationScenarioDto;
+import pt.feup.industrial.erpsystem.model.SchedulableItem;
+import pt.feup.industrial.erpsystem.repository.OrderItemRepository;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * What-if scenarios against an in-memory backlog: every scenario plans the same snapshot, unset
+ * fields take the live configuration, and requests over the configured limits are refused.
+ */
+class SchedulingSimulatorTest {
+
+    private final SchedulingQueue schedulingQueue = new SchedulingQueue(mock(OrderItemRepository.class), new SimpleMeterRegistry());
+    private final ProductionPlanner productionPlanner = mock(ProductionPlanner.class);
+    private SchedulingSimulator simulator;
+
+    @BeforeEach
+    void setUp() {
+        when(productionPlanner.strategyName()).thenReturn("greedy");
+        when(productionPlanner.schedulingCapacity()).thenReturn(new SchedulingCapacity(10, Map.of()));
+        when(productionPlanner.planHorizonDays()).thenReturn(5);
+
+        PenaltyAwareSchedulingStrategy penaltyAware = new PenaltyAwareSchedulingStrategy();
+        ReflectionTestUtils.setField(penaltyAware, "timeBudgetMs", 200L);
+        ReflectionTestUtils.setField(penaltyAware, "maxCandidates", 5000);
+        simulator = new SchedulingSimulator(schedulingQueue, productionPlanner,
+                Map.of("greedy", new GreedySchedulingStrategy(), "penalty-aware", penaltyAware), 2);
+        ReflectionTestUtils.setField(simulator, "maxScenarios", 3);
+        ReflectionTestUtils.setField(simulator, "maxHorizonDays", 30);
+
+        // 20 items of 3 pieces; due dates and penalties vary, so the strategies disagree
+        long today = LocalDate.now().toEpochDay();
+        for (long id = 1; id <= 20; id++) {
+            schedulingQueue.add(new SchedulableItem(id, id, id % 2 == 0 ? 5 : 7, 3, today + id % 4, id % 3 == 0 ? 50.0 : 1.0));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        simulator.shutdown();
+    }
+
+    @Test
+    void scenariosPlanTheSameBacklogWithinTheirCapacity() throws InterruptedException {
+        SimulationResultDto result = simulator.simulate(new SimulationRequestDto(List.of(
+                new SimulationScenarioDto("live", null, null, null, null),
+                new SimulationScenarioDto("optimized", "penalty-aware", null, null, null),
+                new SimulationScenarioDto("type 5 limited", "greedy", 12, Map.of(5, 3), 10)), true));
+
+        assertThat(result.getBacklogItems()).isEqualTo(20);
+        assertThat(result.getScenarios()).extracting(SimulationResultDto.Scenario::getName)
+                .containsExactly("live", "optimized", "type 5 limited");
+
+        SimulationResultDto.Scenario live = result.getScenarios().get(0);
+        assertThat(live.getStrategy()).isEqualTo("greedy");
+        assertThat(live.getDailyCapacity()).isEqualTo(10);
+        assertThat(live.getHorizonDays()).isEqualTo(5);
+        assertThat(result.getScenarios().get(1).getExpectedPenalty()).isLessThanOrEqualTo(live.getExpectedPenalty());
+
+        for (SimulationResultDto.Scenario scenario : result.getScenarios()) {
+            assertThat(scenario.getPlannedItems() + scenario.getUnplannedItems()).isEqualTo(20);
+            assertThat(scenario.getDays()).hasSizeLessThanOrEqualTo(scenario.getHorizonDays());
+            Set<Long> planned = new HashSet<>();
+            for (SimulationResultDto.Day day : scenario.getDays()) {
+                assertThat(day.getPieces()).isLessThanOrEqualTo(scenario.getDailyCapacity());
+                assertThat(day.getItemIds()).hasSize(day.getItems());
+                day.getItemIds().forEach(itemId -> assertThat(planned.add(itemId)).isTrue());
+            }
+            assertThat(planned).hasSize(scenario.getPlannedItems());
+        }
+
+        // One piece of type 5 per day at most: three of its pieces, i.e. one item
+        SimulationResultDto.Scenario limited = result.getScenarios().get(2);
+        for (SimulationResultDto.Day day : limited.getDays()) {
+            assertThat(day.getItemIds().stream().filter(itemId -> itemId % 2 == 0)).hasSizeLessThanOrEqualTo(1);
+        }
+    }
+
+    @Test
+    void itemIdsAreOnlyListedOnRequest() throws InterruptedException {
+        SimulationResultDto result = simulator.simulate(new SimulationRequestDto(List.of(
+                new SimulationScenarioDto("live", null, null, null, null)), false));
+
+        assertThat(result.getScenarios().get(0).getDays()).allSatisfy(day -> assertThat(day.getItemIds()).isNull());
+    }
+
+    @Test
+    void refusesUnknownStrategiesAndRequestsOverTheLimits() {
+        SimulationScenarioDto scenario = new SimulationScenarioDto("live", null, null, null, null);
+
+        assertThatThrownBy(() -> simulator.simulate(new SimulationRequestDto(List.of(
+                new SimulationScenarioDto("bad", "fastest", null, null, null)), false)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> simulator.simulate(new SimulationRequestDto(List.of(
+                new SimulationScenarioDto("long", null, null, null, 31)), false)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> simulator.simulate(new SimulationRequestDto(List.of(scenario, scenario, scenario, scenario), false)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
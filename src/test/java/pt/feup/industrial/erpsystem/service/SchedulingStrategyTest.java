@@ -0,0 +1,108 @@
+package pt.feup.industrial.erpsystem.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import pt.feup.industrial.erpsystem.model.ProductTypePieces;
+import pt.feup.industrial.erpsystem.model.SchedulableItem;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Greedy vs. penalty-aware on a generated backlog: both respect capacity and the optimizer ends up
+ * with a lower expected penalty. The 100k item run that also checks the time budget is tagged
+ * "benchmark" and only runs with -Pbenchmark.
+ */
+class SchedulingStrategyTest {
+
+    private static final int HORIZON_DAYS = 14;
+    private static final LocalDate TODAY = LocalDate.of(2025, 1, 1);
+    private static final SchedulingCapacity CAPACITY = new SchedulingCapacity(24, Map.of(5, 12, 7, 12));
+
+    @Test
+    void penaltyAwareBeatsGreedyWithinCapacity() {
+        List<SchedulableItem> backlog = generateBacklog(new Random(42), 2_000);
+
+        ProductionPlan greedyPlan = new GreedySchedulingStrategy().plan(backlog, CAPACITY, TODAY, HORIZON_DAYS);
+        ProductionPlan optimizedPlan = penaltyAware(200).plan(backlog, CAPACITY, TODAY, HORIZON_DAYS);
+
+        assertCapacityRespected(greedyPlan);
+        assertCapacityRespected(optimizedPlan);
+        assertTrue(optimizedPlan.expectedPenalty() < greedyPlan.expectedPenalty());
+    }
+
+    @Test
+    @Tag("benchmark")
+    void penaltyAwareBeatsGreedyOnALargeBacklogWithinTheTimeBudget() {
+        long timeBudgetMs = 1000;
+        List<SchedulableItem> backlog = generateBacklog(new Random(42), 100_000);
+
+        ProductionPlan greedyPlan = new GreedySchedulingStrategy().plan(backlog, CAPACITY, TODAY, HORIZON_DAYS);
+        long optimizerStart = System.nanoTime();
+        ProductionPlan optimizedPlan = penaltyAware(timeBudgetMs).plan(backlog, CAPACITY, TODAY, HORIZON_DAYS);
+        long optimizerMillis = (System.nanoTime() - optimizerStart) / 1_000_000;
+
+        assertCapacityRespected(optimizedPlan);
+        assertTrue(optimizedPlan.expectedPenalty() < greedyPlan.expectedPenalty());
+        // Budget plus the construction pass and plan evaluation, which run outside of it
+        assertTrue(optimizerMillis < timeBudgetMs + 2000, "took " + optimizerMillis + " ms");
+    }
+
+    @Test
+    void firstDayOnlyGetsWhatTodaysDispatchesLeft() {
+        List<SchedulableItem> backlog = generateBacklog(new Random(7), 200);
+        // 20 of the 24 pieces and 10 of the 12 of type 5 are already gone today
+        List<ProductTypePieces> dispatchedToday = List.of(new ProductTypePieces(5, 10), new ProductTypePieces(6, 10));
+
+        for (SchedulingStrategy strategy : List.of(new GreedySchedulingStrategy(), penaltyAware(200))) {
+            ProductionPlan plan = strategy.plan(backlog, CAPACITY, TODAY, HORIZON_DAYS, dispatchedToday);
+
+            DayLoad today = DayLoad.of(dispatchedToday);
+            for (SchedulableItem item : plan.firstDay()) {
+                assertTrue(today.fits(item, CAPACITY), "over what is left today: " + item);
+                today.add(item);
+            }
+            assertTrue(today.pieces() <= CAPACITY.dailyPieces());
+        }
+    }
+
+    private static PenaltyAwareSchedulingStrategy penaltyAware(long timeBudgetMs) {
+        PenaltyAwareSchedulingStrategy penaltyAware = new PenaltyAwareSchedulingStrategy();
+        ReflectionTestUtils.setField(penaltyAware, "timeBudgetMs", timeBudgetMs);
+        ReflectionTestUtils.setField(penaltyAware, "maxCandidates", 5000);
+        return penaltyAware;
+    }
+
+    private static void assertCapacityRespected(ProductionPlan plan) {
+        Set<Long> planned = new HashSet<>();
+        assertTrue(plan.days().size() <= HORIZON_DAYS);
+        for (List<SchedulableItem> day : plan.days()) {
+            DayLoad load = new DayLoad();
+            for (SchedulableItem item : day) {
+                assertTrue(load.fits(item, CAPACITY), "over capacity: " + item);
+                assertTrue(planned.add(item.itemId()), "planned twice: " + item);
+                load.add(item);
+            }
+        }
+    }
+
+    // Due dates spread over two months, some already overdue; quantities and penalties vary per item
+    private static List<SchedulableItem> generateBacklog(Random random, int size) {
+        List<SchedulableItem> items = new ArrayList<>(size);
+        for (long id = 1; id <= size; id++) {
+            long due = TODAY.toEpochDay() + random.nextInt(60) - 10;
+            items.add(new SchedulableItem(id, id / 3 + 1, 1 + random.nextInt(9), 1 + random.nextInt(8), due,
+                    Math.round(random.nextDouble() * 100) / 10.0));
+        }
+        items.sort(SchedulableItem.PRIORITY);
+        return items;
+    }
+}